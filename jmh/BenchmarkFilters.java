@@ -0,0 +1,42 @@
+import benchmarks.Workloads;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.function.BinaryOperator;
+
+/**
+ * The processors, as the JMH benchmarks in the benchmarks package see them. Each
+ * filter is built once, as a FilterChain, so kernels are planned before the first
+ * frame rather than on every one.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class BenchmarkFilters implements Workloads {
+    @Override
+    public BufferedImage frame(String size) {
+        String[] dimensions = size.split("x");
+        return SyntheticFrameSource.createFrame(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), 0);
+    }
+
+    @Override
+    public BufferedImage destination(String size) {
+        String[] dimensions = size.split("x");
+        return Pixels.createImage(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+    }
+
+    @Override
+    public BinaryOperator<BufferedImage> grayscale() {
+        return FilterChain.of(Grayscaler.filter())::processImage;
+    }
+
+    @Override
+    public BinaryOperator<BufferedImage> kernel(String kind, int n) {
+        return FilterChain.of(Kernelizer.filter(Benchmark.kernel(kind, n)))::processImage;
+    }
+
+    @Override
+    public BinaryOperator<BufferedImage> halftone(int radius) {
+        return FilterChain.of(Halftoner.filter(radius, new Color(0, 0, 0), new Color(255, 255, 255)))::processImage;
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings shared by the filter benchmarks: each runs on a synthetic frame of every
+ * size, writing into an image created once, in frames per second, in a fork of its
+ * own. Run with -prof gc, as gradle jmh does, to also get the bytes allocated per
+ * frame (gc.alloc.rate.norm).
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class FilterBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    protected final Workloads workloads = Workloads.get();
+    protected BufferedImage frame;
+    protected BufferedImage dest;
+
+    /**
+     * Creates the frame and the image it is processed into, for subclasses' @Setup
+     * methods to call.
+     */
+    protected void createFrame() {
+        frame = workloads.frame(size);
+        dest = workloads.destination(size);
+    }
+}
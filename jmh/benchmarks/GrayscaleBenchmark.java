@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+import java.util.function.BinaryOperator;
+
+/**
+ * Benchmarks Grayscaler.filter() in a FilterChain.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class GrayscaleBenchmark extends FilterBenchmark {
+    private BinaryOperator<BufferedImage> filter;
+
+    /**
+     * Creates the frame and the filter.
+     */
+    @Setup
+    public void setUp() {
+        createFrame();
+        filter = workloads.grayscale();
+    }
+
+    /**
+     * @return the grayscaled frame
+     */
+    @Benchmark
+    public BufferedImage grayscale() {
+        return filter.apply(frame, dest);
+    }
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+import java.util.function.BinaryOperator;
+
+/**
+ * Benchmarks Halftoner.filter() in a FilterChain at half-tone radii from 2 to 32.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class HalftoneBenchmark extends FilterBenchmark {
+    @Param({"2", "4", "8", "16", "32"})
+    public int radius;
+
+    private BinaryOperator<BufferedImage> filter;
+
+    /**
+     * Creates the frame and the filter.
+     */
+    @Setup
+    public void setUp() {
+        createFrame();
+        filter = workloads.halftone(radius);
+    }
+
+    /**
+     * @return the half-toned frame
+     */
+    @Benchmark
+    public BufferedImage halftone() {
+        return filter.apply(frame, dest);
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+import java.util.function.BinaryOperator;
+
+/**
+ * Benchmarks Kernelizer.filter() in a FilterChain for kernels of each size from 1x1
+ * to 31x31, of each kind: box kernels, separable blurs and dense kernels that are
+ * neither, which all take different paths through KernelPlan.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class KernelBenchmark extends FilterBenchmark {
+    @Param({"box", "separable", "dense"})
+    public String kind;
+
+    @Param({"1", "3", "5", "7", "9", "15", "21", "31"})
+    public int n;
+
+    private BinaryOperator<BufferedImage> filter;
+
+    /**
+     * Creates the frame and the filter.
+     */
+    @Setup
+    public void setUp() {
+        createFrame();
+        filter = workloads.kernel(kind, n);
+    }
+
+    /**
+     * @return the processed frame
+     */
+    @Benchmark
+    public BufferedImage kernel() {
+        return filter.apply(frame, dest);
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.function.BinaryOperator;
+
+/**
+ * The frames and filters the benchmarks run. JMH only accepts benchmarks in a named
+ * package, while the processors live in the default package, which named packages
+ * cannot refer to, so the processors are reached through this interface, implemented
+ * by BenchmarkFilters in the default package and looked up by name once per trial.
+ * Filters take the frame and an image to write the result into, and return that
+ * image, so the benchmarks time the processing rather than allocating the output.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public interface Workloads {
+    /**
+     * @return the Workloads of the processors
+     */
+    static Workloads get() {
+        try {
+            return (Workloads) Class.forName("BenchmarkFilters").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkFilters is missing from the classpath", e);
+        }
+    }
+
+    /**
+     * @param size, the frame size, such as 640x480
+     * @return a synthetic frame of that size
+     */
+    BufferedImage frame(String size);
+
+    /**
+     * @param size, the frame size, such as 640x480
+     * @return a blank image of that size for filters to write into
+     */
+    BufferedImage destination(String size);
+
+    /**
+     * @return a filter grayscaling frames
+     */
+    BinaryOperator<BufferedImage> grayscale();
+
+    /**
+     * @param kind, the kind of kernel: box, separable or dense
+     * @param n, the size of the kernel
+     * @return a filter applying an nxn kernel of that kind
+     */
+    BinaryOperator<BufferedImage> kernel(String kind, int n);
+
+    /**
+     * @param radius, the half-tone radius
+     * @return a filter half-toning frames
+     */
+    BinaryOperator<BufferedImage> halftone(int radius);
+}
@@ -0,0 +1,284 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+/**
+ * Headless batch mode: runs a filter over a directory of images and writes the
+ * results as .png files. Decoding, processing and encoding run as a parallel pipeline
+ * joined by bounded queues, so only a few images are in memory at any time however
+ * many are processed.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class BatchProcessor {
+    private final UnaryOperator<BufferedImage> filter;
+    private final Path outputDir;
+    private final int threads;
+
+    private final PngEncoder png = PngEncoder.create();
+    private final FrameMetrics metrics = new FrameMetrics("decode", "process", "encode");
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Constructor for BatchProcessor.
+     *
+     * @param filter, the filter to be applied to each image
+     * @param outputDir, the directory results are written to
+     * @param threads, the number of workers in each stage
+     */
+    public BatchProcessor(UnaryOperator<BufferedImage> filter, Path outputDir, int threads) {
+        this.filter = filter;
+        this.outputDir = outputDir;
+        this.threads = threads;
+    }
+
+    /**
+     * Processes every file, returning once all of them are written.
+     *
+     * @param files, the images to be processed
+     * @throws IOException if the output directory cannot be created
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void run(List<Path> files) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        BlockingQueue<Job> inputs = new ArrayBlockingQueue<>(files.size() + threads);
+        BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(2 * threads);
+        BlockingQueue<Job> processed = new ArrayBlockingQueue<>(2 * threads);
+        for (Path file : files) {
+            inputs.add(new Job(file));
+        }
+
+        List<Thread> decoders = start("decode", inputs, decoded, job -> {
+            metrics.frameIn();
+            job.image = ImageIO.read(job.file.toFile());
+            if (job.image == null) {
+                throw new IOException("not a readable image");
+            }
+        });
+        List<Thread> processors = start("process", decoded, processed,
+                job -> job.image = filter.apply(job.image));
+        List<Thread> encoders = start("encode", processed, null, job -> {
+            png.write(job.image, outputDir.resolve(outputName(job.file)));
+            job.image = null;
+            done.incrementAndGet();
+            metrics.frameOut();
+        });
+
+        // shuts each stage down once the one before it has finished
+        finish(decoders, inputs);
+        finish(processors, decoded);
+        finish(encoders, processed);
+    }
+
+    /**
+     * @return the metrics each stage records into
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Prints the number of images processed, the throughput, and the time each stage
+     * spent per image, as a mean and percentiles, with the bytes it allocated.
+     *
+     * @param seconds, the wall-clock time the run took
+     */
+    public void report(double seconds) {
+        System.out.printf("%d images in %.2f s, %.1f images/s, %d failed%n",
+                done.get(), seconds, done.get() / seconds, failed.get());
+        FrameMetrics.Snapshot snapshot = metrics.snapshot();
+        for (String stage : snapshot.getStages()) {
+            LatencyHistogram latency = snapshot.getLatency(stage);
+            System.out.printf("  %-8s %8.2f ms/image (p50 %.2f, p99 %.2f, max %.2f), %.0f B/image (%d workers)%n",
+                    stage, latency.getMean() / 1e6, latency.getPercentile(50) / 1e6,
+                    latency.getPercentile(99) / 1e6, latency.getMax() / 1e6,
+                    snapshot.getAllocatedPerFrame(stage), threads);
+        }
+    }
+
+    /**
+     * Starts the workers of one stage. Each takes jobs from its input queue, does its
+     * step, and passes the job on, until it takes the end-of-input marker. A job
+     * whose step fails is reported and dropped.
+     *
+     * @param name, the name of the stage, which it is timed under
+     * @param input, the queue jobs are taken from
+     * @param output, the queue jobs are passed on to, or null for the last stage
+     * @param step, the work done on each job
+     * @return the stage's worker threads
+     */
+    private List<Thread> start(String name, BlockingQueue<Job> input, BlockingQueue<Job> output, Step step) {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    for (Job job = input.take(); job != Job.END; job = input.take()) {
+                        long start = System.nanoTime();
+                        long allocated = FrameMetrics.threadAllocatedBytes();
+                        try {
+                            step.run(job);
+                        } catch (IOException | RuntimeException e) {
+                            failed.incrementAndGet();
+                            metrics.dropped(1);
+                            System.err.println(job.file + ": " + name + " failed: " + e);
+                            continue;
+                        } finally {
+                            metrics.record(name, start, allocated);
+                        }
+                        if (output != null) {
+                            output.put(job);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, name + "-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        return workers;
+    }
+
+    /**
+     * Tells a stage's workers the input has ended and waits for them to finish.
+     *
+     * @param workers, the stage's worker threads
+     * @param input, the stage's input queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void finish(List<Thread> workers, BlockingQueue<Job> input) throws InterruptedException {
+        for (int i = 0; i < workers.size(); i++) {
+            input.put(Job.END);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Lists the input images. The input is either a directory, in which case every
+     * image in it is processed, or a glob such as frames/*.jpg.
+     *
+     * @param input, the input directory or glob
+     * @return the input images in file name order
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<Path> listInputs(String input) throws IOException {
+        int wildcard = -1;
+        for (char c : "*?[{".toCharArray()) {
+            int index = input.indexOf(c);
+            if (index >= 0 && (wildcard < 0 || index < wildcard)) {
+                wildcard = index;
+            }
+        }
+        if (wildcard < 0) {
+            return ImageSequenceSource.listImages(Paths.get(input));
+        }
+        // walks from the deepest directory without wildcards in it
+        int slash = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf(File.separatorChar, wildcard));
+        Path root = Paths.get(slash < 0 ? "." : input.substring(0, slash + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input.substring(slash + 1));
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(root.relativize(file)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Gets the name a result is saved under: the input's name with a .png extension.
+     *
+     * @param file, the input image
+     * @return the output file name
+     */
+    private static String outputName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + ".png";
+    }
+
+    /**
+     * Program's main method, runs a batch.
+     *
+     * @param args, command-line args: input directory or glob, filter specification
+     *              (see FilterSpec), output directory, and optionally --threads N and
+     *              --metrics FILE to write each stage's timings to a .csv file
+     * @throws Exception if the batch cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: java BatchProcessor <input dir or glob> <filter> <output dir> [--threads N]"
+                    + " [--metrics FILE.csv]");
+            System.err.println("  filters: grayscale, halftone:RADIUS[:#BG:#FG][:BORDER], kernel:FILE[:BORDER], or several");
+            System.err.println("           of them separated by commas, applied in order");
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path metrics = null;
+        for (int i = 3; i < args.length - 1; i++) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--metrics")) {
+                metrics = Paths.get(args[i + 1]);
+            }
+        }
+        List<Path> files = listInputs(args[0]);
+        BatchProcessor batch = new BatchProcessor(FilterSpec.parse(args[1]), Paths.get(args[2]), threads);
+        long start = System.nanoTime();
+        batch.run(files);
+        batch.report((System.nanoTime() - start) / 1e9);
+        if (metrics != null) {
+            batch.getMetrics().writeCsv(metrics);
+        }
+    }
+
+    /**
+     * Work done by a stage on one job.
+     */
+    private interface Step {
+        /**
+         * Does the stage's work on a job.
+         *
+         * @param job, the job
+         * @throws IOException if the image cannot be read or written
+         */
+        void run(Job job) throws IOException;
+    }
+
+    /**
+     * One image travelling through the pipeline.
+     */
+    private static class Job {
+        // marker telling a worker the input has ended
+        static final Job END = new Job(null);
+
+        final Path file;
+        BufferedImage image;
+
+        /**
+         * Constructor for Job.
+         *
+         * @param file, the input image
+         */
+        Job(Path file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Measurements of the processors that are not throughput benchmarks, which are in the
+ * JMH suite under jmh/ (run with gradle jmh): how each filter scales from one thread
+ * to every core, and how much time previews at a Pyramid level save and how far they
+ * are from the full-resolution output.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class Benchmark {
+    private long warmupMillis = 1000;
+    private long iterationMillis = 500;
+    private int iterations = 5;
+
+    /**
+     * Program's main method, runs the measurements.
+     *
+     * @param args, command-line args:
+     *              --filters grayscale,kernel,halftone
+     *              --sizes 640x480,1280x720,1920x1080
+     *              --kernels 1-31/2 (sizes as a list or a range with an optional step)
+     *              --kinds box,separable,dense
+     *              --radii 2,4,8,16,32
+     *              --warmup MS --iteration MS --iterations N
+     *              --scaling to time each filter on 1 thread against all of them
+     *              --threads N to time it against N threads instead
+     *              --preview WxH to time each filter at full resolution against a
+     *              preview for a display of that size (960x540 by default)
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                boolean flag = i + 1 == args.length || args[i + 1].startsWith("--");
+                options.put(args[i].substring(2), flag ? "" : args[++i]);
+            }
+        }
+        Benchmark benchmark = new Benchmark();
+        benchmark.warmupMillis = Long.parseLong(options.getOrDefault("warmup", "1000"));
+        benchmark.iterationMillis = Long.parseLong(options.getOrDefault("iteration", "500"));
+        benchmark.iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        List<String> filters = Arrays.asList(options.getOrDefault("filters", "grayscale,kernel,halftone").split(","));
+        List<String> kinds = Arrays.asList(options.getOrDefault("kinds", "box,separable,dense").split(","));
+        int[] kernels = parseInts(options.getOrDefault("kernels", "1,3,5,7,9,15,21,31"));
+        int[] radii = parseInts(options.getOrDefault("radii", "2,4,8,16,32"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        if (!options.containsKey("scaling") && !options.containsKey("preview")) {
+            System.out.println("usage: java Benchmark --scaling | --preview [WxH] [options]");
+            System.out.println("throughput and allocation benchmarks: gradle jmh");
+            return;
+        }
+
+        for (String size : options.getOrDefault("sizes", "640x480,1280x720,1920x1080").split(",")) {
+            String[] dimensions = size.split("x");
+            int width = Integer.parseInt(dimensions[0]);
+            int height = Integer.parseInt(dimensions[1]);
+            BufferedImage image = SyntheticFrameSource.createFrame(width, height, 0);
+            if (options.containsKey("scaling")) {
+                benchmark.scaling(image, threads);
+            } else {
+                String display = options.get("preview");
+                benchmark.preview(image, display.isEmpty() ? "960x540" : display, filters, kinds, kernels, radii);
+            }
+        }
+    }
+
+    /**
+     * Prints each filter's frame time on a single thread and on every core, and the
+     * speedup between them, as a Markdown table. Each filter is built once and
+     * writes into the same image, so only the processing is timed.
+     *
+     * @param image, the frame to be processed
+     * @param threads, the thread count for the parallel run
+     */
+    private void scaling(BufferedImage image, int threads) {
+        System.out.printf("%dx%d frame, %d available processors, %d rows per band%n%n", image.getWidth(),
+                image.getHeight(), Runtime.getRuntime().availableProcessors(), TileScheduler.getTileRows());
+        System.out.println("| filter | 1 thread | kip.threads=" + threads + " | speedup |");
+        System.out.println("|---|---:|---:|---:|");
+        scaling("grayscale", image, threads, Grayscaler.filter());
+        scaling("kernel 9x9 box", image, threads, Kernelizer.filter(kernel("box", 9)));
+        scaling("kernel 15x15 dense", image, threads, Kernelizer.filter(kernel("dense", 15)));
+        scaling("halftone 7", image, threads, Halftoner.filter(7, Color.BLACK, Color.WHITE));
+        System.out.println();
+        TileScheduler.setParallelism(threads);
+    }
+
+    /**
+     * Times a filter serially and in parallel, and prints the results.
+     *
+     * @param name, the name of the filter
+     * @param image, the frame to be processed
+     * @param threads, the thread count for the parallel run
+     * @param filter, the filter to be timed
+     */
+    private void scaling(String name, BufferedImage image, int threads, Filter filter) {
+        FilterChain chain = FilterChain.of(filter);
+        BufferedImage dest = Pixels.createImage(image.getWidth(), image.getHeight());
+        UnaryOperator<BufferedImage> process = frame -> chain.processImage(frame, dest);
+        // kernels are planned on their first frame, which is left out of the timings
+        process.apply(image);
+        TileScheduler.setParallelism(1);
+        double serial = millisPerFrame(image, process);
+        TileScheduler.setParallelism(threads);
+        double parallel = millisPerFrame(image, process);
+        System.out.printf(Locale.ROOT, "| %s | %.2f ms | %.2f ms | %.2fx |%n", name, serial, parallel, serial / parallel);
+    }
+
+    /**
+     * Prints each filter's frame time at full resolution and as a preview for a
+     * display: processed at the Pyramid level covering the display, with the filter
+     * scaled to match the way the window does it, counting the time to build the
+     * level. The preview is also compared with the full-resolution output shrunk to
+     * the same level, to show how much the scaling changes the picture.
+     *
+     * @param image, the frame to be processed
+     * @param display, the size of the display, such as 960x540
+     * @param filters, the filters to be timed
+     * @param kinds, the kinds of kernel
+     * @param kernels, the kernel sizes
+     * @param radii, the half-tone radii
+     */
+    private void preview(BufferedImage image, String display, List<String> filters, List<String> kinds,
+                         int[] kernels, int[] radii) {
+        String[] dimensions = display.split("x");
+        int level = Pyramid.levelFor(image.getWidth(), image.getHeight(), Integer.parseInt(dimensions[0]),
+                Integer.parseInt(dimensions[1]));
+        int scale = Pyramid.scale(level);
+        System.out.printf("%dx%d frame previewed at 1/%d resolution for a %s display%n", image.getWidth(),
+                image.getHeight(), scale, display);
+        System.out.printf("%-24s %12s %12s %8s %10s%n", "filter", "full", "preview", "saved", "mean diff");
+        if (filters.contains("grayscale")) {
+            preview("grayscale", image, level, Grayscaler.filter(), Grayscaler.filter());
+        }
+        if (filters.contains("kernel")) {
+            for (String kind : kinds) {
+                for (int n : kernels) {
+                    KernelPlan plan = new KernelPlan(kernel(kind, n));
+                    preview("kernel " + kind + " " + n, image, level, Kernelizer.filter(plan, BorderMode.CLAMP),
+                            Kernelizer.filter(plan.scaled(scale), BorderMode.CLAMP));
+                }
+            }
+        }
+        if (filters.contains("halftone")) {
+            for (int rad : radii) {
+                preview("halftone " + rad, image, level, Halftoner.filter(rad, Color.BLACK, Color.WHITE),
+                        Halftoner.filter(Math.max(1, Math.round((float) rad / scale)), Color.BLACK, Color.WHITE));
+            }
+        }
+    }
+
+    /**
+     * Times a filter at full resolution and as a preview, and prints the results.
+     *
+     * @param name, the name of the filter
+     * @param image, the frame to be processed
+     * @param level, the Pyramid level the preview is processed at
+     * @param full, the filter at full resolution
+     * @param scaled, the filter scaled to the level
+     */
+    private void preview(String name, BufferedImage image, int level, Filter full, Filter scaled) {
+        FilterChain fullChain = FilterChain.of(full);
+        FilterChain previewChain = FilterChain.of(scaled);
+        UnaryOperator<BufferedImage> preview = frame -> {
+            try (Pyramid pyramid = new Pyramid(frame, level)) {
+                return previewChain.processImage(pyramid.getLevel(level));
+            }
+        };
+        double fullMillis = millisPerFrame(image, fullChain::processImage);
+        double previewMillis = millisPerFrame(image, preview);
+
+        // mean difference per channel from the full-resolution output, shrunk the same way
+        int[] expected;
+        try (Pyramid shrunk = new Pyramid(fullChain.processImage(image), level)) {
+            expected = Pixels.data(shrunk.getLevel(level)).clone();
+        }
+        int[] actual = Pixels.data(preview.apply(image));
+        long total = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                total += Math.abs(((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff));
+            }
+        }
+        System.out.printf("%-24s %9.2f ms %9.2f ms %7.1f%% %10.2f%n", name, fullMillis, previewMillis,
+                100 * (1 - previewMillis / fullMillis), (double) total / (3 * expected.length));
+    }
+
+    /**
+     * Measures the average time a filter takes on a frame after warming it up.
+     *
+     * @param image, the frame to be processed
+     * @param filter, the filter to be timed
+     * @return milliseconds per frame
+     */
+    private double millisPerFrame(BufferedImage image, UnaryOperator<BufferedImage> filter) {
+        long end = System.nanoTime() + warmupMillis * 1_000_000;
+        while (System.nanoTime() < end) {
+            filter.apply(image);
+        }
+        long start = System.nanoTime();
+        int count = 0;
+        do {
+            filter.apply(image);
+            count++;
+        } while (System.nanoTime() - start < iterations * iterationMillis * 1_000_000);
+        return (System.nanoTime() - start) / 1e6 / count;
+    }
+
+    /**
+     * Parses a list of numbers such as 2,4,8 or a range such as 1-31/2.
+     *
+     * @param text, the list or range
+     * @return the numbers
+     */
+    private static int[] parseInts(String text) {
+        if (text.contains("-")) {
+            String[] range = text.split("[-/]");
+            int step = range.length > 2 ? Integer.parseInt(range[2]) : 1;
+            int first = Integer.parseInt(range[0]);
+            int last = Integer.parseInt(range[1]);
+            int[] values = new int[(last - first) / step + 1];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = first + i * step;
+            }
+            return values;
+        }
+        return Arrays.stream(text.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * Creates an nxn kernel of the given kind: box (every entry the same), separable
+     * (a binomial blur) or dense (neither).
+     *
+     * @param kind, the kind of kernel
+     * @param n, the size of the kernel
+     * @return the kernel
+     */
+    static float[][] kernel(String kind, int n) {
+        float[][] kernel = new float[n][n];
+        float[] binomial = new float[n];
+        binomial[0] = 1;
+        for (int k = 1; k < n; k++) {
+            for (int i = k; i > 0; i--) {
+                binomial[i] += binomial[i - 1];
+            }
+        }
+        float sum = 0;
+        for (float weight : binomial) {
+            sum += weight;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                switch (kind) {
+                    case "box" -> kernel[i][j] = 1f / (n * n);
+                    case "separable" -> kernel[i][j] = binomial[i] * binomial[j] / (sum * sum);
+                    case "dense" -> kernel[i][j] = ((i * 7 + j * 3) % 5 + (i == j ? 3 : 0)) / (2f * n * n);
+                    default -> throw new IllegalArgumentException("unknown kernel kind: " + kind);
+                }
+            }
+        }
+        return kernel;
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.Locale;
+
+/**
+ * How filters that read a neighborhood of pixels treat the pixels past the edges of a
+ * frame. Processors split every frame into an interior, where every tap lands inside
+ * the frame and pixels are read directly, and a border a kernel's reach wide around
+ * it, which is the only place the border mode is consulted.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public enum BorderMode {
+    /** repeats the edge pixel: aaa|abcd|ddd */
+    CLAMP,
+    /** reflects the frame about its edge: cba|abcd|dcb */
+    MIRROR,
+    /** carries on from the opposite edge: bcd|abcd|abc */
+    WRAP,
+    /** reads opaque black past the edge */
+    CONSTANT;
+
+    // the pixel CONSTANT reads past the edges
+    public static final int CONSTANT_RGB = 0xff000000;
+
+    /**
+     * Maps a row or column, which may lie past either edge, to the one that is read
+     * in its place.
+     *
+     * @param i, the row or column
+     * @param n, the number of rows or columns in the frame
+     * @return the row or column read, or -1 if CONSTANT_RGB is read instead
+     */
+    public int index(int i, int n) {
+        if (i >= 0 && i < n) {
+            return i;
+        }
+        switch (this) {
+            case CLAMP:
+                return i < 0 ? 0 : n - 1;
+            case MIRROR:
+                int reflected = Math.floorMod(i, 2 * n);
+                return reflected < n ? reflected : 2 * n - 1 - reflected;
+            case WRAP:
+                return Math.floorMod(i, n);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Parses a border mode by name, ignoring case.
+     *
+     * @param name, the name of the mode, such as mirror
+     * @return the border mode
+     */
+    public static BorderMode parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown border mode: " + name);
+        }
+    }
+
+    /**
+     * Checks whether a name is that of a border mode.
+     *
+     * @param name, the name to be checked
+     * @return true if parse() accepts the name
+     */
+    public static boolean isName(String name) {
+        for (BorderMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the mode's name in lower case, as parse() accepts it
+     */
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,163 @@
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of pixel arrays and output images keyed by size, so that frames and
+ * intermediate buffers are recycled instead of being allocated for every frame.
+ * Buffers are taken with acquire(), or acquireFloats() for planes of floats, and
+ * handed back with release(); their contents are not cleared in between. An image wanted by more than one consumer, such as a frame
+ * both shown and recorded, can be held by each with retainImage(), and goes back to
+ * the pool only once every holder has released it.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class BufferPool {
+    // most buffers of one size kept around at once
+    private static final int MAX_IDLE = 4 + 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final Map<Integer, Bucket<int[]>> arrays = new ConcurrentHashMap<>();
+    private static final Map<Integer, Bucket<float[]>> floatArrays = new ConcurrentHashMap<>();
+    private static final Map<Long, Bucket<BufferedImage>> images = new ConcurrentHashMap<>();
+    // holds taken on images with retainImage(), beyond the holder that acquired them
+    private static final Map<BufferedImage, Integer> holds = new ConcurrentHashMap<>();
+
+    /**
+     * Takes a buffer of the given length from the pool, allocating one if none is
+     * free.
+     *
+     * @param length, the length of the buffer
+     * @return an int[] of exactly that length, with undefined contents
+     */
+    public static int[] acquire(int length) {
+        int[] buffer = arrays.computeIfAbsent(length, key -> new Bucket<>()).poll();
+        return buffer != null ? buffer : new int[length];
+    }
+
+    /**
+     * Hands a buffer back to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer, the buffer to be recycled
+     */
+    public static void release(int[] buffer) {
+        arrays.computeIfAbsent(buffer.length, key -> new Bucket<>()).offer(buffer);
+    }
+
+    /**
+     * Takes a float buffer of the given length from the pool, allocating one if none
+     * is free.
+     *
+     * @param length, the length of the buffer
+     * @return a float[] of exactly that length, with undefined contents
+     */
+    public static float[] acquireFloats(int length) {
+        float[] buffer = floatArrays.computeIfAbsent(length, key -> new Bucket<>()).poll();
+        return buffer != null ? buffer : new float[length];
+    }
+
+    /**
+     * Hands a float buffer back to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer, the buffer to be recycled
+     */
+    public static void release(float[] buffer) {
+        floatArrays.computeIfAbsent(buffer.length, key -> new Bucket<>()).offer(buffer);
+    }
+
+    /**
+     * Takes an image of the given size from the pool, allocating one if none is free.
+     * Images are of the type Pixels.createImage() returns, so every processor can
+     * write into them.
+     *
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @return a TYPE_INT_ARGB image with undefined contents
+     */
+    public static BufferedImage acquireImage(int width, int height) {
+        BufferedImage image = images.computeIfAbsent(key(width, height), key -> new Bucket<>()).poll();
+        return image != null ? image : Pixels.createImage(width, height);
+    }
+
+    /**
+     * Takes one more hold on an image, which then needs one more releaseImage() before
+     * it goes back to the pool.
+     *
+     * @param image, the image to be held
+     */
+    public static void retainImage(BufferedImage image) {
+        holds.merge(image, 1, Integer::sum);
+    }
+
+    /**
+     * Hands an image back to the pool, or lets go of one hold on it if it has been
+     * retained. The caller must not use it afterwards. Images no processor could write
+     * into are left to the garbage collector.
+     *
+     * @param image, the image to be recycled
+     */
+    public static void releaseImage(BufferedImage image) {
+        while (!holds.isEmpty()) {
+            Integer held = holds.get(image);
+            if (held == null) {
+                break;
+            }
+            if (held == 1 ? holds.remove(image, held) : holds.replace(image, held, held - 1)) {
+                return;
+            }
+        }
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB && Pixels.isCompact(image)) {
+            images.computeIfAbsent(key(image.getWidth(), image.getHeight()), key -> new Bucket<>()).offer(image);
+        }
+    }
+
+    /**
+     * Gets the key images of one size are pooled under.
+     *
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @return the key
+     */
+    private static long key(int width, int height) {
+        return (long) width << 32 | height;
+    }
+
+    /**
+     * Free buffers of one size.
+     *
+     * @param <T> the type of buffer
+     */
+    private static class Bucket<T> {
+        private final ConcurrentLinkedDeque<T> buffers = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger idle = new AtomicInteger();
+
+        /**
+         * Takes the most recently released buffer, which is the likeliest to still be
+         * in cache.
+         *
+         * @return a free buffer, or null if there is none
+         */
+        T poll() {
+            T buffer = buffers.pollFirst();
+            if (buffer != null) {
+                idle.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        /**
+         * Keeps a buffer unless enough of its size are kept already.
+         *
+         * @param buffer, the buffer to be kept
+         */
+        void offer(T buffer) {
+            if (idle.incrementAndGet() <= MAX_IDLE) {
+                buffers.offerFirst(buffer);
+            } else {
+                idle.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Shares a fixed set of worker threads fairly between many streams of frames. Each
+ * stream gets a Lane, which it installs with TileScheduler.setRunner() so that the
+ * bands of every frame it processes are queued on its lane, and the workers always
+ * take the next band from the waiting lane that has had the least CPU time so far,
+ * scaled by its weight. A stream with a heavy filter thus takes longer per frame, but
+ * cannot take more than its share of the cores from streams with light ones.
+ *
+ * Each band is charged at the lane's average band time as it starts, so a heavy lane
+ * cannot win every worker at once before its first band finishes, and corrected to
+ * the time it really took once it does. Band times are the workers' own CPU time,
+ * not the wall-clock time, which counts the time the OS gave other threads too. A
+ * lane that goes idle banks no credit: it starts again at the least CPU time of the
+ * lanes still busy. A lane is busy until its last band finishes, not just until it
+ * is handed to a worker, or every light lane would come back behind a heavy one that
+ * took a worker while their last bands ran. A lane back within 20 ms was only between
+ * frames, its streams waiting for the OS to run them, and keeps its place; on a
+ * single core, light lanes lost a fifth of their share to those gaps otherwise.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FairScheduler implements AutoCloseable {
+    // weight of each new band time in a lane's average
+    private static final double SMOOTHING = 0.25;
+    // longest a lane can go without bands and still be between frames, not idle
+    private static final long IDLE_NANOS = 20_000_000L;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final List<Lane> lanes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private double virtualTime;     // the CPU time, scaled by weight, of the lane picked last
+    private boolean closed;
+
+    /**
+     * Constructor for FairScheduler, starting its workers.
+     *
+     * @param threads, the number of worker threads
+     */
+    public FairScheduler(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("thread count must be positive: " + threads);
+        }
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::workLoop, "fair-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Creates a lane for one stream.
+     *
+     * @param name, the name of the stream
+     * @param weight, the stream's share of the workers relative to other lanes, 1 for
+     *                an equal share
+     * @return new Lane
+     */
+    public Lane lane(String name, double weight) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("weight must be positive: " + weight);
+        }
+        Lane lane = new Lane(name, weight);
+        lock.lock();
+        try {
+            lanes.add(lane);
+        } finally {
+            lock.unlock();
+        }
+        return lane;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getThreads() {
+        return workers.size();
+    }
+
+    /**
+     * Stops the workers once the bands already queued are done. Frames processed on
+     * a lane afterwards fail.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Worker: runs bands, fairest lane first, until the scheduler closes. Frames
+     * processed within a band, such as by a filter banding its own passes, run on the
+     * worker itself.
+     */
+    private void workLoop() {
+        TileScheduler.setRunner(TileScheduler.SERIAL);
+        while (true) {
+            Lane lane;
+            Batch batch;
+            int index;
+            double charged;
+            lock.lock();
+            try {
+                lane = next();
+                while (lane == null) {
+                    if (closed) {
+                        return;
+                    }
+                    work.awaitUninterruptibly();
+                    lane = next();
+                }
+                batch = lane.batches.peekFirst();
+                index = batch.next++;
+                if (batch.next == batch.count) {
+                    lane.batches.removeFirst();
+                }
+                virtualTime = lane.pass;
+                lane.running++;
+                charged = lane.average;
+                lane.pass += charged / lane.weight;
+                lane.charging += charged / lane.weight;
+            } finally {
+                lock.unlock();
+            }
+
+            long start = cpuTime();
+            Throwable failure = null;
+            try {
+                batch.band.accept(index);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            long nanos = cpuTime() - start;
+
+            lock.lock();
+            try {
+                lane.pass += (nanos - charged) / lane.weight;
+                lane.charging -= charged / lane.weight;
+                lane.average = lane.average == 0 ? nanos : lane.average + SMOOTHING * (nanos - lane.average);
+                lane.cpuNanos += nanos;
+                lane.bands++;
+                lane.running--;
+                if (lane.running == 0 && lane.batches.isEmpty()) {
+                    lane.idleSince = System.nanoTime();
+                }
+                batch.finish(failure);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the CPU time of the current thread, or where the JVM cannot measure
+     *         that, the wall-clock time, in nanoseconds
+     */
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Finds where a lane coming back from idle starts again. The lock must be held.
+     *
+     * @return the least CPU time, scaled by weight, of the lanes with bands waiting or
+     *         running, not counting what the bands still running were charged in
+     *         advance, or if there are none, that of the lane picked last
+     */
+    private double floor() {
+        double least = Double.POSITIVE_INFINITY;
+        for (Lane lane : lanes) {
+            if (!lane.batches.isEmpty() || lane.running > 0) {
+                least = Math.min(least, lane.pass - lane.charging);
+            }
+        }
+        return least == Double.POSITIVE_INFINITY ? virtualTime : least;
+    }
+
+    /**
+     * Picks the waiting lane with the least CPU time. The lock must be held.
+     *
+     * @return the lane, or null if none has bands waiting
+     */
+    private Lane next() {
+        Lane fairest = null;
+        for (Lane lane : lanes) {
+            if (!lane.batches.isEmpty() && (fairest == null || lane.pass < fairest.pass)) {
+                fairest = lane;
+            }
+        }
+        return fairest;
+    }
+
+    /**
+     * The queue of bands of one stream, and the CPU time it has had.
+     */
+    public class Lane implements TileScheduler.Runner {
+        private final String name;
+        private final double weight;
+        private final ArrayDeque<Batch> batches = new ArrayDeque<>();
+        private double pass;            // CPU time had, scaled by weight
+        private double average;         // average band time, in nanoseconds
+        private long cpuNanos;
+        private long bands;
+        private int running;            // bands handed to workers and not yet finished
+        private double charging;        // what those bands were charged as they started, scaled by weight
+        private long idleSince;         // when the last band finished with none waiting, in System.nanoTime()
+
+        /**
+         * Constructor for Lane.
+         *
+         * @param name, the name of the stream
+         * @param weight, the stream's share of the workers
+         */
+        private Lane(String name, double weight) {
+            this.name = name;
+            this.weight = weight;
+            idleSince = System.nanoTime() - IDLE_NANOS;
+        }
+
+        /**
+         * Queues the bands of a frame on this lane and waits for the workers to run
+         * them. A band that fails fails the whole frame, once every band has run.
+         *
+         * @param count, the number of bands
+         * @param band, the work to be done on the band with a given index
+         */
+        @Override
+        public void run(int count, IntConsumer band) {
+            if (count == 0) {
+                return;
+            }
+            Batch batch = new Batch(count, band);
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("scheduler is closed");
+                }
+                if (batches.isEmpty() && running == 0 && System.nanoTime() - idleSince >= IDLE_NANOS) {
+                    // coming back from idle, without the credit of the time away
+                    pass = Math.max(pass, floor());
+                }
+                batches.addLast(batch);
+                work.signalAll();
+                while (batch.done < count) {
+                    batch.finished.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (batch.failure instanceof Error) {
+                throw (Error) batch.failure;
+            } else if (batch.failure != null) {
+                throw (RuntimeException) batch.failure;
+            }
+        }
+
+        /**
+         * Removes this lane from the scheduler. It must have no bands waiting.
+         */
+        public void remove() {
+            lock.lock();
+            try {
+                lanes.remove(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the name of the stream
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the CPU time the lane's bands have taken, in nanoseconds
+         */
+        public long getCpuNanos() {
+            lock.lock();
+            try {
+                return cpuNanos;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the number of bands run
+         */
+        public long getBands() {
+            lock.lock();
+            try {
+                return bands;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The bands of one frame.
+     */
+    private class Batch {
+        final int count;
+        final IntConsumer band;
+        final Condition finished = lock.newCondition();
+        int next;                       // the next band to be handed to a worker
+        int done;
+        Throwable failure;          // a RuntimeException or Error a band threw
+
+        /**
+         * Constructor for Batch.
+         *
+         * @param count, the number of bands
+         * @param band, the work to be done on the band with a given index
+         */
+        Batch(int count, IntConsumer band) {
+            this.count = count;
+            this.band = band;
+        }
+
+        /**
+         * Counts a band as done. The lock must be held.
+         *
+         * @param failure, what the band threw, or null
+         */
+        void finish(Throwable failure) {
+            if (failure != null && this.failure == null) {
+                this.failure = failure;
+            }
+            if (++done == count) {
+                finished.signal();
+            }
+        }
+    }
+}
@@ -0,0 +1,483 @@
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Applies large kernels to images through the fast Fourier transform, so that the
+ * cost per pixel grows with log(width * height) instead of n * n. The image is
+ * extended past its edges as the border mode says, and red and green are packed
+ * into the real and imaginary parts of one complex plane with blue in a second one.
+ *
+ * The spectrum of a kernel depends only on the kernel and the padded frame size, so
+ * it is made once with spectrum() and can be kept by the caller, as KernelPlan does,
+ * and shared between threads. The planes each frame is transformed in come from the
+ * BufferPool and go back to it when the frame is done, so frames of the same size
+ * allocate nothing, and no thread keeps planes of its own between frames.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FftConvolver {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final CompilationMXBean JIT = ManagementFactory.getCompilationMXBean();
+
+    // columns gathered together so the column pass reads whole cache lines
+    private static final int COLUMN_BLOCK = 16;
+
+    // runs of a path before it is timed, and runs in a row the JIT must have compiled
+    // nothing in, so it has compiled the path
+    private static final int WARM_UP = 10;
+    private static final int QUIET = 3;
+    // runs in a row that must not beat the fastest so far by 2% for timing to stop
+    private static final int SETTLED = 5;
+    // most runs in a warm-up or timed, in case the JIT or a path never settles
+    private static final int MAX_RUNS = 80;
+
+    // measured cost of an FFT point and level, in nanoseconds, or 0 before it is
+    private static volatile double pointCost;
+
+    /**
+     * Decides whether an nxn kernel is cheaper to apply to an image of the given size
+     * through the FFT than directly, given what the direct path costs per pixel, as
+     * KernelPlan measures it for the way it applies the kernel. The cost of the FFT is
+     * measured once, the first time this is called, unless the kip.fftCrossover system
+     * property gives the kernel size at which the FFT takes over, in which case the
+     * direct cost is not needed.
+     *
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param n, the size of the kernel
+     * @param pixelCost, a supplier of the direct path's cost per pixel, in nanoseconds
+     * @return true if FFT convolution is expected to be faster
+     */
+    public static boolean isFaster(int width, int height, int n, DoubleSupplier pixelCost) {
+        Integer crossover = Integer.getInteger("kip.fftCrossover");
+        if (crossover != null) {
+            return n >= crossover;
+        }
+        double perPoint = pointCost;
+        if (perPoint == 0) {
+            perPoint = measurePointCost();
+        }
+        long points = (long) nextPowerOfTwo(width + n - 1) * nextPowerOfTwo(height + n - 1);
+        double fft = points * (Math.log(points) / Math.log(2)) * perPoint;
+        return fft < (double) width * height * pixelCost.getAsDouble();
+    }
+
+    /**
+     * Makes the spectrum of a kernel for images of the given size.
+     *
+     * @param kernel, the nxn kernel
+     * @param width, the width of the images
+     * @param height, the height of the images
+     * @return new Spectrum
+     */
+    public static Spectrum spectrum(float[][] kernel, int width, int height) {
+        return new Spectrum(kernel, nextPowerOfTwo(width + kernel.length - 1),
+                nextPowerOfTwo(height + kernel.length - 1));
+    }
+
+    /**
+     * Applies the kernel to a whole image, making its spectrum first. Kernel entry
+     * [i][j] weighs the pixel i - n/2 columns and j - n/2 rows away, as in Kernelizer.
+     *
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param kernel, the kernel to be applied to the image
+     * @param border, how pixels past the edges are read
+     */
+    public static void convolve(int[] data, int[] newData, int width, int height, float[][] kernel,
+                                BorderMode border) {
+        convolve(data, newData, width, height, spectrum(kernel, width, height), border);
+    }
+
+    /**
+     * Applies a kernel to a whole image through its spectrum.
+     *
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param spectrum, the kernel's spectrum, made for images of this size
+     * @param border, how pixels past the edges are read
+     */
+    public static void convolve(int[] data, int[] newData, int width, int height, Spectrum spectrum,
+                                BorderMode border) {
+        if (!spectrum.fits(width, height)) {
+            throw new IllegalArgumentException("spectrum was made for another frame size");
+        }
+        int n = spectrum.n;
+        int half = n / 2;
+        int extendedWidth = width + n - 1;
+        int extendedHeight = height + n - 1;
+        int paddedWidth = spectrum.paddedWidth;
+        int paddedHeight = spectrum.paddedHeight;
+        Plan rowPlan = spectrum.rowPlan;
+        int size = paddedWidth * paddedHeight;
+        float[] redGreenRe = BufferPool.acquireFloats(size);     // red in the real parts
+        float[] redGreenIm = BufferPool.acquireFloats(size);     // green in the imaginary parts
+        float[] blueRe = BufferPool.acquireFloats(size);
+        float[] blueIm = BufferPool.acquireFloats(size);
+        try {
+            // fills the planes with the image extended past its edges, zero beyond that
+            TileScheduler.forEachBand(paddedHeight, 1, (rowStart, rowEnd) -> {
+                int[] padded = BufferPool.acquire(extendedWidth);
+                for (int y = rowStart; y < rowEnd; y++) {
+                    int offset = y * paddedWidth;
+                    if (y >= extendedHeight) {
+                        Arrays.fill(redGreenRe, offset, offset + paddedWidth, 0);
+                        Arrays.fill(redGreenIm, offset, offset + paddedWidth, 0);
+                        Arrays.fill(blueRe, offset, offset + paddedWidth, 0);
+                        Arrays.fill(blueIm, offset, offset + paddedWidth, 0);
+                        continue;
+                    }
+                    Pixels.padRow(y - half, data, width, height, half, n - 1 - half, border, padded);
+                    for (int x = 0; x < extendedWidth; x++) {
+                        int sample = padded[x];
+                        redGreenRe[offset + x] = (sample >> 16) & 0xff;
+                        redGreenIm[offset + x] = (sample >> 8) & 0xff;
+                        blueRe[offset + x] = sample & 0xff;
+                    }
+                    Arrays.fill(redGreenRe, offset + extendedWidth, offset + paddedWidth, 0);
+                    Arrays.fill(redGreenIm, offset + extendedWidth, offset + paddedWidth, 0);
+                    Arrays.fill(blueRe, offset + extendedWidth, offset + paddedWidth, 0);
+                    Arrays.fill(blueIm, offset, offset + paddedWidth, 0);
+                    rowPlan.transform(redGreenRe, redGreenIm, offset, 1, false);
+                    rowPlan.transform(blueRe, blueIm, offset, 1, false);
+                }
+                BufferPool.release(padded);
+            });
+            transformColumns(spectrum, redGreenRe, redGreenIm, blueRe, blueIm, false);
+
+            // correlates with the kernel by multiplying with its conjugate spectrum
+            float[] kernelRe = spectrum.re;
+            float[] kernelIm = spectrum.im;
+            TileScheduler.forEachBand(paddedHeight, 1, (rowStart, rowEnd) -> {
+                for (int k = rowStart * paddedWidth; k < rowEnd * paddedWidth; k++) {
+                    float re = kernelRe[k];
+                    float im = kernelIm[k];
+                    float a = redGreenRe[k];
+                    float b = redGreenIm[k];
+                    redGreenRe[k] = a * re + b * im;
+                    redGreenIm[k] = b * re - a * im;
+                    a = blueRe[k];
+                    b = blueIm[k];
+                    blueRe[k] = a * re + b * im;
+                    blueIm[k] = b * re - a * im;
+                }
+            });
+
+            transformColumns(spectrum, redGreenRe, redGreenIm, blueRe, blueIm, true);
+            float scale = 1f / ((float) paddedWidth * paddedHeight);
+            TileScheduler.forEachBand(height, 1, (rowStart, rowEnd) -> {
+                for (int y = rowStart; y < rowEnd; y++) {
+                    int offset = y * paddedWidth;
+                    rowPlan.transform(redGreenRe, redGreenIm, offset, 1, true);
+                    rowPlan.transform(blueRe, blueIm, offset, 1, true);
+                    for (int x = 0; x < width; x++) {
+                        int r = Math.min(Math.max((int) (redGreenRe[offset + x] * scale), 0), 255);
+                        int g = Math.min(Math.max((int) (redGreenIm[offset + x] * scale), 0), 255);
+                        int b = Math.min(Math.max((int) (blueRe[offset + x] * scale), 0), 255);
+                        newData[y * width + x] = Pixels.pack(r, g, b);
+                    }
+                }
+            });
+        } finally {
+            BufferPool.release(redGreenRe);
+            BufferPool.release(redGreenIm);
+            BufferPool.release(blueRe);
+            BufferPool.release(blueIm);
+        }
+    }
+
+    /**
+     * Transforms every column of both planes. Blocks of columns are copied side by
+     * side into a contiguous scratch buffer, transformed there and copied back.
+     *
+     * @param spectrum, the spectrum the planes are padded for
+     * @param redGreenRe, the real parts of the red and green plane
+     * @param redGreenIm, the imaginary parts of the red and green plane
+     * @param blueRe, the real parts of the blue plane
+     * @param blueIm, the imaginary parts of the blue plane
+     * @param inverse, true for the inverse transform
+     */
+    private static void transformColumns(Spectrum spectrum, float[] redGreenRe, float[] redGreenIm,
+                                         float[] blueRe, float[] blueIm, boolean inverse) {
+        int paddedWidth = spectrum.paddedWidth;
+        int blocks = (paddedWidth + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+        TileScheduler.forEachBand(blocks, 1, (blockStart, blockEnd) -> {
+            float[] columnRe = BufferPool.acquireFloats(COLUMN_BLOCK * spectrum.paddedHeight);
+            float[] columnIm = BufferPool.acquireFloats(COLUMN_BLOCK * spectrum.paddedHeight);
+            for (int block = blockStart; block < blockEnd; block++) {
+                int x0 = block * COLUMN_BLOCK;
+                int columns = Math.min(COLUMN_BLOCK, paddedWidth - x0);
+                transformColumns(spectrum, redGreenRe, redGreenIm, x0, columns, columnRe, columnIm, inverse);
+                transformColumns(spectrum, blueRe, blueIm, x0, columns, columnRe, columnIm, inverse);
+            }
+            BufferPool.release(columnRe);
+            BufferPool.release(columnIm);
+        });
+    }
+
+    /**
+     * Transforms a block of neighbouring columns of one plane.
+     *
+     * @param spectrum, the spectrum the plane is padded for
+     * @param re, the real parts of the plane
+     * @param im, the imaginary parts of the plane
+     * @param x0, the first column of the block
+     * @param columns, the number of columns in the block
+     * @param columnRe, scratch for the real parts of the columns
+     * @param columnIm, scratch for the imaginary parts of the columns
+     * @param inverse, true for the inverse transform
+     */
+    private static void transformColumns(Spectrum spectrum, float[] re, float[] im, int x0, int columns,
+                                         float[] columnRe, float[] columnIm, boolean inverse) {
+        int paddedWidth = spectrum.paddedWidth;
+        int paddedHeight = spectrum.paddedHeight;
+        for (int y = 0; y < paddedHeight; y++) {
+            int offset = y * paddedWidth + x0;
+            for (int c = 0; c < columns; c++) {
+                columnRe[c * paddedHeight + y] = re[offset + c];
+                columnIm[c * paddedHeight + y] = im[offset + c];
+            }
+        }
+        for (int c = 0; c < columns; c++) {
+            spectrum.columnPlan.transform(columnRe, columnIm, c * paddedHeight, 1, inverse);
+        }
+        for (int y = 0; y < paddedHeight; y++) {
+            int offset = y * paddedWidth + x0;
+            for (int c = 0; c < columns; c++) {
+                re[offset + c] = columnRe[c * paddedHeight + y];
+                im[offset + c] = columnIm[c * paddedHeight + y];
+            }
+        }
+    }
+
+    /**
+     * Times some work on this thread alone, once the JIT has compiled it. It is run
+     * until the JIT has compiled nothing for a few runs, and then until the fastest
+     * run so far has not been beaten by 2% for several runs in a row. Runs are timed
+     * in the thread's CPU time where the JVM can measure it, as the FairScheduler
+     * charges lanes, since the JIT compiles in the background on the same cores.
+     * Without both, samples timed on a single core came out two to four times too
+     * long.
+     *
+     * @param work, the work, which must not depend on the TileScheduler's runner
+     * @return the fastest run, in nanoseconds
+     */
+    static long time(Runnable work) {
+        long best = Long.MAX_VALUE;
+        TileScheduler.Runner runner = TileScheduler.getRunner();
+        TileScheduler.setRunner(TileScheduler.SERIAL);
+        try {
+            boolean watched = JIT != null && JIT.isCompilationTimeMonitoringSupported();
+            long compiled = -1;
+            int quiet = 0;
+            for (int run = 0; run < MAX_RUNS && (run < WARM_UP || watched && quiet < QUIET); run++) {
+                work.run();
+                long total = watched ? JIT.getTotalCompilationTime() : 0;
+                quiet = total == compiled ? quiet + 1 : 0;
+                compiled = total;
+            }
+            int settled = 0;
+            for (int run = 0; run < MAX_RUNS && settled < SETTLED; run++) {
+                long start = cpuTime();
+                work.run();
+                long time = cpuTime() - start;
+                settled = time < best - best / 50 ? 0 : settled + 1;
+                best = Math.min(best, time);
+            }
+        } finally {
+            TileScheduler.setRunner(runner);
+        }
+        return best;
+    }
+
+    /**
+     * @return the CPU time of the current thread, or where the JVM cannot measure
+     *         that, the wall-clock time, in nanoseconds
+     */
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Times FFT convolution on a small image and stores the cost of an FFT butterfly
+     * point, in nanoseconds, which hardly depends on the kernel. It is timed on the
+     * calling thread alone, as KernelPlan times the direct path, since both spread
+     * their bands over the same cores when frames are processed, and a FairScheduler
+     * the thread may be running its bands on would only add other streams' work to the
+     * times.
+     *
+     * @return the FFT cost per point and level
+     */
+    private static synchronized double measurePointCost() {
+        if (pointCost != 0) {
+            return pointCost;
+        }
+        // large enough for the transforms rather than the setup around them to count,
+        // and padded to exactly 256x256
+        int size = 248;
+        int n = 9;
+        int[] data = new int[size * size];
+        int[] newData = new int[size * size];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i * 0x9e3779b9;
+        }
+        float[][] kernel = new float[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                kernel[i][j] = ((i * 7 + j * 3) % 5 - 2) / 10f;
+            }
+        }
+        Spectrum spectrum = spectrum(kernel, size, size);
+        long fft = time(() -> convolve(data, newData, size, size, spectrum, BorderMode.CLAMP));
+        long points = (long) spectrum.paddedWidth * spectrum.paddedHeight;
+        pointCost = Math.max(Double.MIN_VALUE, fft / (points * (Math.log(points) / Math.log(2))));
+        return pointCost;
+    }
+
+    /**
+     * @param n, a positive number
+     * @return the smallest power of two no less than n
+     */
+    private static int nextPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * The spectrum of a kernel, padded for frames of one size, with the transform
+     * plans for that size. Spectra never change once made, so they can be shared
+     * between threads.
+     */
+    public static class Spectrum {
+        private final int n;
+        private final int paddedWidth;
+        private final int paddedHeight;
+        private final Plan rowPlan;
+        private final Plan columnPlan;
+        private final float[] re;
+        private final float[] im;
+
+        /**
+         * Constructor for Spectrum.
+         *
+         * @param kernel, the nxn kernel
+         * @param paddedWidth, the padded width, a power of two
+         * @param paddedHeight, the padded height, a power of two
+         */
+        private Spectrum(float[][] kernel, int paddedWidth, int paddedHeight) {
+            n = kernel.length;
+            this.paddedWidth = paddedWidth;
+            this.paddedHeight = paddedHeight;
+            rowPlan = new Plan(paddedWidth);
+            columnPlan = new Plan(paddedHeight);
+            re = new float[paddedWidth * paddedHeight];
+            im = new float[paddedWidth * paddedHeight];
+            // entry [i][j] placed at column i and row j
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    re[j * paddedWidth + i] = kernel[i][j];
+                }
+            }
+            for (int j = 0; j < n; j++) {
+                rowPlan.transform(re, im, j * paddedWidth, 1, false);
+            }
+            for (int x = 0; x < paddedWidth; x++) {
+                columnPlan.transform(re, im, x, paddedWidth, false);
+            }
+        }
+
+        /**
+         * Checks whether the spectrum was made for frames of a size, or another size
+         * padded to the same one.
+         *
+         * @param width, the width of the frames
+         * @param height, the height of the frames
+         * @return true if the spectrum can be used for them
+         */
+        public boolean fits(int width, int height) {
+            return nextPowerOfTwo(width + n - 1) == paddedWidth && nextPowerOfTwo(height + n - 1) == paddedHeight;
+        }
+    }
+
+    /**
+     * Twiddle factors and bit-reversal order for in-place radix-2 transforms of one
+     * length.
+     */
+    private static class Plan {
+        private final int n;
+        private final float[] cos;
+        private final float[] sin;
+        private final int[] reversed;
+
+        /**
+         * Constructor for Plan.
+         *
+         * @param n, the transform length, a power of two
+         */
+        Plan(int n) {
+            this.n = n;
+            cos = new float[n / 2];
+            sin = new float[n / 2];
+            for (int k = 0; k < n / 2; k++) {
+                cos[k] = (float) Math.cos(2 * Math.PI * k / n);
+                sin[k] = (float) Math.sin(2 * Math.PI * k / n);
+            }
+            reversed = new int[n];
+            int bits = Integer.numberOfTrailingZeros(n);
+            for (int k = 0; k < n; k++) {
+                reversed[k] = bits == 0 ? 0 : Integer.reverse(k) >>> (32 - bits);
+            }
+        }
+
+        /**
+         * Transforms n complex values in place.
+         *
+         * @param re, the real parts
+         * @param im, the imaginary parts
+         * @param offset, the index of the first value
+         * @param stride, the distance between consecutive values
+         * @param inverse, true for the (unscaled) inverse transform
+         */
+        void transform(float[] re, float[] im, int offset, int stride, boolean inverse) {
+            for (int k = 0; k < n; k++) {
+                int r = reversed[k];
+                if (r > k) {
+                    int a = offset + k * stride;
+                    int b = offset + r * stride;
+                    float t = re[a];
+                    re[a] = re[b];
+                    re[b] = t;
+                    t = im[a];
+                    im[a] = im[b];
+                    im[b] = t;
+                }
+            }
+            float sign = inverse ? 1 : -1;
+            for (int size = 2; size <= n; size <<= 1) {
+                int half = size >> 1;
+                int step = n / size;
+                for (int start = 0; start < n; start += size) {
+                    for (int k = 0; k < half; k++) {
+                        float wr = cos[k * step];
+                        float wi = sign * sin[k * step];
+                        int a = offset + (start + k) * stride;
+                        int b = a + half * stride;
+                        float xr = re[b] * wr - im[b] * wi;
+                        float xi = re[b] * wi + im[b] * wr;
+                        re[b] = re[a] - xr;
+                        im[b] = im[a] - xi;
+                        re[a] += xr;
+                        im[a] += xi;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * One stage of a FilterChain, working directly on the int[] arrays backing images.
+ * Stages come in three kinds:
+ * <ul>
+ *     <li>POINTWISE stages map each pixel on its own, through processPixel()</li>
+ *     <li>LOCAL stages read at most halo() rows above and below each output row, so
+ *     any band of rows can be processed on its own</li>
+ *     <li>FRAME stages need the whole frame, and are applied to all of its rows at
+ *     once, splitting the work across cores themselves</li>
+ * </ul>
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public interface Filter {
+    /**
+     * Gets the kind of stage this filter is for frames of the given size.
+     *
+     * @param width, the width of the frame
+     * @param height, the height of the frame
+     * @return the kind of stage
+     */
+    Kind kind(int width, int height);
+
+    /**
+     * @return the number of rows above and below an output row, and of columns either
+     * side of it, that are read
+     */
+    int halo();
+
+    /**
+     * Gets the spacing of the grid the filter works on. A crop of a frame whose top
+     * left corner lies on the grid, processed as a frame of its own, comes out the same
+     * as the whole frame does, except within halo() of the crop's edges.
+     *
+     * @return the spacing in pixels, 1 if any crop will do, or 0 if the filter only
+     * works on whole frames
+     */
+    default int grid() {
+        return 1;
+    }
+
+    /**
+     * Processes a band of rows. Pixels outside the image are read as the filter's
+     * BorderMode says, by extending its edges unless it was given another.
+     *
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param rowStart, the first row to be output
+     * @param rowEnd, one past the last row to be output
+     */
+    void apply(int[] data, int[] newData, int width, int height, int rowStart, int rowEnd);
+
+    /**
+     * Processes one pixel. Only POINTWISE stages support this.
+     *
+     * @param rgb, the RGB value of the pixel
+     * @return the ARGB value of the output pixel
+     */
+    default int processPixel(int rgb) {
+        throw new UnsupportedOperationException(this + " is not a pointwise filter");
+    }
+
+    /**
+     * Enumerator for the kinds of stage.
+     */
+    enum Kind {
+        POINTWISE, LOCAL, FRAME
+    }
+}
@@ -0,0 +1,316 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Applies a sequence of filters to a frame, such as grayscale, then a blur, then a
+ * half-tone. Rather than running each stage over the whole frame in turn, runs of
+ * POINTWISE and LOCAL stages are fused: each band of rows is pushed through every
+ * stage of the run while it is still in cache, and only the run's input and output
+ * ever touch full-size frames. A band is read together with the halo rows all of the
+ * run's stages need, which are recomputed by the bands on either side of it.
+ * Pointwise stages are folded into the stage before them, or into the copy that
+ * brings a band in.
+ *
+ * FRAME stages, which need the whole frame, split the chain into separate runs. The
+ * full-size buffers between runs, and the band buffers within them, come from the
+ * BufferPool.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FilterChain implements UnaryOperator<BufferedImage> {
+    private final List<Filter> stages;
+
+    /**
+     * Constructor for FilterChain.
+     *
+     * @param stages, the filters to be applied, in order
+     */
+    public FilterChain(List<Filter> stages) {
+        this.stages = List.copyOf(stages);
+    }
+
+    /**
+     * Creates a chain of the given filters.
+     *
+     * @param stages, the filters to be applied, in order
+     * @return new FilterChain
+     */
+    public static FilterChain of(Filter... stages) {
+        return new FilterChain(Arrays.asList(stages));
+    }
+
+    /**
+     * @return the filters applied, in order
+     */
+    public List<Filter> getStages() {
+        return stages;
+    }
+
+    /**
+     * @return the number of rows and columns around an output pixel that the whole
+     * chain reads, the sum of its stages' halos
+     */
+    public int halo() {
+        int halo = 0;
+        for (Filter stage : stages) {
+            halo += stage.halo();
+        }
+        return halo;
+    }
+
+    /**
+     * Gets the spacing of the grid the whole chain works on, the least common multiple
+     * of its stages' grids. See Filter.grid().
+     *
+     * @return the spacing in pixels, 1 if any crop will do, or 0 if the chain only
+     * works on whole frames
+     */
+    public int grid() {
+        int grid = 1;
+        for (Filter stage : stages) {
+            int spacing = stage.grid();
+            if (spacing == 0) {
+                return 0;
+            }
+            int a = grid;
+            int b = spacing;
+            while (b != 0) {
+                int remainder = a % b;
+                a = b;
+                b = remainder;
+            }
+            grid = grid / a * spacing;
+        }
+        return grid;
+    }
+
+    /**
+     * Applies every stage to an image.
+     *
+     * @param image, the image to be processed
+     * @return new processed BufferedImage
+     */
+    public BufferedImage processImage(BufferedImage image) {
+        return processImage(image, Pixels.createImage(image.getWidth(), image.getHeight()));
+    }
+
+    /**
+     * Applies every stage to an image, writing the result into an existing image
+     * instead of allocating one. Images that are not int-backed are read into a
+     * pooled array, so nothing is allocated per frame whatever their type.
+     *
+     * @param image, the image to be processed
+     * @param dest, an int-backed image of the same size, such as one from
+     *              BufferPool.acquireImage(), which must not be the image itself
+     * @return dest
+     */
+    public BufferedImage processImage(BufferedImage image, BufferedImage dest) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (dest.getWidth() != width || dest.getHeight() != height || !Pixels.isCompact(dest) || dest == image) {
+            throw new IllegalArgumentException("destination must be a separate int-backed image of the same size");
+        }
+        boolean compact = Pixels.isCompact(image);
+        int[] data = compact ? Pixels.data(image) : BufferPool.acquire(width * height);
+        try {
+            if (!compact) {
+                image.getRGB(0, 0, width, height, data, 0, width);
+            }
+            process(data, Pixels.data(dest), width, height);
+        } finally {
+            if (!compact) {
+                BufferPool.release(data);
+            }
+        }
+        return dest;
+    }
+
+    @Override
+    public BufferedImage apply(BufferedImage image) {
+        return processImage(image);
+    }
+
+    /**
+     * Applies every stage to a frame's pixels.
+     *
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     */
+    public void process(int[] data, int[] newData, int width, int height) {
+        if (stages.isEmpty()) {
+            System.arraycopy(data, 0, newData, 0, width * height);
+            return;
+        }
+        Filter.Kind[] kinds = new Filter.Kind[stages.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = stages.get(i).kind(width, height);
+        }
+        int[] input = data;
+        int start = 0;
+        while (start < kinds.length) {
+            // a run is either one FRAME stage or as many other stages as follow each other
+            int end = start + 1;
+            if (kinds[start] != Filter.Kind.FRAME) {
+                while (end < kinds.length && kinds[end] != Filter.Kind.FRAME) {
+                    end++;
+                }
+            }
+            int[] output = end == kinds.length ? newData : BufferPool.acquire(width * height);
+            if (kinds[start] == Filter.Kind.FRAME) {
+                stages.get(start).apply(input, output, width, height, 0, height);
+            } else {
+                processRun(start, end, kinds, input, output, width, height);
+            }
+            if (input != data) {
+                BufferPool.release(input);
+            }
+            input = output;
+            start = end;
+        }
+    }
+
+    /**
+     * Applies a run of POINTWISE and LOCAL stages in a single pass over the frame.
+     *
+     * @param start, the index of the run's first stage
+     * @param end, one past the index of the run's last stage
+     * @param kinds, the kind of every stage for this frame size
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     */
+    private void processRun(int start, int end, Filter.Kind[] kinds, int[] data, int[] newData,
+                            int width, int height) {
+        if (end - start == 1) {
+            Filter stage = stages.get(start);
+            TileScheduler.forEachBand(height, 1, (rowStart, rowEnd) ->
+                    stage.apply(data, newData, width, height, rowStart, rowEnd));
+            return;
+        }
+        int halo = 0;
+        boolean pointwise = true;
+        for (int i = start; i < end; i++) {
+            if (kinds[i] == Filter.Kind.LOCAL) {
+                halo += stages.get(i).halo();
+                pointwise = false;
+            }
+        }
+        if (pointwise) {
+            TileScheduler.forEachBand(height, 1, (rowStart, rowEnd) ->
+                    mapRows(start, end, data, rowStart * width, newData, rowStart * width, (rowEnd - rowStart) * width));
+            return;
+        }
+        // keeps bands at least twice as tall as the halo rows recomputed around them
+        int alignment = TileScheduler.bandRows(1) >= 4 * halo ? 1 : 4 * halo;
+        int rows = TileScheduler.bandRows(alignment);
+        int windowLength = width * Math.min(height, rows + 2 * halo);
+        int totalHalo = halo;
+        TileScheduler.forEachBand(height, alignment, (rowStart, rowEnd) -> {
+            int[] current = BufferPool.acquire(windowLength);
+            int[] next = BufferPool.acquire(windowLength);
+            try {
+                // bands run serially arrive whole, and are still worked through in blocks
+                for (int block = rowStart; block < rowEnd; block += rows) {
+                    processBlock(start, end, kinds, totalHalo, data, newData, width, height,
+                            block, Math.min(rowEnd, block + rows), current, next);
+                }
+            } finally {
+                BufferPool.release(current);
+                BufferPool.release(next);
+            }
+        });
+    }
+
+    /**
+     * Pushes one block of rows through a run of stages.
+     *
+     * @param start, the index of the run's first stage
+     * @param end, one past the index of the run's last stage
+     * @param kinds, the kind of every stage for this frame size
+     * @param halo, the number of rows the whole run reads above and below a row
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param rowStart, the first row of the block
+     * @param rowEnd, one past the last row of the block
+     * @param current, scratch big enough for the block and its halo rows
+     * @param next, a second scratch of the same size
+     */
+    private void processBlock(int start, int end, Filter.Kind[] kinds, int halo, int[] data, int[] newData,
+                              int width, int height, int rowStart, int rowEnd, int[] current, int[] next) {
+        int top = Math.max(0, rowStart - halo);
+        int windowHeight = Math.min(height, rowEnd + halo) - top;
+        // brings the block and its halo in, through any leading pointwise stages
+        int stage = start;
+        while (stage < end && kinds[stage] == Filter.Kind.POINTWISE) {
+            stage++;
+        }
+        mapRows(start, stage, data, top * width, current, 0, windowHeight * width);
+        // the block is a frame of its own, windowHeight rows tall: its edges are either
+        // the frame's edges or far enough out never to be read past
+        int remaining = halo;
+        while (stage < end) {
+            Filter local = stages.get(stage++);
+            remaining -= local.halo();
+            int outStart = Math.max(0, rowStart - remaining) - top;
+            int outEnd = Math.min(height, rowEnd + remaining) - top;
+            local.apply(current, next, width, windowHeight, outStart, outEnd);
+            int pointwise = stage;
+            while (stage < end && kinds[stage] == Filter.Kind.POINTWISE) {
+                stage++;
+            }
+            mapRows(pointwise, stage, next, outStart * width, next, outStart * width, (outEnd - outStart) * width);
+            int[] swap = current;
+            current = next;
+            next = swap;
+        }
+        System.arraycopy(current, (rowStart - top) * width, newData, rowStart * width, (rowEnd - rowStart) * width);
+    }
+
+    /**
+     * Copies pixels through a run of POINTWISE stages. Source and destination may be
+     * the same array.
+     *
+     * @param start, the index of the first stage
+     * @param end, one past the index of the last stage
+     * @param from, the array read from
+     * @param fromIndex, the index of the first pixel read
+     * @param to, the array written to
+     * @param toIndex, the index of the first pixel written
+     * @param length, the number of pixels
+     */
+    private void mapRows(int start, int end, int[] from, int fromIndex, int[] to, int toIndex, int length) {
+        if (start == end) {
+            if (from != to || fromIndex != toIndex) {
+                System.arraycopy(from, fromIndex, to, toIndex, length);
+            }
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            int rgb = from[fromIndex + i];
+            for (int stage = start; stage < end; stage++) {
+                rgb = stages.get(stage).processPixel(rgb);
+            }
+            to[toIndex + i] = rgb;
+        }
+    }
+
+    /**
+     * @return the stages, separated by commas
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Filter stage : stages) {
+            text.append(text.length() == 0 ? "" : ", ").append(stage);
+        }
+        return text.length() == 0 ? "none" : text.toString();
+    }
+}
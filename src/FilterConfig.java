@@ -0,0 +1,213 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One complete, unchanging set of filter settings: the chain of processing modes, the
+ * kernel, the half-tone radius and palette, and the border mode. Settings are changed
+ * by making a new config with one of the with methods, which numbers it one version
+ * past the old one, and publishing it, such as through an AtomicReference, so a
+ * frame always reads every setting from the same config without any locking.
+ *
+ * Everything that can be worked out from the settings alone is worked out once, when
+ * the config is made: the kernel is planned (see KernelPlan), and the FilterChain is
+ * built, so frames never rebuild or re-analyze anything.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FilterConfig {
+    private final long version;
+    private final List<Mode> modes;
+    private final KernelPlan kernel;
+    private final int radius;
+    private final Color background;
+    private final Color foreground;
+    private final BorderMode border;
+    private final FilterChain filters;
+
+    /**
+     * Constructor for FilterConfig, making version 1.
+     *
+     * @param modes, the kinds of processing to be applied, in order
+     * @param kernel, the kernel
+     * @param radius, the half-tone radius
+     * @param background, the half-tone background color
+     * @param foreground, the half-tone foreground color
+     * @param border, how filters read past the edges of frames
+     */
+    public FilterConfig(List<Mode> modes, float[][] kernel, int radius, Color background, Color foreground,
+                        BorderMode border) {
+        this(1, modes, new KernelPlan(kernel), radius, background, foreground, border);
+    }
+
+    /**
+     * Constructor for FilterConfig of any version, building its filters.
+     *
+     * @param version, the version
+     * @param modes, the kinds of processing to be applied, in order
+     * @param kernel, the planned kernel
+     * @param radius, the half-tone radius
+     * @param background, the half-tone background color
+     * @param foreground, the half-tone foreground color
+     * @param border, how filters read past the edges of frames
+     */
+    private FilterConfig(long version, List<Mode> modes, KernelPlan kernel, int radius, Color background,
+                         Color foreground, BorderMode border) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("half-tone radius must be positive: " + radius);
+        }
+        this.version = version;
+        this.modes = List.copyOf(modes);
+        this.kernel = kernel;
+        this.radius = radius;
+        this.background = background;
+        this.foreground = foreground;
+        this.border = border;
+        filters = createFilters(radius);
+    }
+
+    /**
+     * @param modes, the kinds of processing to be applied, in order
+     * @return the next version, with the given chain of processing
+     */
+    public FilterConfig withModes(List<Mode> modes) {
+        return new FilterConfig(version + 1, modes, kernel, radius, background, foreground, border);
+    }
+
+    /**
+     * @param kernel, the kernel, which is copied
+     * @return the next version, with the given kernel
+     */
+    public FilterConfig withKernel(float[][] kernel) {
+        return new FilterConfig(version + 1, modes, new KernelPlan(kernel), radius, background, foreground, border);
+    }
+
+    /**
+     * @param radius, the half-tone radius
+     * @param background, the half-tone background color
+     * @param foreground, the half-tone foreground color
+     * @return the next version, with the given half-tone settings
+     */
+    public FilterConfig withHalftone(int radius, Color background, Color foreground) {
+        return new FilterConfig(version + 1, modes, kernel, radius, background, foreground, border);
+    }
+
+    /**
+     * @param border, how filters read past the edges of frames
+     * @return the next version, with the given border mode
+     */
+    public FilterConfig withBorder(BorderMode border) {
+        return new FilterConfig(version + 1, modes, kernel, radius, background, foreground, border);
+    }
+
+    /**
+     * @return the version, counting up from 1 with every change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the kinds of processing applied, in order
+     */
+    public List<Mode> getModes() {
+        return modes;
+    }
+
+    /**
+     * @return the planned kernel
+     */
+    public KernelPlan getKernel() {
+        return kernel;
+    }
+
+    /**
+     * @return the half-tone radius
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return the half-tone background color
+     */
+    public Color getBackground() {
+        return background;
+    }
+
+    /**
+     * @return the half-tone foreground color
+     */
+    public Color getForeground() {
+        return foreground;
+    }
+
+    /**
+     * @return how filters read past the edges of frames
+     */
+    public BorderMode getBorder() {
+        return border;
+    }
+
+    /**
+     * @return the filters for these settings, built once
+     */
+    public FilterChain getFilters() {
+        return filters;
+    }
+
+    /**
+     * Builds the filters for these settings with another half-tone radius, such as a
+     * FrameGovernor's coarser one. The kernel is not planned again.
+     *
+     * @param radius, the half-tone radius to be used
+     * @return new FilterChain, or getFilters() if the radius is the config's own
+     */
+    public FilterChain createFilters(int radius) {
+        return createFilters(radius, 1);
+    }
+
+    /**
+     * Builds the filters for these settings with another half-tone radius, for frames
+     * shrunk by a whole factor, such as the levels of a Pyramid. The kernel is scaled
+     * down to reach as far across the picture as it does at full resolution (see
+     * KernelPlan.scaled()), while the radius is used as given, so callers divide it by
+     * the factor themselves, after any other coarsening.
+     *
+     * @param radius, the half-tone radius to be used
+     * @param scale, how many times smaller than the captured frames the frames are
+     * @return new FilterChain, or getFilters() if the radius is the config's own and
+     * the scale is 1
+     */
+    public FilterChain createFilters(int radius, int scale) {
+        if (radius == this.radius && scale == 1 && filters != null) {
+            return filters;
+        }
+        KernelPlan plan = kernel.scaled(scale);
+        List<Filter> stages = new ArrayList<>();
+        for (Mode mode : modes) {
+            stages.add(switch (mode) {
+                case HALFTONE -> Halftoner.filter(radius, background, foreground, border);
+                case KERNEL -> Kernelizer.filter(plan, border);
+                case GRAYSCALE -> Grayscaler.filter();
+            });
+        }
+        return new FilterChain(stages);
+    }
+
+    /**
+     * @return the version and the filters
+     */
+    @Override
+    public String toString() {
+        return "v" + version + " " + filters;
+    }
+
+    /**
+     * Enumerator for processing mode, the kinds of stage a chain is built from.
+     */
+    public enum Mode {
+        HALFTONE, KERNEL, GRAYSCALE
+    }
+}
@@ -0,0 +1,85 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses textual filter specifications for the headless tools. A specification is a
+ * chain of filters separated by commas, such as grayscale,kernel:blur.txt,halftone:7,
+ * each of which is one of:
+ * <ul>
+ *     <li>grayscale</li>
+ *     <li>halftone:RADIUS[:BACKGROUND:FOREGROUND][:BORDER], colors as hex such as #000000</li>
+ *     <li>kernel:FILE[:BORDER], a kernel file as read by KernelFile</li>
+ * </ul>
+ * where BORDER is a BorderMode, clamp, mirror, wrap or constant, clamp by default.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FilterSpec {
+    /**
+     * Parses a filter specification.
+     *
+     * @param spec, the filter specification
+     * @return the chain of filters
+     * @throws IOException if a kernel file cannot be read
+     */
+    public static FilterChain parse(String spec) throws IOException {
+        List<Filter> stages = new ArrayList<>();
+        for (String stage : spec.split(",")) {
+            stages.add(parseFilter(stage.trim()));
+        }
+        return new FilterChain(stages);
+    }
+
+    /**
+     * Parses the specification of a single filter.
+     *
+     * @param spec, the filter specification
+     * @return the filter
+     * @throws IOException if a kernel file cannot be read
+     */
+    public static Filter parseFilter(String spec) throws IOException {
+        String[] parts = spec.split(":", 2);
+        switch (parts[0]) {
+            case "grayscale":
+                return Grayscaler.filter();
+            case "halftone":
+                if (parts.length < 2) {
+                    throw new IllegalArgumentException("halftone needs a radius: " + spec);
+                }
+                String[] settings = parts[1].split(":");
+                BorderMode halftoneBorder = BorderMode.CLAMP;
+                if (settings.length > 1 && BorderMode.isName(settings[settings.length - 1])) {
+                    halftoneBorder = BorderMode.parse(settings[settings.length - 1]);
+                    settings = Arrays.copyOf(settings, settings.length - 1);
+                }
+                int rad = Integer.parseInt(settings[0]);
+                if (rad < 1) {
+                    throw new IllegalArgumentException("halftone radius must be positive: " + spec);
+                }
+                Color bg = settings.length > 2 ? Color.decode(settings[1]) : new Color(0, 0, 0);
+                Color fg = settings.length > 2 ? Color.decode(settings[2]) : new Color(255, 255, 255);
+                return Halftoner.filter(rad, bg, fg, halftoneBorder);
+            case "kernel":
+                if (parts.length < 2) {
+                    throw new IllegalArgumentException("kernel needs a file: " + spec);
+                }
+                // the file name may itself hold colons, so only a known mode is split off
+                String file = parts[1];
+                BorderMode kernelBorder = BorderMode.CLAMP;
+                int colon = file.lastIndexOf(':');
+                if (colon >= 0 && BorderMode.isName(file.substring(colon + 1))) {
+                    kernelBorder = BorderMode.parse(file.substring(colon + 1));
+                    file = file.substring(0, colon);
+                }
+                float[][] kernel = KernelFile.load(Paths.get(file));
+                return Kernelizer.filter(kernel, kernelBorder);
+            default:
+                throw new IllegalArgumentException("unknown filter: " + spec);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-point backend for the Kernelizer's direct path. The kernel is quantized once
+ * to integers scaled by 2^fractionBits, with as many fraction bits as the sums allow,
+ * and frames are then convolved entirely in integer arithmetic. Like the
+ * PlanarConvolver, rows are split into planes padded as the border mode says first, but red and blue share a
+ * plane of longs, one channel in each 32-bit half, so a single multiply-add per tap
+ * covers both of them.
+ *
+ * Quantizing moves each output channel by at most getErrorBound() gray levels, and a
+ * kernel is only accepted when that stays under half a gray level.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FixedPointConvolver {
+    // largest error, in gray levels, quantization may add before it is refused
+    private static final double MAX_ERROR = 0.5;
+    private static final int MAX_FRACTION_BITS = 24;
+    // rows split into planes at once, so that the planes stay in cache
+    private static final int BLOCK_ROWS = 16;
+
+    private static final ThreadLocal<Planes> planes = ThreadLocal.withInitial(Planes::new);
+
+    private final KernelPlan.Taps taps;
+    private final int[] weights;        // the quantized weight of each tap
+    private final int fractionBits;
+    private final double errorBound;
+
+    /**
+     * Constructor for FixedPointConvolver.
+     *
+     * @param taps, the kernel's taps
+     * @param weights, the quantized weight of each tap
+     * @param fractionBits, the number of fraction bits in each weight
+     * @param errorBound, the most an output channel can move through quantization
+     */
+    private FixedPointConvolver(KernelPlan.Taps taps, int[] weights, int fractionBits, double errorBound) {
+        this.taps = taps;
+        this.weights = weights;
+        this.fractionBits = fractionBits;
+        this.errorBound = errorBound;
+    }
+
+    /**
+     * Quantizes a kernel, using the most fraction bits for which no sum of 8-bit
+     * channels can overflow a 32-bit lane.
+     *
+     * @param kernel, the kernel to be quantized
+     * @return the fixed-point convolver, or null if quantizing would move an output
+     * channel by half a gray level or more
+     */
+    public static FixedPointConvolver quantize(float[][] kernel) {
+        return quantize(KernelPlan.Taps.of(kernel));
+    }
+
+    /**
+     * Quantizes a flattened kernel, as KernelPlan makes them. A folded pair counts
+     * twice towards the sums and the error.
+     *
+     * @param taps, the kernel's taps
+     * @return the fixed-point convolver, or null if quantizing would move an output
+     * channel by half a gray level or more
+     */
+    static FixedPointConvolver quantize(KernelPlan.Taps taps) {
+        for (int bits = MAX_FRACTION_BITS; bits >= 0; bits--) {
+            int[] weights = new int[taps.count];
+            long total = 0;
+            double error = 0;
+            for (int k = 0; k < taps.count; k++) {
+                long weight = Math.round((double) taps.weight[k] * (1 << bits));
+                weights[k] = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, weight));
+                int uses = taps.sign[k] == 0 ? 1 : 2;
+                total += uses * Math.abs(weight);
+                error += uses * Math.abs((double) taps.weight[k] - (double) weight / (1 << bits));
+            }
+            if (255 * total <= Integer.MAX_VALUE) {
+                double bound = 255 * error;
+                return bound < MAX_ERROR ? new FixedPointConvolver(taps, weights, bits, bound) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of fraction bits in each weight
+     */
+    public int getFractionBits() {
+        return fractionBits;
+    }
+
+    /**
+     * @return the most quantization can move an output channel, in gray levels
+     */
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * Applies the kernel to a band of rows. Rows up to n/2 above and below the band are
+     * read as well, but only the band itself is written.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param border, how pixels past the edges are read
+     */
+    public void processRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                            BorderMode border) {
+        int n = taps.n;
+        int half = n / 2;
+        int stride = width + n - 1;
+        Planes scratch = planes.get();
+        scratch.ensure(stride, BLOCK_ROWS + n - 1, width);
+        int[] padded = scratch.padded;
+        long[] redBlue = scratch.redBlue;
+        int[] green = scratch.green;
+        long[] sumRedBlue = scratch.sumRedBlue;
+        int[] sumGreen = scratch.sumGreen;
+
+        for (int block = rowStart; block < rowEnd; block += BLOCK_ROWS) {
+            int blockEnd = Math.min(rowEnd, block + BLOCK_ROWS);
+            // splits the block and its halo rows into planes, red in the high half of
+            // each long and blue in the low half
+            for (int k = 0; k < blockEnd - block + n - 1; k++) {
+                Pixels.padRow(block - half + k, data, width, height, half, n - 1 - half, border, padded);
+                int plane = k * stride;
+                for (int x = 0; x < stride; x++) {
+                    int sample = padded[x];
+                    redBlue[plane + x] = (long) (sample & 0xff0000) << 16 | (sample & 0xff);
+                    green[plane + x] = (sample >> 8) & 0xff;
+                }
+            }
+            for (int row = block; row < blockEnd; row++) {
+                Arrays.fill(sumRedBlue, 0, width, 0);
+                Arrays.fill(sumGreen, 0, width, 0);
+                // one multiply-add across the row per tap, a folded pair's pixels
+                // added or subtracted first, which is exact in integers
+                for (int k = 0; k < taps.count; k++) {
+                    int weight = weights[k];
+                    int plane = (row - block + taps.row[k]) * stride + taps.column[k];
+                    int pair = (row - block + taps.pairRow[k]) * stride + taps.pairColumn[k];
+                    if (taps.sign[k] == 0) {
+                        for (int x = 0; x < width; x++) {
+                            sumRedBlue[x] += redBlue[plane + x] * weight;
+                            sumGreen[x] += green[plane + x] * weight;
+                        }
+                    } else if (taps.sign[k] > 0) {
+                        for (int x = 0; x < width; x++) {
+                            sumRedBlue[x] += (redBlue[plane + x] + redBlue[pair + x]) * weight;
+                            sumGreen[x] += (green[plane + x] + green[pair + x]) * weight;
+                        }
+                    } else {
+                        for (int x = 0; x < width; x++) {
+                            sumRedBlue[x] += (redBlue[plane + x] - redBlue[pair + x]) * weight;
+                            sumGreen[x] += (green[plane + x] - green[pair + x]) * weight;
+                        }
+                    }
+                }
+                // the blue sum is the signed low half, and borrows from the red sum
+                // above it when negative
+                int out = row * width;
+                for (int x = 0; x < width; x++) {
+                    long sum = sumRedBlue[x];
+                    int blue = (int) sum;
+                    int red = (int) ((sum - blue) >> 32);
+                    int r = Math.min(Math.max(red >> fractionBits, 0), 255);
+                    int g = Math.min(Math.max(sumGreen[x] >> fractionBits, 0), 255);
+                    int b = Math.min(Math.max(blue >> fractionBits, 0), 255);
+                    newData[out + x] = Pixels.pack(r, g, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the kernel's fixed-point format and error bound
+     */
+    @Override
+    public String toString() {
+        return String.format("Q%d.%d, error <= %.4f", 31 - fractionBits, fractionBits, errorBound);
+    }
+
+    /**
+     * Per-thread planes and row sums, grown as needed.
+     */
+    private static class Planes {
+        int[] padded = new int[0];
+        long[] redBlue = new long[0];
+        int[] green = new int[0];
+        long[] sumRedBlue = new long[0];
+        int[] sumGreen = new int[0];
+
+        /**
+         * Makes sure the padded row, planes and sums are big enough.
+         *
+         * @param stride, the number of entries in each padded row
+         * @param rows, the number of rows in each plane
+         * @param width, the number of entries in each row of sums
+         */
+        void ensure(int stride, int rows, int width) {
+            int planeLength = stride * rows;
+            if (padded.length < stride) {
+                padded = new int[stride];
+            }
+            if (redBlue.length < planeLength) {
+                redBlue = new long[planeLength];
+                green = new int[planeLength];
+            }
+            if (sumRedBlue.length < width) {
+                sumRedBlue = new long[width];
+                sumGreen = new int[width];
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.util.Arrays;
+
+/**
+ * Keeps frame processing within a time budget by trading quality for speed. The time
+ * each frame takes to process is fed to record(), and whenever the average at the
+ * current level runs over the budget the governor steps down to the next level: first
+ * coarser half-tones, then processing at reduced resolution and scaling back up, then
+ * also skipping frames. It steps back up once the finer level's last measured cost
+ * fits the budget again, and every so often tries the finer level anyway, since the
+ * scene or the machine's load may have changed since it was measured.
+ *
+ * The governor only measures and decides; the caller applies its level. Levels are
+ * read from any thread, but record() must be called from one thread only.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FrameGovernor {
+    // frames measured at a level before it is judged
+    private static final int SETTLE_FRAMES = 8;
+    // frames spent at a coarser level before the finer one is tried again
+    private static final int PROBE_FRAMES = 150;
+    // share of the budget a level must stay under before the finer one is tried
+    private static final double HEADROOM = 0.8;
+    // weight of each new measurement in the running average
+    private static final double SMOOTHING = 0.25;
+
+    private final long budget;
+    private final double[] costs = new double[Level.values().length];
+    private volatile Level level = Level.FULL;
+    private int frames;
+
+    /**
+     * Constructor for FrameGovernor.
+     *
+     * @param budgetMillis, the most time processing a frame should take, in
+     *                      milliseconds
+     */
+    public FrameGovernor(double budgetMillis) {
+        if (!(budgetMillis > 0)) {
+            throw new IllegalArgumentException("budget must be positive: " + budgetMillis);
+        }
+        budget = (long) (budgetMillis * 1e6);
+    }
+
+    /**
+     * Creates a governor that keeps processing up with a frame rate.
+     *
+     * @param fps, the frame rate to be kept up with
+     * @return new FrameGovernor with a budget of one frame interval
+     */
+    public static FrameGovernor forFrameRate(double fps) {
+        return new FrameGovernor(1000 / fps);
+    }
+
+    /**
+     * @return the level frames should be processed at
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the budget per frame, in milliseconds
+     */
+    public double getBudgetMillis() {
+        return budget / 1e6;
+    }
+
+    /**
+     * Forgets every measurement and goes back to full quality, such as when the
+     * filters change and earlier costs no longer apply.
+     */
+    public synchronized void reset() {
+        Arrays.fill(costs, 0);
+        level = Level.FULL;
+        frames = 0;
+    }
+
+    /**
+     * Records the time a frame took to process at the current level, and changes the
+     * level if the average calls for it. Skipped frames are not recorded.
+     *
+     * @param nanos, the processing time, in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        int index = level.ordinal();
+        costs[index] = frames == 0 ? nanos : costs[index] + SMOOTHING * (nanos - costs[index]);
+        if (++frames < SETTLE_FRAMES) {
+            return;
+        }
+        Level[] levels = Level.values();
+        if (load(index) > budget && index + 1 < levels.length) {
+            enter(levels[index + 1]);
+        } else if (index > 0 && load(index) < HEADROOM * budget
+                && (load(index - 1) < budget || frames >= PROBE_FRAMES)) {
+            enter(levels[index - 1]);
+        }
+    }
+
+    /**
+     * Gets the average processing time a level spends per frame captured, which for
+     * levels that skip frames is shared between the frames skipped.
+     *
+     * @param index, the index of the level
+     * @return the average time, in nanoseconds, or 0 if the level was never measured
+     */
+    private double load(int index) {
+        return costs[index] / Level.values()[index].skip;
+    }
+
+    /**
+     * Switches to a level, whose average is then measured afresh.
+     *
+     * @param next, the level to be switched to
+     */
+    private void enter(Level next) {
+        level = next;
+        frames = 0;
+    }
+
+    /**
+     * @return the current level and budget
+     */
+    @Override
+    public String toString() {
+        return String.format("%s (budget %.1f ms)", level, getBudgetMillis());
+    }
+
+    /**
+     * Enumerator for the quality levels, from full quality down.
+     */
+    public enum Level {
+        FULL(1, 1, 1, "full quality"),
+        COARSE(2, 1, 1, "coarse half-tones"),
+        HALF(1, 2, 1, "1/2 resolution"),
+        THIRD(1, 3, 1, "1/3 resolution"),
+        QUARTER(1, 4, 1, "1/4 resolution"),
+        QUARTER_SKIP(1, 4, 2, "1/4 resolution, every 2nd frame"),
+        QUARTER_SKIP_MORE(1, 4, 3, "1/4 resolution, every 3rd frame");
+
+        private final int coarsening;
+        private final int scale;
+        private final int skip;
+        private final String description;
+
+        /**
+         * Constructor for Level.
+         *
+         * @param coarsening, how many times larger half-tone cells are made
+         * @param scale, how many times smaller frames are processed
+         * @param skip, one frame in this many is processed
+         * @param description, what the level gives up, for the user
+         */
+        Level(int coarsening, int scale, int skip, String description) {
+            this.coarsening = coarsening;
+            this.scale = scale;
+            this.skip = skip;
+            this.description = description;
+        }
+
+        /**
+         * Gets the half-tone radius to be used at this level, in the pixels of the
+         * frames as processed, so that cells come out coarsening times as large once
+         * scaled back up.
+         *
+         * @param rad, the radius at full quality
+         * @return the radius to be used, at least 1
+         */
+        public int radius(int rad) {
+            return Math.max(1, Math.round((float) rad * coarsening / scale));
+        }
+
+        /**
+         * @return how many times smaller frames are processed, 1 for full resolution
+         */
+        public int getScale() {
+            return scale;
+        }
+
+        /**
+         * @return one frame in this many is processed
+         */
+        public int getSkip() {
+            return skip;
+        }
+
+        /**
+         * @return what the level gives up, for the user
+         */
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
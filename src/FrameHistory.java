@@ -0,0 +1,380 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the last few seconds of a stream of frames in a fixed amount of memory, so
+ * that what happened just before something is noticed can still be saved. Frames are
+ * handed over without being copied, like to FrameRecorder, and a compressor thread of
+ * its own packs each to 24-bit RGB, deflates it, and appends it to a log in one block
+ * of off-heap memory allocated up front. The log wraps around, dropping the oldest
+ * frames to make room, and frames older than the time kept are dropped as well.
+ *
+ * save() writes every frame kept at the time it is called to a raw frame file (see
+ * RawFrameFile) on a thread of its own, while new frames keep coming in.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FrameHistory implements AutoCloseable {
+    // frames waiting to be compressed before the oldest is dropped
+    private static final int BACKLOG = 4;
+
+    private final long keepNanos;
+    private final ByteBuffer log;
+    private final FrameRing<BufferedImage> pending = new FrameRing<>(BACKLOG, FrameRing.Policy.DROP_OLDEST);
+    private final Thread compressor;
+    private final Deflater deflater;
+
+    // frames in the log, oldest first, and where the next one goes; guarded by this
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private int tail;
+    private long nextSequence;
+    private long bytesUsed;
+
+    // compressor thread only
+    private byte[] rgb = new byte[0];
+    private byte[] packed = new byte[0];
+    private int[] row = new int[0];
+
+    /**
+     * Constructor for FrameHistory, allocating its memory and starting the compressor
+     * thread.
+     *
+     * @param seconds, how far back frames are kept
+     * @param megabytes, the memory frames are kept in, at most 2047
+     * @param level, the Deflater level frames are compressed at, 0 to store them
+     *               packed but uncompressed, 1 for the fastest compression
+     */
+    public FrameHistory(double seconds, int megabytes, int level) {
+        if (!(seconds > 0) || megabytes < 1 || megabytes > 2047) {
+            throw new IllegalArgumentException("bad history length or size: " + seconds + " s, " + megabytes + " MB");
+        }
+        keepNanos = (long) (seconds * 1e9);
+        log = ByteBuffer.allocateDirect(megabytes << 20);
+        deflater = new Deflater(level);
+        compressor = new Thread(this::compressLoop, "history-compressor");
+        compressor.setDaemon(true);
+        compressor.start();
+    }
+
+    /**
+     * Adds a frame, which is held in the pool until it has been compressed, so the
+     * caller may release it as usual as soon as this returns. Never blocks; if the
+     * compressor falls behind, the oldest frames waiting for it are dropped.
+     *
+     * @param frame, the frame to be kept
+     */
+    public void add(BufferedImage frame) {
+        BufferPool.retainImage(frame);
+        try {
+            BufferedImage dropped = pending.put(frame);
+            if (dropped != null) {
+                BufferPool.releaseImage(dropped);
+            }
+        } catch (InterruptedException e) {
+            // drop-oldest rings never wait
+            BufferPool.releaseImage(frame);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts writing every frame kept right now to a raw frame file. Frames that the
+     * log overwrites before the writer gets to them are left out.
+     *
+     * @param file, the raw frame file to be written
+     * @return a future completed with the number of frames written once the file is
+     * closed
+     */
+    public CompletableFuture<Long> save(Path file) {
+        List<Entry> window;
+        synchronized (this) {
+            window = new ArrayList<>(entries);
+        }
+        CompletableFuture<Long> saved = new CompletableFuture<>();
+        Thread saver = new Thread(() -> {
+            try {
+                saved.complete(write(window, file));
+            } catch (IOException | DataFormatException | RuntimeException e) {
+                saved.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                saved.completeExceptionally(e);
+                Thread.currentThread().interrupt();
+            }
+        }, "history-save");
+        saver.start();
+        return saved;
+    }
+
+    /**
+     * Stops the compressor thread. Frames kept so far can still be saved.
+     */
+    @Override
+    public void close() {
+        pending.close();
+        try {
+            compressor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        BufferedImage frame;
+        while ((frame = pending.poll()) != null) {
+            BufferPool.releaseImage(frame);
+        }
+        deflater.end();
+    }
+
+    /**
+     * @return the number of frames kept
+     */
+    public synchronized int getFrameCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the time between the oldest and newest frames kept, in seconds
+     */
+    public synchronized double getSeconds() {
+        return entries.isEmpty() ? 0 : (entries.peekLast().nanos - entries.peekFirst().nanos) / 1e9;
+    }
+
+    /**
+     * @return the memory the frames kept take up, in bytes
+     */
+    public synchronized long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    /**
+     * @return the number of frames dropped before they were kept, because the
+     * compressor fell behind
+     */
+    public long getFramesDropped() {
+        return pending.getDropped();
+    }
+
+    /**
+     * @return a one-line summary of what is kept
+     */
+    @Override
+    public String toString() {
+        return String.format("%d frames, %.1f s, %.1f of %d MB", getFrameCount(), getSeconds(),
+                getBytesUsed() / 1048576.0, log.capacity() >> 20);
+    }
+
+    /**
+     * Compressor stage: compresses frames into the log until the history closes.
+     */
+    private void compressLoop() {
+        try {
+            for (BufferedImage frame = pending.take(); frame != null; frame = pending.take()) {
+                long nanos = System.nanoTime();
+                int width = frame.getWidth();
+                int height = frame.getHeight();
+                int length;
+                try {
+                    length = compress(frame);
+                } finally {
+                    BufferPool.releaseImage(frame);
+                }
+                append(nanos, width, height, length);
+            }
+        } catch (InterruptedException e) {
+            // closing
+        }
+    }
+
+    /**
+     * Packs a frame to 24-bit RGB and deflates it into the packed buffer.
+     *
+     * @param frame, the frame
+     * @return the number of bytes of packed used
+     */
+    private int compress(BufferedImage frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int size = 3 * width * height;
+        if (rgb.length != size) {
+            rgb = new byte[size];
+            packed = new byte[size + size / 1000 + 64];
+            row = new int[width];
+        }
+        boolean compact = Pixels.isCompact(frame);
+        int[] data = compact ? Pixels.data(frame) : row;
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            int offset = compact ? y * width : 0;
+            if (!compact) {
+                frame.getRGB(0, y, width, 1, row, 0, width);
+            }
+            for (int x = offset; x < offset + width; x++) {
+                int argb = data[x];
+                rgb[i++] = (byte) (argb >> 16);
+                rgb[i++] = (byte) (argb >> 8);
+                rgb[i++] = (byte) argb;
+            }
+        }
+        deflater.reset();
+        deflater.setInput(rgb);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == packed.length) {
+                // incompressible enough to outgrow the bound, which stored blocks never do
+                packed = Arrays.copyOf(packed, 2 * packed.length);
+            }
+            length += deflater.deflate(packed, length, packed.length - length);
+        }
+        return length;
+    }
+
+    /**
+     * Appends the packed buffer to the log as the newest frame, dropping the oldest
+     * frames to make room and those older than the time kept.
+     *
+     * @param nanos, when the frame was kept, as System.nanoTime()
+     * @param width, the width of the frame
+     * @param height, the height of the frame
+     * @param length, the number of bytes of packed used
+     */
+    private synchronized void append(long nanos, int width, int height, int length) {
+        while (!entries.isEmpty() && nanos - entries.peekFirst().nanos > keepNanos) {
+            drop();
+        }
+        if (length > log.capacity()) {
+            return;
+        }
+        if (tail + length > log.capacity()) {
+            // the rest of the log is too short, so it wraps around and leaves it unused;
+            // the oldest frames lie past the old tail, and all of them go, or the new
+            // frame could overwrite the newest ones at the start while they are kept
+            while (!entries.isEmpty() && entries.peekFirst().offset >= tail) {
+                drop();
+            }
+            tail = 0;
+        }
+        // frames are dropped oldest first, and the oldest lies just past the tail
+        while (!entries.isEmpty() && entries.peekFirst().offset < tail + length
+                && entries.peekFirst().offset + entries.peekFirst().length > tail) {
+            drop();
+        }
+        log.position(tail);
+        log.put(packed, 0, length);
+        entries.addLast(new Entry(nextSequence++, nanos, width, height, tail, length));
+        tail += length;
+        bytesUsed += length;
+    }
+
+    /**
+     * Drops the oldest frame from the log. The lock must be held.
+     */
+    private void drop() {
+        bytesUsed -= entries.removeFirst().length;
+    }
+
+    /**
+     * Copies a frame's deflated bytes out of the log, unless it has been dropped.
+     *
+     * @param entry, the frame
+     * @param bytes, the array copied to, at least entry.length long
+     * @return true if the frame was still in the log
+     */
+    private synchronized boolean copy(Entry entry, byte[] bytes) {
+        Entry oldest = entries.peekFirst();
+        if (oldest == null || entry.sequence < oldest.sequence) {
+            return false;
+        }
+        log.position(entry.offset);
+        log.get(bytes, 0, entry.length);
+        return true;
+    }
+
+    /**
+     * Writes frames to a raw frame file, decompressing each into a pooled image that
+     * a FrameRecorder streams to disk.
+     *
+     * @param window, the frames to be written, oldest first
+     * @param file, the raw frame file
+     * @return the number of frames written
+     * @throws IOException if the file cannot be written
+     * @throws DataFormatException if a frame cannot be decompressed
+     * @throws InterruptedException if interrupted while waiting on the writer
+     */
+    private long write(List<Entry> window, Path file) throws IOException, DataFormatException, InterruptedException {
+        Inflater inflater = new Inflater();
+        byte[] bytes = new byte[0];
+        byte[] unpacked = new byte[0];
+        FrameRecorder recorder = new FrameRecorder(file, BACKLOG, FrameRing.Policy.BLOCK);
+        try {
+            for (Entry entry : window) {
+                if (bytes.length < entry.length) {
+                    bytes = new byte[entry.length];
+                }
+                if (!copy(entry, bytes)) {
+                    continue;
+                }
+                int size = 3 * entry.width * entry.height;
+                if (unpacked.length != size) {
+                    unpacked = new byte[size];
+                }
+                inflater.reset();
+                inflater.setInput(bytes, 0, entry.length);
+                if (inflater.inflate(unpacked) != size) {
+                    throw new DataFormatException("truncated frame");
+                }
+                BufferedImage image = BufferPool.acquireImage(entry.width, entry.height);
+                int[] data = Pixels.data(image);
+                for (int i = 0, j = 0; i < data.length; i++, j += 3) {
+                    data[i] = Pixels.pack(unpacked[j] & 0xff, unpacked[j + 1] & 0xff, unpacked[j + 2] & 0xff);
+                }
+                recorder.record(image);
+                BufferPool.releaseImage(image);
+            }
+        } finally {
+            inflater.end();
+            recorder.close();
+        }
+        return recorder.getFramesWritten();
+    }
+
+    /**
+     * Where one frame lies in the log.
+     */
+    private static class Entry {
+        final long sequence;    // frames are numbered in the order they are appended
+        final long nanos;
+        final int width;
+        final int height;
+        final int offset;
+        final int length;
+
+        /**
+         * Constructor for Entry.
+         *
+         * @param sequence, the number of the frame
+         * @param nanos, when the frame was kept, as System.nanoTime()
+         * @param width, the width of the frame
+         * @param height, the height of the frame
+         * @param offset, where the frame's bytes start in the log
+         * @param length, the number of bytes
+         */
+        Entry(long sequence, long nanos, int width, int height, int offset, int length) {
+            this.sequence = sequence;
+            this.nanos = nanos;
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
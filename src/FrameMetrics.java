@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Where frame time goes: a LatencyHistogram per stage of processing, such as capture,
+ * process and display, the bytes each stage allocates, and counts of the frames that
+ * came in, went out and were dropped. Every stage timing is also emitted as a
+ * kip.Stage event, and every processed frame as a kip.Frame event, to JDK Flight
+ * Recorder when it is recording, so that frame time lines up with garbage collection
+ * and the rest of the JVM's activity (java -XX:StartFlightRecording ...). When it is
+ * not, the events cost a flag check, and the compiler does away with the event
+ * objects themselves.
+ *
+ * All methods may be called from any thread.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FrameMetrics {
+    // looked up once, since every lookup allocates
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // bytes other threads have allocated running bands handed off by each thread
+    private static final ThreadLocal<AtomicLong> HANDED_OFF = ThreadLocal.withInitial(AtomicLong::new);
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Constructor for FrameMetrics.
+     *
+     * @param stages, the names of the stages timed, in the order they run
+     */
+    public FrameMetrics(String... stages) {
+        for (String stage : stages) {
+            this.stages.put(stage, new Stage());
+        }
+    }
+
+    /**
+     * @return the names of the stages timed, in the order they run
+     */
+    public List<String> getStages() {
+        return Collections.unmodifiableList(new ArrayList<>(stages.keySet()));
+    }
+
+    /**
+     * Gets the bytes the calling thread has allocated so far, which a stage reads
+     * before it runs and passes to record() after. Bytes allocated by other threads
+     * running the bands of the calling thread's frames, such as the shared pool's or
+     * a FairScheduler's workers, count as the calling thread's, so that a stage's
+     * count covers the work it fans out but not what other stages and streams
+     * allocate at the same time.
+     *
+     * @return bytes allocated, or 0 if the JVM does not track it
+     */
+    public static long threadAllocatedBytes() {
+        return ownAllocatedBytes() + HANDED_OFF.get().get();
+    }
+
+    /**
+     * Wraps a band the calling thread hands to other threads, so that what they
+     * allocate running it is counted in the calling thread's threadAllocatedBytes().
+     *
+     * @param band, the work to be done on each band
+     * @return the band, counting its allocations against the calling thread
+     */
+    static TileScheduler.Band chargedToCaller(TileScheduler.Band band) {
+        if (ownAllocatedBytes() == 0) {
+            return band;
+        }
+        Thread caller = Thread.currentThread();
+        AtomicLong handedOff = HANDED_OFF.get();
+        return (rowStart, rowEnd) -> {
+            if (Thread.currentThread() == caller) {
+                band.process(rowStart, rowEnd);
+                return;
+            }
+            // with whatever the band itself hands off in turn
+            long start = threadAllocatedBytes();
+            try {
+                band.process(rowStart, rowEnd);
+            } finally {
+                handedOff.addAndGet(Math.max(0, threadAllocatedBytes() - start));
+            }
+        };
+    }
+
+    /**
+     * Gets the bytes the calling thread itself has allocated so far.
+     *
+     * @return bytes allocated, or 0 if the JVM does not track it
+     */
+    private static long ownAllocatedBytes() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        return threads.isThreadAllocatedMemoryEnabled() ? Math.max(0, threads.getCurrentThreadAllocatedBytes()) : 0;
+    }
+
+    /**
+     * Records one run of a stage on the calling thread, which ends now.
+     *
+     * @param stage, the name of the stage
+     * @param startNanos, System.nanoTime() when the stage started
+     * @param startAllocated, threadAllocatedBytes() when the stage started
+     * @return the time the stage took, in nanoseconds
+     */
+    public long record(String stage, long startNanos, long startAllocated) {
+        long nanos = System.nanoTime() - startNanos;
+        Stage timed = stage(stage);
+        timed.latency.record(nanos);
+        timed.allocated.addAndGet(Math.max(0, threadAllocatedBytes() - startAllocated));
+        StageEvent event = new StageEvent();
+        if (event.isEnabled()) {
+            event.stage = stage;
+            event.time = nanos;
+            event.commit();
+        }
+        return nanos;
+    }
+
+    /**
+     * Emits a processed frame to Flight Recorder, if it is recording.
+     *
+     * @param frame, the number of the frame
+     * @param width, the width of the frame
+     * @param height, the height of the frame
+     * @param nanos, the time processing the frame took, in nanoseconds
+     */
+    public void recordFrame(long frame, int width, int height, long nanos) {
+        FrameEvent event = new FrameEvent();
+        if (event.isEnabled()) {
+            event.frame = frame;
+            event.width = width;
+            event.height = height;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts a frame coming in.
+     */
+    public void frameIn() {
+        framesIn.incrementAndGet();
+    }
+
+    /**
+     * Counts a frame going out.
+     */
+    public void frameOut() {
+        framesOut.incrementAndGet();
+    }
+
+    /**
+     * Counts frames dropped.
+     *
+     * @param frames, the number of frames dropped
+     */
+    public void dropped(long frames) {
+        framesDropped.addAndGet(frames);
+    }
+
+    /**
+     * Takes a snapshot of every stage and counter. Subtracting an earlier snapshot
+     * gives the numbers for the time in between.
+     *
+     * @return new Snapshot
+     */
+    public Snapshot snapshot() {
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        Map<String, Long> allocated = new LinkedHashMap<>();
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().latency.snapshot());
+            allocated.put(entry.getKey(), entry.getValue().allocated.get());
+        }
+        return new Snapshot(System.nanoTime() - startNanos, framesIn.get(), framesOut.get(), framesDropped.get(),
+                latencies, allocated);
+    }
+
+    /**
+     * Writes every stage and counter to a .csv file, one stage per row with its
+     * latency percentiles in milliseconds and the bytes it allocated per frame,
+     * followed by a row per frame counter.
+     *
+     * @param file, the file to be written
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCsv(Path file) throws IOException {
+        Snapshot snapshot = snapshot();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("stage,count,mean_ms,p50_ms,p99_ms,max_ms,bytes_per_frame");
+            for (String stage : snapshot.getStages()) {
+                LatencyHistogram latency = snapshot.getLatency(stage);
+                out.printf(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.0f%n", stage, latency.getCount(), latency.getMean() / 1e6,
+                        latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, latency.getMax() / 1e6,
+                        snapshot.getAllocatedPerFrame(stage));
+            }
+            out.printf("frames_in,%d,,,,,%n", snapshot.getFramesIn());
+            out.printf("frames_out,%d,,,,,%n", snapshot.getFramesOut());
+            out.printf("frames_dropped,%d,,,,,%n", snapshot.getFramesDropped());
+        }
+    }
+
+    /**
+     * Gets a stage by name.
+     *
+     * @param name, the name of the stage
+     * @return the stage
+     */
+    private Stage stage(String name) {
+        Stage stage = stages.get(name);
+        if (stage == null) {
+            throw new IllegalArgumentException("unknown stage: " + name);
+        }
+        return stage;
+    }
+
+    /**
+     * Numbers kept for one stage.
+     */
+    private static class Stage {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong allocated = new AtomicLong();
+    }
+
+    /**
+     * Every stage and counter at one point in time, or over the time between two
+     * points.
+     */
+    public static class Snapshot {
+        private final long nanos;
+        private final long framesIn;
+        private final long framesOut;
+        private final long framesDropped;
+        private final Map<String, LatencyHistogram> latencies;
+        private final Map<String, Long> allocated;
+
+        /**
+         * Constructor for Snapshot.
+         *
+         * @param nanos, the time covered, in nanoseconds
+         * @param framesIn, the number of frames that came in
+         * @param framesOut, the number of frames that went out
+         * @param framesDropped, the number of frames dropped
+         * @param latencies, the latencies of each stage
+         * @param allocated, the bytes each stage allocated
+         */
+        Snapshot(long nanos, long framesIn, long framesOut, long framesDropped,
+                 Map<String, LatencyHistogram> latencies, Map<String, Long> allocated) {
+            this.nanos = nanos;
+            this.framesIn = framesIn;
+            this.framesOut = framesOut;
+            this.framesDropped = framesDropped;
+            this.latencies = latencies;
+            this.allocated = allocated;
+        }
+
+        /**
+         * Subtracts an earlier snapshot of the same metrics.
+         *
+         * @param earlier, a snapshot taken before this one
+         * @return new Snapshot of the time in between
+         */
+        public Snapshot minus(Snapshot earlier) {
+            Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+            Map<String, Long> allocated = new LinkedHashMap<>();
+            for (String stage : getStages()) {
+                latencies.put(stage, this.latencies.get(stage).minus(earlier.latencies.get(stage)));
+                allocated.put(stage, this.allocated.get(stage) - earlier.allocated.get(stage));
+            }
+            return new Snapshot(nanos - earlier.nanos, framesIn - earlier.framesIn, framesOut - earlier.framesOut,
+                    framesDropped - earlier.framesDropped, latencies, allocated);
+        }
+
+        /**
+         * @return the time covered, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the names of the stages, in the order they run
+         */
+        public List<String> getStages() {
+            return new ArrayList<>(latencies.keySet());
+        }
+
+        /**
+         * @param stage, the name of a stage
+         * @return the stage's latencies
+         */
+        public LatencyHistogram getLatency(String stage) {
+            return latencies.get(stage);
+        }
+
+        /**
+         * @param stage, the name of a stage
+         * @return the bytes the stage allocated per run, on average
+         */
+        public double getAllocatedPerFrame(String stage) {
+            long runs = latencies.get(stage).getCount();
+            return runs == 0 ? 0 : (double) allocated.get(stage) / runs;
+        }
+
+        /**
+         * @return the number of frames that came in
+         */
+        public long getFramesIn() {
+            return framesIn;
+        }
+
+        /**
+         * @return the number of frames that went out
+         */
+        public long getFramesOut() {
+            return framesOut;
+        }
+
+        /**
+         * @return the number of frames dropped
+         */
+        public long getFramesDropped() {
+            return framesDropped;
+        }
+
+        /**
+         * @return the rate frames went out at, per second
+         */
+        public double getFps() {
+            return nanos == 0 ? 0 : framesOut / (nanos / 1e9);
+        }
+    }
+
+    /**
+     * Flight Recorder event for one run of a stage.
+     */
+    @Name("kip.Stage")
+    @Label("Frame Stage")
+    @Category("Kip")
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+
+    /**
+     * Flight Recorder event for one processed frame.
+     */
+    @Name("kip.Frame")
+    @Label("Frame")
+    @Category("Kip")
+    static class FrameEvent extends Event {
+        @Label("Frame")
+        long frame;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Processing Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+}
@@ -0,0 +1,47 @@
+import java.io.InterruptedIOException;
+
+/**
+ * Paces a frame source to a fixed frame rate by sleeping until each frame is due.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FramePacer {
+    private final long interval;    // nanoseconds between frames, 0 for unpaced
+    private long next;              // when the next frame is due
+
+    /**
+     * Constructor for FramePacer.
+     *
+     * @param fps, frames per second, or 0 to deliver frames as fast as they are read
+     */
+    public FramePacer(double fps) {
+        interval = fps > 0 ? (long) (1e9 / fps) : 0;
+    }
+
+    /**
+     * Waits until the next frame is due. A source that falls behind delivers its
+     * next frame immediately rather than trying to catch up.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void await() throws InterruptedIOException {
+        if (interval == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (next == 0 || now - next > interval) {
+            next = now;
+        }
+        long wait = next - now;
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        next += interval;
+    }
+}
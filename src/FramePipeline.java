@@ -0,0 +1,264 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Three-stage frame pipeline. A capture thread reads frames into one ring, a
+ * processing thread filters them into a second ring, and the display stage swaps in
+ * the newest finished frame whenever it is asked for one, without ever waiting. A slow
+ * filter therefore never holds up capture or the user interface. Nothing in the
+ * pipeline needs a display, so it runs just as well headlessly.
+ *
+ * The time capture and processing take is recorded in FrameMetrics, under the stages
+ * "capture" and "process", along with the frames that came in, were shown and were
+ * dropped on the way. The display stage is the caller's, which records "display".
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FramePipeline {
+    private final FrameSource source;
+    private final UnaryOperator<BufferedImage> process;
+    private final FrameRing<BufferedImage> captured;
+    private final FrameRing<BufferedImage> processed;
+    private final Thread captureThread;
+    private final Thread processThread;
+    private final FrameMetrics metrics = new FrameMetrics("capture", "process", "display");
+
+    private volatile boolean running;
+    private volatile Runnable listener = () -> { };
+    private volatile Consumer<BufferedImage> recycler = frame -> { };
+    private volatile long framesCaptured;
+    private volatile long framesProcessed;
+    private volatile long framesSkipped;
+    private BufferedImage latest;   // frame currently shown by the display stage
+
+    /**
+     * Constructor for FramePipeline.
+     *
+     * @param source, the source frames are captured from
+     * @param process, filters a frame, or returns null to skip it
+     * @param capacity, the number of frames each ring holds
+     * @param policy, what a stage does when the ring after it is full
+     */
+    public FramePipeline(FrameSource source, UnaryOperator<BufferedImage> process,
+                         int capacity, FrameRing.Policy policy) {
+        this.source = source;
+        this.process = process;
+        captured = new FrameRing<>(capacity, policy);
+        processed = new FrameRing<>(capacity, policy);
+        captureThread = new Thread(this::captureLoop, "frame-capture");
+        processThread = new Thread(this::processLoop, "frame-process");
+        captureThread.setDaemon(true);
+        processThread.setDaemon(true);
+    }
+
+    /**
+     * Sets the action run every time a processed frame is ready, such as repainting
+     * the panel showing it. The action runs on the processing thread.
+     *
+     * @param listener, the action to run
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the action run on every processed frame the pipeline is done with: frames
+     * dropped before display, and frames replaced on display by newer ones. Handing
+     * them back to the BufferPool lets a process function that writes into pooled
+     * images run without allocating.
+     *
+     * @param recycler, the action to run
+     */
+    public void setRecycler(Consumer<BufferedImage> recycler) {
+        this.recycler = recycler;
+    }
+
+    /**
+     * @return the metrics the pipeline records into
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts the capture and processing threads.
+     */
+    public void start() {
+        running = true;
+        captureThread.start();
+        processThread.start();
+    }
+
+    /**
+     * Stops both threads and waits for them to finish.
+     */
+    public void stop() {
+        running = false;
+        captured.close();
+        processed.close();
+        captureThread.interrupt();
+        processThread.interrupt();
+        try {
+            captureThread.join(1000);
+            processThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Display stage: swaps in the newest processed frame, if there is one, and
+     * returns the frame to be shown. Never blocks. The frame returned stays valid
+     * until the next call, which may hand it to the recycler. Frames overtaken by a
+     * newer one before they were ever returned count as dropped.
+     *
+     * @return the newest processed frame, or null if none is ready yet
+     */
+    public synchronized BufferedImage latest() {
+        int swapped = 0;
+        for (BufferedImage frame = processed.poll(); frame != null; frame = processed.poll()) {
+            if (latest != null) {
+                recycler.accept(latest);
+            }
+            latest = frame;
+            swapped++;
+        }
+        if (swapped > 0) {
+            metrics.dropped(swapped - 1);
+            metrics.frameOut();
+        }
+        return latest;
+    }
+
+    /**
+     * @return the number of frames waiting to be processed
+     */
+    public int getCaptureDepth() {
+        return captured.size();
+    }
+
+    /**
+     * @return the number of processed frames waiting to be displayed
+     */
+    public int getDisplayDepth() {
+        return processed.size();
+    }
+
+    /**
+     * @return the number of captured frames dropped before processing
+     */
+    public long getCaptureDrops() {
+        return captured.getDropped();
+    }
+
+    /**
+     * @return the number of processed frames dropped before display
+     */
+    public long getDisplayDrops() {
+        return processed.getDropped();
+    }
+
+    /**
+     * @return the number of frames captured so far
+     */
+    public long getFramesCaptured() {
+        return framesCaptured;
+    }
+
+    /**
+     * @return the number of frames processed so far
+     */
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    /**
+     * @return the number of frames the process function chose to skip
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * @return a one-line summary of the pipeline's counters
+     */
+    @Override
+    public String toString() {
+        return String.format("captured %d (queued %d/%d, dropped %d), processed %d (queued %d/%d, dropped %d),"
+                        + " skipped %d", framesCaptured, captured.size(), captured.capacity(), captured.getDropped(),
+                framesProcessed, processed.size(), processed.capacity(), processed.getDropped(), framesSkipped);
+    }
+
+    /**
+     * @return whether both stages have finished, either because the source ran out of
+     * frames or because the pipeline was stopped
+     */
+    public boolean isDone() {
+        return !captureThread.isAlive() && !processThread.isAlive();
+    }
+
+    /**
+     * Capture stage: reads frames until there are no more or the pipeline stops.
+     */
+    private void captureLoop() {
+        try {
+            while (running) {
+                long start = System.nanoTime();
+                long allocated = FrameMetrics.threadAllocatedBytes();
+                BufferedImage frame = source.read();
+                if (frame == null) {
+                    break;
+                }
+                metrics.record("capture", start, allocated);
+                metrics.frameIn();
+                framesCaptured++;
+                if (captured.put(frame) != null) {
+                    metrics.dropped(1);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopping
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            captured.close();
+        }
+    }
+
+    /**
+     * Processing stage: filters captured frames until capture ends or the pipeline
+     * stops.
+     */
+    private void processLoop() {
+        try {
+            for (BufferedImage frame = captured.take(); frame != null && running; frame = captured.take()) {
+                long start = System.nanoTime();
+                long allocated = FrameMetrics.threadAllocatedBytes();
+                BufferedImage result = process.apply(frame);
+                if (result == null) {
+                    framesSkipped++;
+                    metrics.dropped(1);
+                    continue;
+                }
+                long nanos = metrics.record("process", start, allocated);
+                metrics.recordFrame(framesProcessed, result.getWidth(), result.getHeight(), nanos);
+                BufferedImage dropped = processed.put(result);
+                if (dropped != null) {
+                    metrics.dropped(1);
+                    recycler.accept(dropped);
+                }
+                framesProcessed++;
+                listener.run();
+            }
+        } catch (InterruptedException e) {
+            // stopping
+        } finally {
+            processed.close();
+        }
+    }
+}
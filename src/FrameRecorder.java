@@ -0,0 +1,215 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a stream of frames to a raw frame file (see RawFrameFile), which
+ * RawFrameSource plays back. Frames are handed over without being copied: record()
+ * takes a hold on the pooled image with BufferPool.retainImage() and puts it in a
+ * ring, and a writer thread of its own streams it to disk and lets go of it, so the
+ * caller never waits on the disk. When the disk falls behind and the ring fills up,
+ * frames are dropped or the caller waits for room, depending on the ring's policy,
+ * and either way the frames dropped and the time spent waiting are counted.
+ *
+ * The file takes the size of the first frame recorded. Frames of any other size are
+ * dropped.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FrameRecorder implements AutoCloseable {
+    private final Path file;
+    private final FileChannel channel;
+    private final FrameRing<BufferedImage> queue;
+    private final Thread writer;
+
+    private int width;              // size of the frames, 0 until the first frame
+    private int height;
+    private volatile long framesMismatched; // frames dropped for being the wrong size
+    // the frame being written, in the file's byte order, reused for every frame
+    private volatile ByteBuffer bytes;
+    private IntBuffer ints;
+
+    private volatile long framesWritten;
+    private volatile long blockedNanos;
+    private volatile IOException failure;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Constructor for FrameRecorder, creating the file, or emptying it if it exists,
+     * and starting the writer thread.
+     *
+     * @param file, the raw frame file to be written
+     * @param capacity, the number of frames waiting to be written that are held
+     * @param policy, what record() does when that many are waiting already
+     * @throws IOException if the file cannot be created
+     */
+    public FrameRecorder(Path file, int capacity, FrameRing.Policy policy) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        queue = new FrameRing<>(capacity, policy);
+        writer = new Thread(this::writeLoop, "frame-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a frame to be written. The frame is held in the pool until it has been
+     * written, so the caller may release it as usual as soon as this returns. Called
+     * from one thread at a time, such as a pipeline's processing thread.
+     *
+     * @param frame, an int-backed frame, such as one from BufferPool.acquireImage()
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public void record(BufferedImage frame) throws InterruptedException {
+        if (width == 0) {
+            width = frame.getWidth();
+            height = frame.getHeight();
+        }
+        if (frame.getWidth() != width || frame.getHeight() != height || !Pixels.isCompact(frame)) {
+            framesMismatched++;
+            return;
+        }
+        BufferPool.retainImage(frame);
+        long start = System.nanoTime();
+        BufferedImage dropped;
+        try {
+            dropped = queue.put(frame);
+        } catch (InterruptedException e) {
+            BufferPool.releaseImage(frame);
+            throw e;
+        }
+        if (queue.getPolicy() == FrameRing.Policy.BLOCK) {
+            blockedNanos += System.nanoTime() - start;
+        }
+        if (dropped != null) {
+            BufferPool.releaseImage(dropped);
+        }
+    }
+
+    /**
+     * Writes whatever is queued, stops the writer thread and closes the file. Frames
+     * recorded afterwards are dropped.
+     *
+     * @throws IOException if a frame could not be written, or the file not closed
+     */
+    @Override
+    public void close() throws IOException {
+        queue.close();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the file being written
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of frames written so far
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * @return the number of frames dropped because the disk fell behind, or for being
+     * the wrong size
+     */
+    public long getFramesDropped() {
+        return queue.getDropped() + framesMismatched;
+    }
+
+    /**
+     * @return the number of frames waiting to be written
+     */
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    /**
+     * @return the time record() spent waiting for room, in milliseconds, which is
+     * always 0 unless the ring's policy is BLOCK
+     */
+    public double getBlockedMillis() {
+        return blockedNanos / 1e6;
+    }
+
+    /**
+     * @return the rate frames have been written at since recording started, in
+     * megabytes per second
+     */
+    public double getMegabytesPerSecond() {
+        ByteBuffer bytes = this.bytes;
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return bytes == null ? 0 : framesWritten * bytes.capacity() / 1e6 / seconds;
+    }
+
+    /**
+     * @return a one-line summary of the recording so far
+     */
+    @Override
+    public String toString() {
+        return String.format("%d frames written (%.1f MB/s), %d dropped, %d queued, %.0f ms waited",
+                framesWritten, getMegabytesPerSecond(), getFramesDropped(), getBacklog(), getBlockedMillis());
+    }
+
+    /**
+     * Writer stage: writes queued frames until the recorder closes, then the rest. A
+     * write that fails stops the recording, and every frame after it is dropped.
+     */
+    private void writeLoop() {
+        try {
+            for (BufferedImage frame = queue.take(); frame != null; frame = queue.take()) {
+                try {
+                    if (failure == null) {
+                        write(frame);
+                        framesWritten++;
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    BufferPool.releaseImage(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closing
+        }
+    }
+
+    /**
+     * Appends one frame's pixels to the file, writing the header first if it is the
+     * first frame.
+     *
+     * @param frame, the frame
+     * @throws IOException if the frame cannot be written
+     */
+    private void write(BufferedImage frame) throws IOException {
+        if (bytes == null) {
+            RawFrameFile.writeHeader(channel, frame.getWidth(), frame.getHeight());
+            channel.position(RawFrameFile.HEADER_BYTES);
+            bytes = ByteBuffer.allocateDirect((int) RawFrameFile.frameBytes(frame.getWidth(), frame.getHeight()));
+            ints = bytes.asIntBuffer();
+        }
+        ints.clear();
+        ints.put(Pixels.data(frame), 0, ints.capacity());
+        bytes.clear();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer joining two stages of a FramePipeline. When the ring is full, a
+ * producer either overwrites the oldest frame or waits for room, depending on the
+ * ring's policy. Consumers can poll without ever blocking.
+ *
+ * @param <T> the type of frame held
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FrameRing<T> {
+    private final Object[] slots;
+    private final Policy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head;               // index of the oldest frame
+    private int size;
+    private long dropped;
+    private boolean closed;
+
+    /**
+     * Constructor for FrameRing.
+     *
+     * @param capacity, the number of frames the ring holds
+     * @param policy, what a producer does when the ring is full
+     */
+    public FrameRing(int capacity, Policy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        slots = new Object[capacity];
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a frame to the ring. If the ring is full, the oldest frame is dropped or
+     * the caller waits, depending on the policy. Frames put into a closed ring are
+     * dropped.
+     *
+     * @param frame, the frame to be added
+     * @return the frame that was dropped to make room, or null
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public T put(T frame) throws InterruptedException {
+        lock.lock();
+        try {
+            if (policy == Policy.BLOCK) {
+                while (size == slots.length && !closed) {
+                    notFull.await();
+                }
+            }
+            if (closed) {
+                dropped++;
+                return frame;
+            }
+            T oldest = null;
+            if (size == slots.length) {
+                oldest = removeOldest();
+                dropped++;
+            }
+            slots[(head + size) % slots.length] = frame;
+            size++;
+            notEmpty.signal();
+            return oldest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest frame without waiting.
+     *
+     * @return the oldest frame, or null if the ring is empty
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            return size == 0 ? null : removeOldest();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest frame, waiting for one if the ring is empty.
+     *
+     * @return the oldest frame, or null once the ring is closed and empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0 && !closed) {
+                notEmpty.await();
+            }
+            return size == 0 ? null : removeOldest();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the ring. Waiting producers and consumers are woken up, frames already
+     * in the ring can still be taken, and frames put from now on are dropped.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of frames waiting in the ring
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of frames the ring holds
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return the number of frames dropped so far
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return what a producer does when the ring is full
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Removes the oldest frame. The lock must be held and the ring must not be empty.
+     *
+     * @return the oldest frame
+     */
+    @SuppressWarnings("unchecked")
+    private T removeOldest() {
+        T frame = (T) slots[head];
+        slots[head] = null;
+        head = (head + 1) % slots.length;
+        size--;
+        notFull.signal();
+        return frame;
+    }
+
+    /**
+     * Enumerator for what a producer does when the ring is full.
+     */
+    public enum Policy {
+        DROP_OLDEST, BLOCK
+    }
+}
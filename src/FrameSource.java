@@ -0,0 +1,78 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Source of frames for the processors, such as the user's webcam, a directory of
+ * images, a raw frame file or a synthetic pattern. Everything but the webcam works
+ * headlessly, so the processing path can run on machines without a camera.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public interface FrameSource extends AutoCloseable {
+    /**
+     * Reads the next frame, waiting for it if the source runs at a fixed frame rate.
+     *
+     * @return the next frame, or null once there are no more
+     * @throws IOException if the frame cannot be read
+     */
+    BufferedImage read() throws IOException;
+
+    /**
+     * @return the size of the source's frames
+     */
+    Dimension getSize();
+
+    /**
+     * Releases the source's device or files.
+     *
+     * @throws IOException if the source cannot be closed
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Opens a source from a specification of the form:
+     * <ul>
+     *     <li>webcam</li>
+     *     <li>synthetic:WIDTHxHEIGHT[@FPS]</li>
+     *     <li>dir:PATH[@FPS]</li>
+     *     <li>raw:PATH[@FPS]</li>
+     * </ul>
+     * Sources without a frame rate deliver frames as fast as they are read.
+     *
+     * @param spec, the source specification
+     * @return the opened source
+     * @throws IOException if the source cannot be opened
+     */
+    static FrameSource open(String spec) throws IOException {
+        if (spec.equals("webcam")) {
+            return new WebcamFrameSource(new Dimension(640, 480));
+        }
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("unknown frame source: " + spec);
+        }
+        String kind = spec.substring(0, colon);
+        String argument = spec.substring(colon + 1);
+        double fps = 0;
+        int at = argument.lastIndexOf('@');
+        if (at >= 0) {
+            fps = Double.parseDouble(argument.substring(at + 1));
+            argument = argument.substring(0, at);
+        }
+        switch (kind) {
+            case "synthetic":
+                String[] size = argument.split("x");
+                return new SyntheticFrameSource(Integer.parseInt(size[0]), Integer.parseInt(size[1]), fps, -1);
+            case "dir":
+                return new ImageSequenceSource(Paths.get(argument), fps, false);
+            case "raw":
+                return new RawFrameSource(Paths.get(argument), fps, false);
+            default:
+                throw new IllegalArgumentException("unknown frame source: " + spec);
+        }
+    }
+}
@@ -1,4 +1,3 @@
-import java.awt.*;
 import java.awt.image.BufferedImage;
 
 /**
@@ -9,93 +8,107 @@ import java.awt.image.BufferedImage;
  * @version 11 December 2020
  */
 public class Grayscaler {
+    private static final Filter FILTER = new Filter() {
+        @Override
+        public Kind kind(int width, int height) {
+            return Kind.POINTWISE;
+        }
+
+        @Override
+        public int halo() {
+            return 0;
+        }
+
+        @Override
+        public void apply(int[] data, int[] newData, int width, int height, int rowStart, int rowEnd) {
+            // through the Vector API when it is available, as the planar convolutions are
+            PlanarConvolver.LANES.gray(data, newData, rowStart * width, rowEnd * width);
+        }
+
+        @Override
+        public int processPixel(int rgb) {
+            return Grayscaler.processPixel(rgb);
+        }
+
+        @Override
+        public String toString() {
+            return "grayscale";
+        }
+    };
+
     /**
      * Iterates through each of the image's pixels and calls processPixel() on each.
+     * Rows are split into bands processed in parallel by the TileScheduler.
      *
      * @param image, the image to be processed
      * @return new processed BufferedImage
      */
     public static BufferedImage processImage(BufferedImage image) {
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        for (int col = 0; col < image.getWidth(); col++) {
-            for (int row = 0; row < image.getHeight(); row++) {
-                processPixel(col, row, image, newImage);
-            }
-        }
-        return newImage;
+        return FilterChain.of(filter()).processImage(image);
     }
 
     /**
-     * Converts specified pixel to grayscale.
+     * Gray-scales an image into an existing image instead of allocating one.
      *
-     * @param col, the x coordinate of the pixel in the image
-     * @param row, the y coordinate of the pixel in the image
      * @param image, the image to be processed
-     * @param newImage, the image to be output
+     * @param dest, an int-backed image of the same size, such as one from
+     *              BufferPool.acquireImage()
+     * @return dest
      */
-    private static void processPixel(int col, int row, BufferedImage image, BufferedImage newImage) {
-        set(col, row, newImage, grayscale(new Color(get(col, row, image))).getRGB());
+    public static BufferedImage processImage(BufferedImage image, BufferedImage dest) {
+        return FilterChain.of(filter()).processImage(image, dest);
     }
 
     /**
-     * Calculates intensity of the specified pixel using a Luma formula.
+     * Gets gray-scaling as a stage of a FilterChain.
      *
-     * @param color, the color of the pixel
-     * @return the intensity of the pixel
+     * @return the pointwise grayscale filter
      */
-    private static double intensity(Color color) {
-        int r = color.getRed();
-        int g = color.getGreen();
-        int b = color.getBlue();
-        if (r == g && r == b) return r;   // to avoid floating-point issues
-        return 0.299*r + 0.587*g + 0.114*b; // luma formula
+    public static Filter filter() {
+        return FILTER;
     }
 
     /**
-     * Returns color of the gray-scaled specified pixel.
+     * Converts specified pixel to grayscale.
      *
-     * @param color, the color of the pixel
-     * @return the gray-scaled color
+     * @param rgb, the RGB value of the pixel
+     * @return the ARGB value of the gray-scaled pixel
      */
-    private static Color grayscale(Color color) {
-        int y = (int) (Math.round(intensity(color)));   // round to nearest int
-        Color gray = new Color(y, y, y);
-        return gray;
+    private static int processPixel(int rgb) {
+        int y = grayscale(rgb);
+        return Pixels.pack(y, y, y);
     }
 
     /**
-     * Gets the 24-bit RGB value of the specified pixel. Accounts for edge
-     * case pixels by extending their values to adjacent non-existent pixels.
+     * Calculates intensity of the specified pixel using a Luma formula.
      *
-     * @param col, the x coordinate of the pixel in the image
-     * @param row, the y coordinate of the pixel in the image
-     * @return 24-bit RGB
+     * @param rgb, the RGB value of the pixel
+     * @return the intensity of the pixel
      */
-    private static int get(int col, int row, BufferedImage image) {
-        if (col < 0) {
-            col = 0;
-        }
-        if (row < 0) {
-            row = 0;
-        }
-        if (col >= image.getWidth()) {
-            col = image.getWidth() - 1;
-        }
-        if (row >= image.getHeight()) {
-            row = image.getHeight() - 1;
-        }
-        return image.getRGB(col, row);
+    static double intensity(int rgb) {
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        if (r == g && r == b) return r;   // to avoid floating-point issues
+        return 0.299*r + 0.587*g + 0.114*b; // luma formula
     }
 
     /**
-     * Sets the specified pixel's value to the given value.
+     * Returns the gray level of the specified pixel: intensity() rounded to the
+     * nearest int, worked out in integer arithmetic. The luma weights are exact in
+     * thousandths, so only sums landing exactly halfway between two levels need
+     * intensity() itself, to round the same way its floating-point sum does.
      *
-     * @param col, the x coordinate of the pixel in the image
-     * @param row, the y coordinate of the pixel in the image
-     * @param newImage, the image to be output
-     * @param val, the new RGB value of the specified pixel
+     * @param rgb, the RGB value of the pixel
+     * @return the gray level, 0-255
      */
-    private static void set(int col, int row, BufferedImage newImage, int val) {
-        newImage.setRGB(col, row, val);
+    static int grayscale(int rgb) {
+        int sum = 299 * ((rgb >> 16) & 0xff) + 587 * ((rgb >> 8) & 0xff) + 114 * (rgb & 0xff) + 500;
+        // sum / 1000 as (sum / 8) / 125, the last by multiplying and shifting
+        int y = ((sum >>> 3) * 67109) >>> 23;
+        if (sum == 1000 * y) {
+            return (int) (Math.round(intensity(rgb)));   // round to nearest int
+        }
+        return y;
     }
 }
@@ -2,6 +2,7 @@ import java.awt.*;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 /**
  * Class filled with static utility methods to process a given image by first gray-
@@ -22,21 +23,7 @@ public class Halftoner {
      * @return new processed BufferedImage
      */
     public static BufferedImage processImage(BufferedImage image, int rad) {
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Grayscaler.processImage(image);
-        Graphics2D out = newImage.createGraphics();
-        // fills with background color
-        out.setColor(new Color(0, 0, 0));
-        out.fill(new Rectangle2D.Double(0, 0, image.getWidth(), image.getHeight()));
-        // draws half-tone circles in other color
-        out.setColor(new Color(255, 255, 255));
-        // partitions the image into squares with side length 2r
-        for (int col = 0; col < image.getWidth(); col += rad) {
-            for (int row = 0; row < image.getHeight(); row+= rad) {
-                processPixel(col, row, image, out, rad);
-            }
-        }
-        return newImage;
+        return processImage(image, rad, new Color(0, 0, 0), new Color(255, 255, 255));
     }
 
     /**
@@ -50,21 +37,215 @@ public class Halftoner {
      * @return new processed BufferedImage
      */
     public static BufferedImage processImage(BufferedImage image, int rad, Color bg, Color fg) {
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Grayscaler.processImage(image);
-        Graphics2D out = newImage.createGraphics();
-        // fills with background color
-        out.setColor(bg);
-        out.fill(new Rectangle2D.Double(0, 0, image.getWidth(), image.getHeight()));
-        // draws half-tone circles in other color
-        out.setColor(fg);
-        // partitions the image into squares with side length 2r
-        for (int col = 0; col < image.getWidth(); col += rad) {
-            for (int row = 0; row < image.getHeight(); row+= rad) {
-                processPixel(col, row, image, out, rad);
+        return FilterChain.of(filter(rad, bg, fg)).processImage(image);
+    }
+
+    /**
+     * Half-tones an image into an existing image instead of allocating one.
+     * Background and foreground colors are specified by user.
+     *
+     * @param image, the image to be processed
+     * @param rad, radius of the half-tone circles
+     * @param bg, the background color
+     * @param fg, the foreground half-tone color
+     * @param dest, an int-backed image of the same size, such as one from
+     *              BufferPool.acquireImage()
+     * @return dest
+     */
+    public static BufferedImage processImage(BufferedImage image, int rad, Color bg, Color fg, BufferedImage dest) {
+        return FilterChain.of(filter(rad, bg, fg)).processImage(image, dest);
+    }
+
+    /**
+     * Gets half-toning as a stage of a FilterChain, extending the edges of frames
+     * under the cells that hang over them. Dots spill over the edges of their cells,
+     * so the filter always works on whole frames.
+     *
+     * @param rad, radius of the half-tone circles
+     * @param bg, the background color
+     * @param fg, the foreground half-tone color
+     * @return the half-tone filter
+     */
+    public static Filter filter(int rad, Color bg, Color fg) {
+        return filter(rad, bg, fg, BorderMode.CLAMP);
+    }
+
+    /**
+     * Gets half-toning as a stage of a FilterChain. Dots spill over the edges of their
+     * cells, so the filter always works on whole frames.
+     *
+     * @param rad, radius of the half-tone circles
+     * @param bg, the background color
+     * @param fg, the foreground half-tone color
+     * @param border, how pixels under the cells that hang over the edges are read
+     * @return the half-tone filter
+     */
+    public static Filter filter(int rad, Color bg, Color fg, BorderMode border) {
+        if (rad < 1) {
+            throw new IllegalArgumentException("halftone radius must be positive: " + rad);
+        }
+        int background = bg.getRGB();
+        int foreground = fg.getRGB();
+        return new Filter() {
+            @Override
+            public Kind kind(int width, int height) {
+                return Kind.FRAME;
+            }
+
+            @Override
+            public int halo() {
+                // a dot is drawn from the square reaching up to 2r left and above it
+                return 2 * rad;
+            }
+
+            @Override
+            public int grid() {
+                return rad;
+            }
+
+            @Override
+            public void apply(int[] data, int[] newData, int width, int height, int rowStart, int rowEnd) {
+                if (!KernelPlan.PLANAR) {
+                    drawDots(data, newData, width, height, rad, bg, fg, border);
+                    return;
+                }
+                // fills with background color, before any dot can spill into a band
+                TileScheduler.forEachBand(height, 1, (bandStart, bandEnd) ->
+                        Arrays.fill(newData, bandStart * width, bandEnd * width, background));
+                // partitions the image into squares with side length 2r, with bands of
+                // rows lined up with the squares drawn in parallel, each summing its
+                // squares from a table of its own
+                int alignment = TileScheduler.bandRows(rad) >= 4 * rad ? rad : 4 * rad;
+                int rows = TileScheduler.bandRows(alignment);
+                int stride = width + 2 * rad + 1;
+                TileScheduler.forEachBand(height, alignment, (bandStart, bandEnd) -> {
+                    int[] table = BufferPool.acquire(stride * (rows + 2 * rad + 1));
+                    try {
+                        // bands run serially arrive whole, and are still summed in blocks
+                        for (int block = bandStart; block < bandEnd; block += rows) {
+                            int blockEnd = Math.min(bandEnd, block + rows);
+                            sumGray(block - rad, blockEnd + rad, data, width, height, table, stride, rad, border);
+                            for (int row = block; row < blockEnd; row += rad) {
+                                for (int col = 0; col < width; col += rad) {
+                                    Halftoner.processPixel(col, row, table, stride, row - block, newData,
+                                            width, height, foreground, rad);
+                                }
+                            }
+                        }
+                    } finally {
+                        BufferPool.release(table);
+                    }
+                });
+            }
+
+            @Override
+            public String toString() {
+                return "halftone " + rad + (border != BorderMode.CLAMP ? " " + border : "");
+            }
+        };
+    }
+
+    /**
+     * Builds a summed-area table of the gray levels of rows rowStart to rowEnd, which
+     * may lie past the edges of the image, and of rad columns either side of it.
+     * Entry (x, y) of the table holds the sum of every gray level above and left of
+     * it, so that the sum over any rectangle takes four lookups. Sums are allowed to
+     * overflow: the sum over a rectangle is still right, as it fits in an int. Only
+     * the rows and columns past the edges go through the border mode; the image's
+     * own columns are summed straight out of the array.
+     *
+     * @param rowStart, the row of the image the table starts at
+     * @param rowEnd, one past the row of the image the table ends at
+     * @param data, the pixels of the image to be processed
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param table, the table to be filled, stride entries per row
+     * @param stride, the number of entries per row of the table, width + 2 * rad + 1
+     * @param rad, the number of columns summed beyond either side of the image
+     * @param border, how pixels past the edges are read
+     */
+    private static void sumGray(int rowStart, int rowEnd, int[] data, int width, int height,
+                                int[] table, int stride, int rad, BorderMode border) {
+        Arrays.fill(table, 0, stride, 0);
+        for (int row = rowStart; row < rowEnd; row++) {
+            int y = border.index(row, height);
+            int above = (row - rowStart) * stride;
+            int at = above + stride;
+            if (y < 0) {
+                // a row of black adds nothing
+                System.arraycopy(table, above, table, at, stride);
+                continue;
+            }
+            int index = y * width;
+            table[at] = 0;
+            int sum = 0;
+            for (int x = 1; x <= rad; x++) {
+                sum += grayAt(x - rad - 1, index, data, width, border);
+                table[at + x] = table[above + x] + sum;
+            }
+            for (int col = 0; col < width; col++) {
+                sum += Grayscaler.grayscale(data[index + col]);
+                table[at + rad + 1 + col] = table[above + rad + 1 + col] + sum;
+            }
+            for (int x = width + rad + 1; x < stride; x++) {
+                sum += grayAt(x - rad - 1, index, data, width, border);
+                table[at + x] = table[above + x] + sum;
+            }
+        }
+    }
+
+    /**
+     * Gets the gray level of a pixel of a row, which may lie past its ends.
+     *
+     * @param col, the column of the pixel
+     * @param index, the index of the row's first pixel
+     * @param data, the pixels of the image to be processed
+     * @param width, the width of the image
+     * @param border, how pixels past the edges are read
+     * @return the gray level of the pixel read, 0-255
+     */
+    private static int grayAt(int col, int index, int[] data, int width, BorderMode border) {
+        int x = border.index(col, width);
+        return Grayscaler.grayscale(x < 0 ? BorderMode.CONSTANT_RGB : data[index + x]);
+    }
+
+    /**
+     * Half-tones a whole frame the original way, for the scalar backend: on one
+     * thread, with the background and every dot filled through Graphics2D. Cells are
+     * averaged from a summed-area table, which gives the same sums the original code
+     * added up pixel by pixel.
+     *
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param rad, radius of the half-tone circles
+     * @param bg, the background color
+     * @param fg, the foreground half-tone color
+     * @param border, how pixels under the cells that hang over the edges are read
+     */
+    private static void drawDots(int[] data, int[] newData, int width, int height, int rad, Color bg, Color fg,
+                                 BorderMode border) {
+        int stride = width + 2 * rad + 1;
+        int[] table = BufferPool.acquire(stride * (height + 2 * rad + 1));
+        // a new image starts out transparent, which a translucent background blends with
+        Arrays.fill(newData, 0, width * height, 0);
+        Graphics2D out = Pixels.wrap(newData, width, height).createGraphics();
+        try {
+            sumGray(-rad, height + rad, data, width, height, table, stride, rad, border);
+            out.setColor(bg);
+            out.fill(new Rectangle2D.Double(0, 0, width, height));
+            out.setColor(fg);
+            for (int col = 0; col < width; col += rad) {
+                for (int row = 0; row < height; row += rad) {
+                    double size = rad * average(col, table, stride, row, rad);
+                    out.fill(new Ellipse2D.Double(col, row, size, size));
+                }
             }
+        } finally {
+            out.dispose();
+            BufferPool.release(table);
         }
-        return newImage;
     }
 
     /**
@@ -73,42 +254,70 @@ public class Halftoner {
      *
      * @param col, the x coordinate of the pixel in the image
      * @param row, the y coordinate of the pixel in the image
-     * @param image, the image to be processed
-     * @param out, the graphics to be output
+     * @param table, summed-area table of the gray levels around the pixel
+     * @param stride, the number of entries per row of the table
+     * @param tableRow, the row of the table rad rows below the top of the square
+     * @param out, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param fg, the ARGB value of the half-tone circles
      * @param rad, the maximum radius of the half-tone circle
      */
-    private static void processPixel(int col, int row, BufferedImage image, Graphics2D out, int rad) {
-        double value = 0;
-        for (int x = -1 * rad; x <= rad; x++) {
-            for (int y = -1 * rad; y <= rad; y++) {
-                value += (get(col + x, row + y, image)) & 0xff;
-            }
-        }
-        value /= (4 * rad * rad * 255);
-        out.fill(new Ellipse2D.Double(col, row, rad * value, rad * value));
+    private static void processPixel(int col, int row, int[] table, int stride, int tableRow, int[] out,
+                                     int width, int height, int fg, int rad) {
+        fillCircle(col, row, rad * average(col, table, stride, tableRow, rad), out, width, height, fg);
     }
 
     /**
-     * Gets the 24-bit RGB value of the specified pixel. Accounts for edge
-     * case pixels by extending their values to adjacent non-existent pixels.
+     * Averages the gray levels of the square of side 2r + 1 around a pixel, as a
+     * fraction of the square of side 2r in white, as the original code did.
      *
      * @param col, the x coordinate of the pixel in the image
-     * @param row, the y coordinate of the pixel in the image
-     * @return 24-bit RGB
+     * @param table, summed-area table of the gray levels around the pixel
+     * @param stride, the number of entries per row of the table
+     * @param tableRow, the row of the table rad rows below the top of the square
+     * @param rad, the maximum radius of the half-tone circle
+     * @return the average
      */
-    private static int get(int col, int row, BufferedImage image) {
-        if (col < 0) {
-            col = 0;
-        }
-        if (row < 0) {
-            row = 0;
-        }
-        if (col >= image.getWidth()) {
-            col = image.getWidth() - 1;
-        }
-        if (row >= image.getHeight()) {
-            row = image.getHeight() - 1;
+    private static double average(int col, int[] table, int stride, int tableRow, int rad) {
+        // the square spans columns col - rad to col + rad, which lie rad columns
+        // further right in the table, and the table's rows tableRow to tableRow + 2r
+        int top = tableRow * stride + col;
+        int bottom = (tableRow + 2 * rad + 1) * stride + col;
+        int side = 2 * rad + 1;
+        double value = table[bottom + side] - table[bottom] - table[top + side] + table[top];
+        value /= (4 * rad * rad * 255);
+        return value;
+    }
+
+    /**
+     * Fills the circle inscribed in the square of side size with its top left corner
+     * at (x, y). A pixel is filled when its top left corner lies inside the circle,
+     * which is where Graphics2D samples shapes filled without anti-aliasing, so dots
+     * come out the size Ellipse2D dots did.
+     *
+     * @param x, the left edge of the square
+     * @param y, the top edge of the square
+     * @param size, the diameter of the circle
+     * @param out, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param fg, the ARGB value of the circle
+     */
+    private static void fillCircle(double x, double y, double size, int[] out, int width, int height, int fg) {
+        double r = size / 2;
+        double centerX = x + r;
+        double centerY = y + r;
+        int rowStart = Math.max(0, (int) Math.floor(centerY - r) + 1);
+        int rowEnd = Math.min(height, (int) Math.ceil(centerY + r));
+        for (int row = rowStart; row < rowEnd; row++) {
+            double dy = row - centerY;
+            double half = Math.sqrt(r * r - dy * dy);
+            int colStart = Math.max(0, (int) Math.floor(centerX - half) + 1);
+            int colEnd = Math.min(width, (int) Math.ceil(centerX + half));
+            if (colStart < colEnd) {
+                Arrays.fill(out, row * width + colStart, row * width + colEnd, fg);
+            }
         }
-        return image.getRGB(col, row);
     }
 }
@@ -0,0 +1,108 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+/**
+ * Frame source reading a directory of images (.png, .jpg, .jpeg, .bmp or .gif) in
+ * file name order.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class ImageSequenceSource implements FrameSource {
+    private final List<Path> files;
+    private final boolean loop;
+    private final FramePacer pacer;
+    private final Dimension size;
+    private int index;
+
+    /**
+     * Constructor for ImageSequenceSource.
+     *
+     * @param directory, the directory of images
+     * @param fps, frames per second, or 0 to read frames as fast as possible
+     * @param loop, whether to start over after the last image
+     * @throws IOException if the directory or its first image cannot be read
+     */
+    public ImageSequenceSource(Path directory, double fps, boolean loop) throws IOException {
+        files = listImages(directory);
+        if (files.isEmpty()) {
+            throw new IOException("no images in " + directory);
+        }
+        this.loop = loop;
+        pacer = new FramePacer(fps);
+        BufferedImage first = readImage(files.get(0));
+        size = new Dimension(first.getWidth(), first.getHeight());
+    }
+
+    @Override
+    public BufferedImage read() throws IOException {
+        if (index == files.size()) {
+            if (!loop) {
+                return null;
+            }
+            index = 0;
+        }
+        pacer.await();
+        return readImage(files.get(index++));
+    }
+
+    @Override
+    public Dimension getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Lists the images in a directory in file name order.
+     *
+     * @param directory, the directory to be listed
+     * @return the image files
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<Path> listImages(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.filter(Files::isRegularFile)
+                    .filter(ImageSequenceSource::isImage)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Checks whether a file has one of the image extensions ImageIO reads.
+     *
+     * @param file, the file to be checked
+     * @return true if the file looks like an image
+     */
+    public static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg")
+                || name.endsWith(".bmp") || name.endsWith(".gif");
+    }
+
+    /**
+     * Reads an image file.
+     *
+     * @param file, the image file
+     * @return the image
+     * @throws IOException if the file cannot be read or is not an image
+     */
+    private static BufferedImage readImage(Path file) throws IOException {
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            throw new IOException("not a readable image: " + file);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,324 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Applies a FilterChain to a stream of frames of a mostly static scene, reprocessing
+ * only what changed. Each frame is compared with the last one tile by tile, and a
+ * tile is dirty when any channel of any of its pixels moved by more than the
+ * threshold. Only the output tiles within the chain's halo of a dirty tile are
+ * reprocessed, in rectangles cropped from the frame on the chain's grid and processed
+ * as frames of their own, and every other output tile is reused from the last frame.
+ *
+ * Dirty tiles are copied into a reference frame, while clean ones keep the pixels
+ * they were last processed from, so changes below the threshold cannot creep up
+ * unnoticed over many frames, and every output is exactly what the chain gives for
+ * the reference frame as a whole. Instances keep the last frame and are not
+ * thread-safe.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class IncrementalProcessor {
+    // share of tiles to be reprocessed above which the whole frame is processed instead
+    private static final double MAX_PARTIAL = 0.5;
+
+    private final int tileSize;
+    private final int threshold;
+
+    private FilterChain chain;  // chain the cached output came from, null if none
+    private int width;
+    private int height;
+    private int[] reference;    // the pixels the cached output was processed from
+    private int[] output;       // the last output
+    private boolean[] dirty;    // tiles whose reference pixels changed this frame
+    private boolean[] stale;    // tiles whose output must be reprocessed this frame
+    private volatile double skippedFraction;
+
+    /**
+     * Constructor for IncrementalProcessor.
+     *
+     * @param tileSize, the side of the square tiles frames are compared in
+     * @param threshold, the largest change in a channel, 0-255, that leaves a pixel
+     *                   unchanged
+     */
+    public IncrementalProcessor(int tileSize, int threshold) {
+        if (tileSize < 1 || threshold < 0 || threshold > 255) {
+            throw new IllegalArgumentException("bad tile size or threshold: " + tileSize + ", " + threshold);
+        }
+        this.tileSize = tileSize;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the side of the tiles frames are compared in
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return the largest change in a channel that leaves a pixel unchanged
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the share of output tiles reused rather than reprocessed for the last
+     * frame, 0-1
+     */
+    public double getSkippedFraction() {
+        return skippedFraction;
+    }
+
+    /**
+     * Forgets the last frame, so that the next one is processed whole.
+     */
+    public void reset() {
+        chain = null;
+    }
+
+    /**
+     * Applies a chain to an image, writing the result into an existing image. Images
+     * that are not int-backed are read into a pooled array first.
+     *
+     * @param chain, the filters to be applied
+     * @param image, the image to be processed
+     * @param dest, an int-backed image of the same size, such as one from
+     *              BufferPool.acquireImage(), which must not be the image itself
+     * @return dest
+     */
+    public BufferedImage processImage(FilterChain chain, BufferedImage image, BufferedImage dest) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (dest.getWidth() != width || dest.getHeight() != height || !Pixels.isCompact(dest) || dest == image) {
+            throw new IllegalArgumentException("destination must be a separate int-backed image of the same size");
+        }
+        boolean compact = Pixels.isCompact(image);
+        int[] data = compact ? Pixels.data(image) : BufferPool.acquire(width * height);
+        try {
+            if (!compact) {
+                image.getRGB(0, 0, width, height, data, 0, width);
+            }
+            process(chain, data, Pixels.data(dest), width, height);
+        } finally {
+            if (!compact) {
+                BufferPool.release(data);
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * Applies a chain to a frame's pixels, reprocessing only the tiles that changed
+     * since the last frame. Frames of a new size, and frames after the chain changes,
+     * are processed whole, as are frames where too much changed for it to pay off.
+     *
+     * @param chain, the filters to be applied
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     */
+    public void process(FilterChain chain, int[] data, int[] newData, int width, int height) {
+        int grid = chain.grid();
+        if (chain != this.chain || width != this.width || height != this.height || grid == 0) {
+            resize(width, height);
+            System.arraycopy(data, 0, reference, 0, width * height);
+            chain.process(reference, output, width, height);
+            System.arraycopy(output, 0, newData, 0, width * height);
+            this.chain = grid == 0 ? null : chain;
+            skippedFraction = 0;
+            return;
+        }
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        TileScheduler.forEachBand(rows, 1, (rowStart, rowEnd) -> {
+            for (int row = rowStart; row < rowEnd; row++) {
+                for (int col = 0; col < columns; col++) {
+                    dirty[row * columns + col] = update(data, col * tileSize, row * tileSize);
+                }
+            }
+        });
+        int reach = (chain.halo() + tileSize - 1) / tileSize;
+        int count = markStale(columns, rows, reach);
+        if (count > MAX_PARTIAL * columns * rows) {
+            chain.process(reference, output, width, height);
+            skippedFraction = 0;
+        } else {
+            processStale(chain, columns, rows, grid);
+            skippedFraction = 1 - (double) count / (columns * rows);
+        }
+        System.arraycopy(output, 0, newData, 0, width * height);
+    }
+
+    /**
+     * Makes sure the reference frame, output and tile flags fit frames of a size.
+     *
+     * @param width, the width of the frames
+     * @param height, the height of the frames
+     */
+    private void resize(int width, int height) {
+        if (reference == null || width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            reference = new int[width * height];
+            output = new int[width * height];
+            int tiles = ((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize);
+            dirty = new boolean[tiles];
+            stale = new boolean[tiles];
+        }
+    }
+
+    /**
+     * Compares one tile of a frame with the reference frame, and copies it into the
+     * reference frame if it changed.
+     *
+     * @param data, the pixels of the frame
+     * @param x, the left edge of the tile
+     * @param y, the top edge of the tile
+     * @return true if any channel of any pixel moved by more than the threshold
+     */
+    private boolean update(int[] data, int x, int y) {
+        int tileWidth = Math.min(tileSize, width - x);
+        int tileEnd = Math.min(height, y + tileSize);
+        boolean changed = false;
+        for (int row = y; row < tileEnd && !changed; row++) {
+            int offset = row * width + x;
+            for (int i = offset; i < offset + tileWidth; i++) {
+                int a = data[i];
+                int b = reference[i];
+                if (a != b && (Math.abs(((a >> 16) & 0xff) - ((b >> 16) & 0xff)) > threshold
+                        || Math.abs(((a >> 8) & 0xff) - ((b >> 8) & 0xff)) > threshold
+                        || Math.abs((a & 0xff) - (b & 0xff)) > threshold)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        if (changed) {
+            for (int row = y; row < tileEnd; row++) {
+                System.arraycopy(data, row * width + x, reference, row * width + x, tileWidth);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Marks every tile within reach of a dirty tile as stale.
+     *
+     * @param columns, the number of columns of tiles
+     * @param rows, the number of rows of tiles
+     * @param reach, the chain's halo, in tiles
+     * @return the number of stale tiles
+     */
+    private int markStale(int columns, int rows, int reach) {
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                boolean near = false;
+                int rowEnd = Math.min(rows - 1, row + reach);
+                int colEnd = Math.min(columns - 1, col + reach);
+                for (int y = Math.max(0, row - reach); y <= rowEnd && !near; y++) {
+                    for (int x = Math.max(0, col - reach); x <= colEnd; x++) {
+                        if (dirty[y * columns + x]) {
+                            near = true;
+                            break;
+                        }
+                    }
+                }
+                stale[row * columns + col] = near;
+                if (near) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reprocesses the stale tiles into the output, gathering them greedily into
+     * rectangles: each runs as far right as the stale tiles go, then down for as long
+     * as the whole run below is stale too.
+     *
+     * @param chain, the filters to be applied
+     * @param columns, the number of columns of tiles
+     * @param rows, the number of rows of tiles
+     * @param grid, the spacing of the grid crops must start on
+     */
+    private void processStale(FilterChain chain, int columns, int rows, int grid) {
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                if (!stale[row * columns + col]) {
+                    continue;
+                }
+                int colEnd = col + 1;
+                while (colEnd < columns && stale[row * columns + colEnd]) {
+                    colEnd++;
+                }
+                int rowEnd = row + 1;
+                while (rowEnd < rows && allStale(rowEnd * columns + col, rowEnd * columns + colEnd)) {
+                    rowEnd++;
+                }
+                for (int y = row; y < rowEnd; y++) {
+                    for (int x = col; x < colEnd; x++) {
+                        stale[y * columns + x] = false;
+                    }
+                }
+                processRect(chain, col * tileSize, row * tileSize, Math.min(width, colEnd * tileSize),
+                        Math.min(height, rowEnd * tileSize), grid);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a run of tiles is stale.
+     *
+     * @param start, the index of the run's first tile
+     * @param end, one past the index of its last tile
+     * @return true if every tile of the run is stale
+     */
+    private boolean allStale(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!stale[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reprocesses a rectangle of the output. A crop of the reference frame reaching
+     * the chain's halo past the rectangle, with its top left corner moved back onto
+     * the grid, is processed as a frame of its own; its edges are either the frame's
+     * or far enough out that the rectangle never sees past them.
+     *
+     * @param chain, the filters to be applied
+     * @param left, the left edge of the rectangle
+     * @param top, the top edge of the rectangle
+     * @param right, one past the right edge of the rectangle
+     * @param bottom, one past the bottom edge of the rectangle
+     * @param grid, the spacing of the grid crops must start on
+     */
+    private void processRect(FilterChain chain, int left, int top, int right, int bottom, int grid) {
+        int halo = chain.halo();
+        int cropLeft = Math.max(0, left - halo) / grid * grid;
+        int cropTop = Math.max(0, top - halo) / grid * grid;
+        int cropWidth = Math.min(width, right + halo) - cropLeft;
+        int cropHeight = Math.min(height, bottom + halo) - cropTop;
+        int[] crop = BufferPool.acquire(cropWidth * cropHeight);
+        int[] processed = BufferPool.acquire(cropWidth * cropHeight);
+        try {
+            for (int row = 0; row < cropHeight; row++) {
+                System.arraycopy(reference, (cropTop + row) * width + cropLeft, crop, row * cropWidth, cropWidth);
+            }
+            chain.process(crop, processed, cropWidth, cropHeight);
+            for (int row = top; row < bottom; row++) {
+                System.arraycopy(processed, (row - cropTop) * cropWidth + left - cropLeft,
+                        output, row * width + left, right - left);
+            }
+        } finally {
+            BufferPool.release(crop);
+            BufferPool.release(processed);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads kernels from text files. A kernel file holds n lines of n numbers separated
+ * by whitespace or commas, laid out the same way as the kernel customizer's grid:
+ * number j of line i becomes kernel[i][j]. Blank lines and lines starting with # are
+ * ignored.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class KernelFile {
+    /**
+     * Reads a kernel file.
+     *
+     * @param file, the kernel file
+     * @return the kernel
+     * @throws IOException if the file cannot be read or does not hold an nxn kernel
+     */
+    public static float[][] load(Path file) throws IOException {
+        List<float[]> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] entries = line.split("[\\s,]+");
+            float[] values = new float[entries.length];
+            try {
+                for (int j = 0; j < entries.length; j++) {
+                    values[j] = Float.parseFloat(entries[j]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ": bad kernel entry in \"" + line + "\"", e);
+            }
+            lines.add(values);
+        }
+        int n = lines.size();
+        if (n == 0) {
+            throw new IOException(file + ": empty kernel");
+        }
+        float[][] kernel = new float[n][];
+        for (int i = 0; i < n; i++) {
+            if (lines.get(i).length != n) {
+                throw new IOException(file + ": kernel is not " + n + "x" + n);
+            }
+            kernel[i] = lines.get(i);
+        }
+        return kernel;
+    }
+}
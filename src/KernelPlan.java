@@ -0,0 +1,382 @@
+import java.util.Arrays;
+
+/**
+ * Everything about applying one kernel that can be worked out before any frame
+ * arrives, worked out once. A plan picks the fastest way to apply its kernel: box and
+ * separable kernels through the SeparableConvolver, kernels that quantize closely
+ * enough in fixed point through the FixedPointConvolver, and the rest through the
+ * PlanarConvolver. Large kernels of the last two kinds may go through the
+ * FftConvolver for whole frames instead, which depends on the frame size, so that is
+ * decided once per size and remembered, along with the kernel's spectrum. With the
+ * kip.backend system property set to scalar, every kernel goes through the scalar
+ * code instead, which gives exactly what the original code did.
+ *
+ * For the planar and fixed-point paths, the kernel is also flattened into a list of
+ * taps with the zero taps left out, and folded: a tap whose mirror image through the
+ * kernel's center has the same weight, or the opposite weight, is paired with it, so
+ * the two pixels are added or subtracted first and multiplied once. Blurs and most
+ * other smoothing kernels are symmetric that way, and edge detectors antisymmetric.
+ *
+ * Plans are immutable, and can be shared between filters and threads.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class KernelPlan {
+    // backend of the direct path, picked once at startup
+    static final boolean PLANAR = !"scalar".equalsIgnoreCase(System.getProperty("kip.backend"));
+    // whether kernels that quantize well enough are applied in fixed point
+    private static final boolean FIXED_POINT = PLANAR
+            && !"false".equalsIgnoreCase(System.getProperty("kip.fixedPoint"));
+
+    private final float[][] kernel;
+    private final Strategy strategy;
+    private final float[][] factors;    // the column and row of a separable kernel
+    private final FixedPointConvolver fixed;
+    private final Taps taps;
+    private volatile FftChoice fftChoice; // whether frames of the last size asked about go through the FFT
+    private volatile double pixelCost;  // measured cost of a pixel on the direct path, in nanoseconds, or 0
+    private volatile FftConvolver.Spectrum spectrum; // for frames of the last size put through the FFT
+
+    /**
+     * Constructor for KernelPlan. The kernel is copied, so later changes to the array
+     * do not affect the plan.
+     *
+     * @param kernel, the nxn kernel to be applied
+     */
+    public KernelPlan(float[][] kernel) {
+        this.kernel = new float[kernel.length][];
+        for (int i = 0; i < kernel.length; i++) {
+            if (kernel[i].length != kernel.length) {
+                throw new IllegalArgumentException("kernel must be square");
+            }
+            this.kernel[i] = kernel[i].clone();
+        }
+        boolean box = PLANAR && kernel.length >= 3 && SeparableConvolver.isBox(this.kernel);
+        factors = PLANAR && kernel.length >= 3 && !box ? SeparableConvolver.factor(this.kernel) : null;
+        taps = box || factors != null || !PLANAR ? null : Taps.of(this.kernel);
+        fixed = taps != null && FIXED_POINT ? FixedPointConvolver.quantize(taps) : null;
+        if (box) {
+            strategy = Strategy.BOX;
+        } else if (factors != null) {
+            strategy = Strategy.SEPARABLE;
+        } else if (fixed != null) {
+            strategy = Strategy.FIXED_POINT;
+        } else {
+            strategy = PLANAR ? Strategy.PLANAR : Strategy.SCALAR;
+        }
+    }
+
+    /**
+     * @return the side of the kernel
+     */
+    public int size() {
+        return kernel.length;
+    }
+
+    /**
+     * @return the way the kernel is applied to bands of rows
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the number of multiplies per pixel and channel on the planar and
+     * fixed-point paths, after leaving out zero taps and folding mirrored ones
+     */
+    public int getTapCount() {
+        return taps == null ? kernel.length * kernel.length : taps.count;
+    }
+
+    /**
+     * Plans the kernel for frames shrunk by a whole factor, such as the levels of a
+     * Pyramid, so it reaches as far across the picture as it does at full resolution.
+     * Each entry is moved to its offset divided by the factor, and shared between the
+     * two nearest entries of the smaller kernel on each axis when that falls between
+     * them, which keeps the sum of the weights and the symmetry of the kernel. Box
+     * kernels stay boxes of the nearest odd size, with the same sum, so they keep their
+     * fast path. Kernels never shrink below 3x3, and those of 3x3 and smaller are kept
+     * as they are, so edge detectors and sharpening still see their neighbours.
+     *
+     * @param factor, how many times smaller the frames are
+     * @return new KernelPlan, or this one for a factor of 1 or a kernel of 3x3 or less
+     */
+    public KernelPlan scaled(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("scale factor must be positive: " + factor);
+        }
+        int n = kernel.length;
+        if (factor == 1 || n <= 3) {
+            return this;
+        }
+        int half = n / 2;
+        int smallHalf = (half + factor - 1) / factor;
+        float[][] small = new float[2 * smallHalf + 1][2 * smallHalf + 1];
+        if (strategy == Strategy.BOX) {
+            float weight = kernel[0][0] * n * n / (small.length * small.length);
+            for (float[] column : small) {
+                Arrays.fill(column, weight);
+            }
+            return new KernelPlan(small);
+        }
+        for (int i = 0; i < n; i++) {
+            float x = (float) (i - half) / factor + smallHalf;
+            int i0 = (int) Math.floor(x);
+            float tx = x - i0;
+            for (int j = 0; j < n; j++) {
+                float y = (float) (j - half) / factor + smallHalf;
+                int j0 = (int) Math.floor(y);
+                float ty = y - j0;
+                float weight = kernel[i][j];
+                small[i0][j0] += weight * (1 - tx) * (1 - ty);
+                if (tx > 0) {
+                    small[i0 + 1][j0] += weight * tx * (1 - ty);
+                }
+                if (ty > 0) {
+                    small[i0][j0 + 1] += weight * (1 - tx) * ty;
+                }
+                if (tx > 0 && ty > 0) {
+                    small[i0 + 1][j0 + 1] += weight * tx * ty;
+                }
+            }
+        }
+        return new KernelPlan(small);
+    }
+
+    /**
+     * Checks whether whole frames of a size go through the FftConvolver. The direct
+     * path is timed the way this plan applies the kernel, in fixed point or planar
+     * floats, with its taps folded and zeros left out, the first time it is needed.
+     * The scalar backend never uses the FftConvolver.
+     *
+     * @param width, the width of the frame
+     * @param height, the height of the frame
+     * @return true if the FftConvolver is faster for frames of that size
+     */
+    public boolean useFft(int width, int height) {
+        if (strategy == Strategy.BOX || strategy == Strategy.SEPARABLE || strategy == Strategy.SCALAR
+                || kernel.length < 5) {
+            return false;
+        }
+        FftChoice choice = fftChoice;
+        if (choice == null || choice.width != width || choice.height != height) {
+            choice = new FftChoice(width, height, FftConvolver.isFaster(width, height, kernel.length,
+                    this::pixelCost));
+            fftChoice = choice;
+        }
+        return choice.faster;
+    }
+
+    /**
+     * Times the direct path on a band of a small synthetic frame, once the JIT has
+     * compiled it, on the calling thread alone, as the FftConvolver times itself.
+     * Threads deciding at once wait for one of them to time it.
+     *
+     * @return the direct path's cost per pixel, in nanoseconds
+     */
+    private synchronized double pixelCost() {
+        double cost = pixelCost;
+        if (cost != 0) {
+            return cost;
+        }
+        int width = 128;
+        int height = 32 + kernel.length;
+        int[] data = new int[width * height];
+        int[] newData = new int[width * height];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i * 0x9e3779b9;
+        }
+        // rows clear of the top and bottom, as nearly all of a frame's rows are
+        int rowStart = kernel.length / 2;
+        int rowEnd = height - kernel.length / 2;
+        long best = FftConvolver.time(() -> applyRows(rowStart, rowEnd, data, newData, width, height,
+                BorderMode.CLAMP));
+        cost = Math.max(Double.MIN_VALUE, (double) best / ((long) width * (rowEnd - rowStart)));
+        pixelCost = cost;
+        return cost;
+    }
+
+    /**
+     * Applies the kernel to a whole frame through the FftConvolver. The kernel's
+     * spectrum is made the first time and kept until frames of another size come.
+     *
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param border, how pixels past the edges are read
+     */
+    void convolveFft(int[] data, int[] newData, int width, int height, BorderMode border) {
+        FftConvolver.Spectrum fitting = spectrum;
+        if (fitting == null || !fitting.fits(width, height)) {
+            fitting = FftConvolver.spectrum(kernel, width, height);
+            spectrum = fitting;
+        }
+        FftConvolver.convolve(data, newData, width, height, fitting, border);
+    }
+
+    /**
+     * Applies the kernel to a band of rows the way the plan picked. Rows up to n/2
+     * above and below the band are read as well, but only the band itself is written.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param border, how pixels past the edges are read
+     */
+    public void applyRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                          BorderMode border) {
+        switch (strategy) {
+            case BOX -> SeparableConvolver.boxRows(rowStart, rowEnd, data, newData, width, height, kernel.length,
+                    kernel[0][0], border);
+            case SEPARABLE -> SeparableConvolver.separableRows(rowStart, rowEnd, data, newData, width, height,
+                    factors[0], factors[1], border);
+            case FIXED_POINT -> fixed.processRows(rowStart, rowEnd, data, newData, width, height, border);
+            case PLANAR -> PlanarConvolver.processRows(rowStart, rowEnd, data, newData, width, height, taps, border);
+            case SCALAR -> Kernelizer.processRows(rowStart, rowEnd, data, newData, width, height, kernel, border);
+        }
+    }
+
+    /**
+     * @return the kernel's size, strategy and taps
+     */
+    @Override
+    public String toString() {
+        String name = kernel.length + "x" + kernel.length + " " + strategy.name().toLowerCase().replace('_', ' ');
+        if (fixed != null) {
+            name += " (" + fixed + ")";
+        }
+        return taps == null ? name : name + ", " + taps.count + " taps";
+    }
+
+    /**
+     * Enumerator for the ways a kernel can be applied to bands of rows.
+     */
+    public enum Strategy {
+        BOX, SEPARABLE, FIXED_POINT, PLANAR, SCALAR
+    }
+
+    /**
+     * Whether frames of one size go through the FftConvolver.
+     */
+    private static class FftChoice {
+        final int width;
+        final int height;
+        final boolean faster;
+
+        /**
+         * Constructor for FftChoice.
+         *
+         * @param width, the width of the frames
+         * @param height, the height of the frames
+         * @param faster, whether the FftConvolver is faster for them
+         */
+        FftChoice(int width, int height, boolean faster) {
+            this.width = width;
+            this.height = height;
+            this.faster = faster;
+        }
+    }
+
+    /**
+     * A kernel flattened into its nonzero taps, with mirrored pairs folded. Tap k reads
+     * the pixel column[k] - n/2 columns and row[k] - n/2 rows away, and, if sign[k] is
+     * 1 or -1, adds or subtracts the pixel at pairColumn[k], pairRow[k] before weighing
+     * the result by weight[k].
+     */
+    static class Taps {
+        final int n;
+        final int count;
+        final int[] column;
+        final int[] row;
+        final int[] pairColumn;
+        final int[] pairRow;
+        final int[] sign;           // 0 for a tap of its own, 1 or -1 for a pair
+        final float[] weight;
+
+        /**
+         * Constructor for Taps.
+         *
+         * @param n, the side of the kernel
+         * @param count, the number of taps
+         */
+        private Taps(int n, int count) {
+            this.n = n;
+            this.count = count;
+            column = new int[count];
+            row = new int[count];
+            pairColumn = new int[count];
+            pairRow = new int[count];
+            sign = new int[count];
+            weight = new float[count];
+        }
+
+        /**
+         * Flattens a kernel, in the order its entries are laid out.
+         *
+         * @param kernel, the nxn kernel
+         * @return new Taps
+         */
+        static Taps of(float[][] kernel) {
+            int n = kernel.length;
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (isTap(kernel, i, j)) {
+                        count++;
+                    }
+                }
+            }
+            Taps taps = new Taps(n, count);
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (!isTap(kernel, i, j)) {
+                        continue;
+                    }
+                    float mirrored = kernel[n - 1 - i][n - 1 - j];
+                    taps.column[k] = i;
+                    taps.row[k] = j;
+                    taps.weight[k] = kernel[i][j];
+                    if ((i != n - 1 - i || j != n - 1 - j) && pairs(kernel[i][j], mirrored)) {
+                        taps.pairColumn[k] = n - 1 - i;
+                        taps.pairRow[k] = n - 1 - j;
+                        taps.sign[k] = kernel[i][j] == mirrored ? 1 : -1;
+                    }
+                    k++;
+                }
+            }
+            return taps;
+        }
+
+        /**
+         * Checks whether an entry of a kernel starts a tap: it is not zero, and not the
+         * second entry of a mirrored pair, which is folded into the first.
+         *
+         * @param kernel, the nxn kernel
+         * @param i, the column of the entry
+         * @param j, the row of the entry
+         * @return true if the entry starts a tap
+         */
+        private static boolean isTap(float[][] kernel, int i, int j) {
+            int n = kernel.length;
+            boolean second = (n - 1 - i) * n + (n - 1 - j) < i * n + j;
+            return kernel[i][j] != 0 && !(second && pairs(kernel[i][j], kernel[n - 1 - i][n - 1 - j]));
+        }
+
+        /**
+         * Checks whether two taps mirroring each other can be folded into one.
+         *
+         * @param weight, the weight of one
+         * @param mirrored, the weight of the other
+         * @return true if the weights are equal or opposite
+         */
+        private static boolean pairs(float weight, float mirrored) {
+            return weight == mirrored || weight == -mirrored;
+        }
+    }
+}
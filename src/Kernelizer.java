@@ -1,4 +1,3 @@
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 
 /**
@@ -11,98 +10,260 @@ import java.awt.image.BufferedImage;
 public class Kernelizer {
     /**
      * Iterates through each of the image's pixels and calls processPixel() on each.
+     * Rows are split into bands processed in parallel by the TileScheduler. Box and
+     * separable kernels of size 3 and up are handed to the SeparableConvolver instead,
+     * other kernels large enough for it to pay off to the FftConvolver, and the rest
+     * to the FixedPointConvolver when the kernel quantizes closely enough.
      *
      * @param image, the image to be processed
      * @param kernel, the kernel to be applied to the image.
      * @return new processed BufferedImage
      */
     public static BufferedImage processImage(BufferedImage image, float[][] kernel) {
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        for (int col = 0; col < image.getWidth(); col++) {
-            for (int row = 0; row < image.getHeight(); row++) {
-                processPixel(col, row, image, newImage, kernel);
+        return FilterChain.of(filter(kernel)).processImage(image);
+    }
+
+    /**
+     * Applies a kernel to an image, writing into an existing image instead of
+     * allocating one.
+     *
+     * @param image, the image to be processed
+     * @param kernel, the kernel to be applied to the image
+     * @param dest, an int-backed image of the same size, such as one from
+     *              BufferPool.acquireImage()
+     * @return dest
+     */
+    public static BufferedImage processImage(BufferedImage image, float[][] kernel, BufferedImage dest) {
+        return FilterChain.of(filter(kernel)).processImage(image, dest);
+    }
+
+    /**
+     * Gets a kernel as a stage of a FilterChain, extending the edges of frames past
+     * them. The kernel is copied, so later changes to the array do not affect the
+     * filter.
+     *
+     * @param kernel, the kernel to be applied
+     * @return the convolution filter
+     */
+    public static Filter filter(float[][] kernel) {
+        return filter(kernel, BorderMode.CLAMP);
+    }
+
+    /**
+     * Gets a kernel as a stage of a FilterChain. The kernel is copied, so later
+     * changes to the array do not affect the filter.
+     *
+     * @param kernel, the kernel to be applied
+     * @param border, how pixels past the edges of frames are read
+     * @return the convolution filter
+     */
+    public static Filter filter(float[][] kernel, BorderMode border) {
+        return new KernelFilter(new KernelPlan(kernel), border);
+    }
+
+    /**
+     * Gets a planned kernel as a stage of a FilterChain, so a kernel planned once can
+     * be used by many filters, such as one per border mode, without being analyzed
+     * again.
+     *
+     * @param plan, the plan of the kernel to be applied
+     * @param border, how pixels past the edges of frames are read
+     * @return the convolution filter
+     */
+    public static Filter filter(KernelPlan plan, BorderMode border) {
+        return new KernelFilter(plan, border);
+    }
+
+    /**
+     * @return the name of the direct path's backend: vector, planar or scalar
+     */
+    public static String getBackend() {
+        if (!KernelPlan.PLANAR) {
+            return "scalar";
+        }
+        return PlanarConvolver.LANES == PlanarConvolver.LOOPS ? "planar" : "vector";
+    }
+
+    /**
+     * Calls processPixel() on each pixel of a band of rows. Rows up to n/2 above and
+     * below the band are read as well, but only the band itself is written. Pixels
+     * whose every tap lands inside the image are the interior, and go through
+     * interiorPixel(), which reads them without any edge checks; only the rest go
+     * through the border mode.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param kernel, the kernel to be applied to the image
+     * @param border, how pixels past the edges are read
+     */
+    static void processRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                            float[][] kernel, BorderMode border) {
+        int half = kernel.length / 2;
+        // first and one past the last row and column of the interior
+        int top = half;
+        int bottom = height - (kernel.length - 1 - half);
+        int left = half;
+        int right = Math.max(left, width - (kernel.length - 1 - half));
+        for (int row = rowStart; row < rowEnd; row++) {
+            if (row < top || row >= bottom) {
+                for (int col = 0; col < width; col++) {
+                    newData[row * width + col] = processPixel(col, row, data, width, height, kernel, border);
+                }
+                continue;
+            }
+            for (int col = 0; col < Math.min(left, width); col++) {
+                newData[row * width + col] = processPixel(col, row, data, width, height, kernel, border);
+            }
+            for (int col = left; col < right; col++) {
+                newData[row * width + col] = interiorPixel((row - half) * width + col - half, data, width, kernel);
+            }
+            for (int col = right; col < width; col++) {
+                newData[row * width + col] = processPixel(col, row, data, width, height, kernel, border);
             }
         }
-        return newImage;
     }
 
     /**
-     * Collects an nxn array of surrounding pixels to the specified pixel, applies
-     * dot product with kernel, then sets the corresponding pixel in the output
-     * image equal to that dot product.
+     * Applies the dot product of the kernel with the nxn area of pixels surrounding
+     * the specified pixel. Kernel entry [i][j] weighs the pixel i - n/2 columns and
+     * j - n/2 rows away.
      *
      * @param col, the x coordinate of the pixel in the image
      * @param row, the y coordinate of the pixel in the image
-     * @param image, the image to be processed
-     * @param newImage, the image to be output
+     * @param data, the pixels of the image to be processed
+     * @param width, the width of the image
+     * @param height, the height of the image
      * @param kernel, the kernel to be applied to the pixel
+     * @param border, how pixels past the edges are read
+     * @return the ARGB value of the corresponding output pixel
      */
-    private static void processPixel(int col, int row, BufferedImage image, BufferedImage newImage, float[][] kernel) {
-        // collects nxn sample of surrounding pixels
-        int[][] sample = new int[kernel.length][kernel.length];
+    private static int processPixel(int col, int row, int[] data, int width, int height, float[][] kernel,
+                                    BorderMode border) {
+        int half = kernel.length / 2;
 
-        for (int x = -1 * kernel.length / 2; x <= kernel.length / 2; x++) {
-            for (int y = -1 * kernel.length / 2; y <= kernel.length / 2; y++) {
-                sample[x + kernel.length / 2][y + kernel.length / 2] = get(col + x, row + y, image);
+        double red = 0;
+        double green = 0;
+        double blue = 0;
+
+        // applies dot product
+        for (int i = 0; i < kernel.length; i++) {
+            float[] column = kernel[i];
+            for (int j = 0; j < column.length; j++) {
+                int sample = Pixels.get(col + i - half, row + j - half, data, width, height, border);
+                red += ((sample >> 16) & 0xff) * column[j];
+                green += ((sample >> 8) & 0xff) * column[j];
+                blue += ((sample) & 0xff) * column[j];
             }
         }
 
+        return clampPack(red, green, blue);
+    }
+
+    /**
+     * Applies the dot product of the kernel with an nxn area of pixels lying wholly
+     * inside the image, the same way processPixel() does but reading the pixels
+     * straight out of the array.
+     *
+     * @param corner, the index of the area's top left pixel
+     * @param data, the pixels of the image to be processed
+     * @param width, the width of the image
+     * @param kernel, the kernel to be applied to the pixel
+     * @return the ARGB value of the corresponding output pixel
+     */
+    private static int interiorPixel(int corner, int[] data, int width, float[][] kernel) {
         double red = 0;
         double green = 0;
         double blue = 0;
 
-        // applies dot product
-        for (int i = 0; i < kernel.length; i ++) {
-            for (int j = 0; j < kernel.length; j++) {
-                red += ((sample[i][j] >> 16) & 0xff) * kernel[i][j];
-                green += ((sample[i][j] >> 8) & 0xff) * kernel[i][j];
-                blue += ((sample[i][j]) & 0xff) * kernel[i][j];
+        for (int i = 0; i < kernel.length; i++) {
+            float[] column = kernel[i];
+            int index = corner + i;
+            for (int j = 0; j < column.length; j++) {
+                int sample = data[index];
+                red += ((sample >> 16) & 0xff) * column[j];
+                green += ((sample >> 8) & 0xff) * column[j];
+                blue += ((sample) & 0xff) * column[j];
+                index += width;
             }
         }
 
-        // accounts for overflow of the byte value
-        red = Math.min(Math.max((int)(red), 0), 255);
-        green = Math.min(Math.max((int)(green), 0), 255);
-        blue = Math.min(Math.max((int)(blue), 0), 255);
-
-        // sets corresponding pixel to the dot product
-        int val = new Color((int)red, (int)green, (int)blue).getRGB();
-        set(col, row, newImage, val);
+        return clampPack(red, green, blue);
     }
 
     /**
-     * Gets the 24-bit RGB value of the specified pixel. Accounts for edge
-     * case pixels by extending their values to adjacent non-existent pixels.
+     * Truncates three channel sums, accounting for overflow of the byte value, and
+     * packs them into an opaque ARGB value.
      *
-     * @param col, the x coordinate of the pixel in the image
-     * @param row, the y coordinate of the pixel in the image
-     * @return 24-bit RGB
+     * @param red, the red sum
+     * @param green, the green sum
+     * @param blue, the blue sum
+     * @return opaque 32-bit ARGB
+     */
+    private static int clampPack(double red, double green, double blue) {
+        int r = Math.min(Math.max((int) (red), 0), 255);
+        int g = Math.min(Math.max((int) (green), 0), 255);
+        int b = Math.min(Math.max((int) (blue), 0), 255);
+
+        return Pixels.pack(r, g, b);
+    }
+
+    /**
+     * Convolution with one kernel, applied the way its KernelPlan picked. Whether the
+     * FftConvolver pays off depends on the frame size, so it is only used when a whole
+     * frame is asked for. Wrapping around reads rows from the far edge of the frame,
+     * which a band's window does not hold, so kernels that wrap always work on whole
+     * frames, still split into bands inside apply().
      */
-    private static int get(int col, int row, BufferedImage image) {
-        if (col < 0) {
-            col = 0;
+    private static class KernelFilter implements Filter {
+        private final KernelPlan plan;
+        private final BorderMode border;
+
+        /**
+         * Constructor for KernelFilter.
+         *
+         * @param plan, the plan of the kernel to be applied
+         * @param border, how pixels past the edges are read
+         */
+        KernelFilter(KernelPlan plan, BorderMode border) {
+            this.plan = plan;
+            this.border = border;
         }
-        if (row < 0) {
-            row = 0;
+
+        @Override
+        public Kind kind(int width, int height) {
+            return border == BorderMode.WRAP || plan.useFft(width, height) ? Kind.FRAME : Kind.LOCAL;
         }
-        if (col >= image.getWidth()) {
-            col = image.getWidth() - 1;
+
+        @Override
+        public int halo() {
+            return plan.size() / 2;
         }
-        if (row >= image.getHeight()) {
-            row = image.getHeight() - 1;
+
+        @Override
+        public int grid() {
+            return border == BorderMode.WRAP ? 0 : 1;
         }
-        return image.getRGB(col, row);
-    }
 
-    /**
-     * Sets the specified pixel's value to the given value.
-     *
-     * @param col, the x coordinate of the pixel in the image
-     * @param row, the y coordinate of the pixel in the image
-     * @param newImage, the image to be output
-     * @param val, the new RGB value of the specified pixel
-     */
-    private static void set(int col, int row, BufferedImage newImage, int val) {
-        newImage.setRGB(col, row, val);
+        @Override
+        public void apply(int[] data, int[] newData, int width, int height, int rowStart, int rowEnd) {
+            boolean frame = rowStart == 0 && rowEnd == height;
+            if (frame && plan.useFft(width, height)) {
+                plan.convolveFft(data, newData, width, height, border);
+            } else if (frame && border == BorderMode.WRAP) {
+                TileScheduler.forEachBand(height, 1, (bandStart, bandEnd) ->
+                        plan.applyRows(bandStart, bandEnd, data, newData, width, height, border));
+            } else {
+                plan.applyRows(rowStart, rowEnd, data, newData, width, height, border);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "kernel " + plan + (border != BorderMode.CLAMP ? " " + border : "");
+        }
     }
 }
@@ -0,0 +1,171 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, laid out the way HdrHistogram lays out its
+ * buckets: values below 256 get a bucket each, and every power of two above that is
+ * split into 128 equal buckets, so any value is known to within 1/128 of itself
+ * however large it is. Recording is a single atomic increment and never allocates,
+ * so any number of threads can record into one histogram at full frame rate.
+ *
+ * Counts only ever grow. A copy taken with snapshot() can be subtracted from a later
+ * one with minus() to get the histogram of the values recorded in between.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class LatencyHistogram {
+    // values below this get a bucket each
+    private static final int LINEAR = 256;
+    // buckets each power of two above LINEAR is split into
+    private static final int SUB_BUCKETS = 128;
+    // largest value told apart from larger ones, about 18 minutes
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Constructor for LatencyHistogram, creating an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Constructor for LatencyHistogram, copying bucket counts.
+     *
+     * @param counts, the count of every bucket
+     * @param total, the number of values
+     * @param sum, the sum of the values
+     */
+    private LatencyHistogram(long[] counts, long total, long sum) {
+        this.counts = new AtomicLongArray(counts);
+        this.total.set(total);
+        this.sum.set(sum);
+    }
+
+    /**
+     * Records a duration. Negative durations count as 0, and durations of more than
+     * about 18 minutes as 18 minutes.
+     *
+     * @param nanos, the duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @return the mean duration, in nanoseconds, or 0 if none were recorded
+     */
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Gets a percentile of the durations, as the highest value of the bucket it falls
+     * in, as HdrHistogram does.
+     *
+     * @param percentile, the percentile, 0-100
+     * @return the duration, in nanoseconds, or 0 if none were recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highest(i);
+            }
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    /**
+     * @return the longest duration, as the highest value of its bucket, in
+     * nanoseconds, or 0 if none were recorded
+     */
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highest(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Copies the histogram as it stands. Values recorded while the copy is taken may
+     * or may not be in it.
+     *
+     * @return new LatencyHistogram with the same counts
+     */
+    public LatencyHistogram snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new LatencyHistogram(copy, total.get(), sum.get());
+    }
+
+    /**
+     * Subtracts an earlier snapshot of the same histogram.
+     *
+     * @param earlier, a snapshot taken before this one
+     * @return new LatencyHistogram of the values recorded in between
+     */
+    public LatencyHistogram minus(LatencyHistogram earlier) {
+        long[] difference = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            difference[i] = counts.get(i) - earlier.counts.get(i);
+        }
+        return new LatencyHistogram(difference, total.get() - earlier.total.get(), sum.get() - earlier.sum.get());
+    }
+
+    /**
+     * Gets the bucket a value falls in.
+     *
+     * @param value, the value, 0 to MAX_VALUE
+     * @return the index of its bucket
+     */
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        // shifts the value down into LINEAR / 2 to LINEAR
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 7;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the highest value that falls in a bucket.
+     *
+     * @param index, the index of the bucket
+     * @return the value
+     */
+    private static long highest(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An image kept in the first frame of a raw frame file (see RawFrameFile) rather than
+ * on the heap, for images too big to fit there, such as scanned posters or stitched
+ * panoramas. Rectangles of pixels are read and written through memory mappings of
+ * just the rows they cover, straight between the page cache and the caller's arrays,
+ * so the whole image is never mapped or copied at once. Reads and writes of
+ * different rectangles can run on many threads at the same time.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class MappedRaster implements AutoCloseable {
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final int width;
+    private final int height;
+
+    /**
+     * Constructor for MappedRaster.
+     *
+     * @param channel, the open raw frame file
+     * @param mode, how its rows are mapped
+     * @param width, the width of the image
+     * @param height, the height of the image
+     */
+    private MappedRaster(FileChannel channel, FileChannel.MapMode mode, int width, int height) {
+        this.channel = channel;
+        this.mode = mode;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Opens the first frame of a raw frame file to be read.
+     *
+     * @param file, the raw frame file
+     * @return new MappedRaster
+     * @throws IOException if the file cannot be opened, is not a raw frame file, or
+     * holds no whole frame
+     */
+    public static MappedRaster open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            int[] size = RawFrameFile.readHeader(channel);
+            if (channel.size() < RawFrameFile.HEADER_BYTES + RawFrameFile.frameBytes(size[0], size[1])) {
+                throw new IOException("raw frame file holds no whole frame: " + file);
+            }
+            return new MappedRaster(channel, FileChannel.MapMode.READ_ONLY, size[0], size[1]);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a raw frame file holding one frame of a size, or empties it if it exists,
+     * to be written. Its pixels start out as 0 until written.
+     *
+     * @param file, the raw frame file
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @return new MappedRaster
+     * @throws IOException if the file cannot be created
+     */
+    public static MappedRaster create(Path file, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("bad raster size " + width + "x" + height);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            RawFrameFile.writeHeader(channel, width, height);
+            // extends the file to its full length, leaving a sparse file where supported
+            long end = RawFrameFile.HEADER_BYTES + RawFrameFile.frameBytes(width, height);
+            channel.write(ByteBuffer.allocate(1), end - 1);
+            return new MappedRaster(channel, FileChannel.MapMode.READ_WRITE, width, height);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the width of the image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Reads a rectangle of pixels into an array, row by row.
+     *
+     * @param x, the left edge of the rectangle
+     * @param y, the top edge of the rectangle
+     * @param w, the width of the rectangle
+     * @param h, the height of the rectangle
+     * @param data, the array read into, w * h pixels from its start
+     * @throws IOException if the rows cannot be mapped
+     */
+    public void read(int x, int y, int w, int h, int[] data) throws IOException {
+        IntBuffer rows = map(FileChannel.MapMode.READ_ONLY, x, y, w, h);
+        for (int row = 0; row < h; row++) {
+            rows.position(row * width + x);
+            rows.get(data, row * w, w);
+        }
+    }
+
+    /**
+     * Writes a rectangle of pixels from an array, row by row.
+     *
+     * @param x, the left edge of the rectangle
+     * @param y, the top edge of the rectangle
+     * @param w, the width of the rectangle
+     * @param h, the height of the rectangle
+     * @param data, the array written from, w * h pixels from its start
+     * @throws IOException if the rows cannot be mapped
+     */
+    public void write(int x, int y, int w, int h, int[] data) throws IOException {
+        if (mode != FileChannel.MapMode.READ_WRITE) {
+            throw new IllegalStateException("raster is read-only");
+        }
+        IntBuffer rows = map(FileChannel.MapMode.READ_WRITE, x, y, w, h);
+        for (int row = 0; row < h; row++) {
+            rows.position(row * width + x);
+            rows.put(data, row * w, w);
+        }
+    }
+
+    /**
+     * Closes the file. Pixels written are left to the operating system to flush.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Maps the rows a rectangle covers.
+     *
+     * @param mode, how the rows are mapped
+     * @param x, the left edge of the rectangle
+     * @param y, the top edge of the rectangle
+     * @param w, the width of the rectangle
+     * @param h, the height of the rectangle
+     * @return the rows, as ints from the first column of row y
+     * @throws IOException if the rows cannot be mapped
+     */
+    private IntBuffer map(FileChannel.MapMode mode, int x, int y, int w, int h) throws IOException {
+        if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height) {
+            throw new IndexOutOfBoundsException("rectangle " + w + "x" + h + " at " + x + "," + y
+                    + " outside " + width + "x" + height);
+        }
+        long bytes = RawFrameFile.frameBytes(width, h);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many rows to map at once: " + h);
+        }
+        return channel.map(mode, RawFrameFile.HEADER_BYTES + RawFrameFile.frameBytes(width, y), bytes)
+                .asIntBuffer();
+    }
+}
@@ -0,0 +1,629 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Serves a stream of frames over HTTP to any number of viewers at once, one request
+ * per connection:
+ * <ul>
+ *     <li>/stream.mjpg, a multipart MJPEG stream, which browsers show as video</li>
+ *     <li>/snapshot.jpg, the latest frame as a single JPEG</li>
+ *     <li>/, a page showing the stream</li>
+ * </ul>
+ * Frames are handed over without being copied, like to FrameRecorder, and an encoder
+ * thread of its own encodes each to JPEG once, into one buffer holding the whole
+ * multipart part, which every viewer then writes out as it is. publish() never
+ * blocks: frames arriving while the encoder is busy are skipped. Each viewer has a
+ * thread of its own, virtual where the JVM has them, that always sends the newest
+ * frame, so a slow viewer skips frames instead of holding anything up, and a viewer
+ * that stops reading altogether is dropped once a write has been stuck for the client
+ * timeout. The server owns its sockets rather than using the JDK's HttpServer, whose
+ * exchanges flush what is left of the response as they close, and so block on the
+ * very viewer being dropped: closing a channel never waits, and fails the stuck write.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class MjpegServer implements AutoCloseable {
+    private static final String BOUNDARY = "kipframe";
+    private static final String PAGE = "<!DOCTYPE html><html><head><title>It's you!</title></head>"
+            + "<body style=\"margin:0;background:#000\"><img src=\"/stream.mjpg\" style=\"width:100%\"></body></html>";
+    private static final byte[] STREAM_HEAD = ("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n"
+            + "Cache-Control: no-cache, no-store\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    // limits on the request line and headers, which are read and ignored
+    private static final int MAX_LINE = 8192;
+    private static final int MAX_HEADERS = 100;
+
+    private final ServerSocketChannel listener;
+    private final Thread acceptor;
+    private final float quality;
+    private final int maxClients;
+    private final long timeoutMillis;
+    private final long timeoutNanos;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final FrameRing<BufferedImage> pending = new FrameRing<>(1, FrameRing.Policy.DROP_OLDEST);
+    private final Thread encoder;
+    private final FrameMetrics metrics = new FrameMetrics("encode");
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong clientsDropped = new AtomicLong();
+
+    // the latest encoded frame, which viewers wait on; guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition encoded = lock.newCondition();
+    private Encoded latest;
+    private boolean closed;
+
+    /**
+     * Constructor for MjpegServer, starting the server and the encoder thread.
+     *
+     * @param address, the address to listen on, such as new InetSocketAddress(8080)
+     * @param quality, the JPEG quality, 0-1
+     * @param maxClients, the number of viewers served at once, past which more are
+     *                    turned away
+     * @param timeoutMillis, how long a write to a viewer can be stuck before the viewer
+     *                       is dropped
+     * @throws IOException if the server cannot listen on the address
+     */
+    public MjpegServer(InetSocketAddress address, float quality, int maxClients, long timeoutMillis)
+            throws IOException {
+        if (!(quality >= 0 && quality <= 1) || maxClients < 1 || timeoutMillis < 1) {
+            throw new IllegalArgumentException("bad quality, client limit or timeout: " + quality + ", "
+                    + maxClients + ", " + timeoutMillis);
+        }
+        this.quality = quality;
+        this.maxClients = maxClients;
+        this.timeoutMillis = timeoutMillis;
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        listener = ServerSocketChannel.open();
+        try {
+            listener.bind(address);
+        } catch (IOException e) {
+            listener.close();
+            throw e;
+        }
+        acceptor = new Thread(this::acceptLoop, "mjpeg-server");
+        acceptor.setDaemon(true);
+        encoder = new Thread(this::encodeLoop, "mjpeg-encoder");
+        encoder.setDaemon(true);
+        encoder.start();
+        acceptor.start();
+    }
+
+    /**
+     * Starts a server on a port, with the JPEG quality from the kip.httpQuality system
+     * property, 0.8 by default, the client limit from kip.httpClients, 64 by default,
+     * and the client timeout from kip.httpTimeout, in milliseconds, 2000 by default.
+     *
+     * @param port, the port to listen on, or 0 for any free one
+     * @return new MjpegServer
+     * @throws IOException if the server cannot listen on the port
+     */
+    public static MjpegServer create(int port) throws IOException {
+        return new MjpegServer(new InetSocketAddress(port),
+                Float.parseFloat(System.getProperty("kip.httpQuality", "0.8")),
+                Integer.getInteger("kip.httpClients", 64), Long.getLong("kip.httpTimeout", 2000));
+    }
+
+    /**
+     * Hands a frame to the encoder. The frame is held in the pool until it has been
+     * encoded, so the caller may release it as usual as soon as this returns. Never
+     * blocks; if the encoder is still busy with the last frame, the older one is
+     * skipped.
+     *
+     * @param frame, the frame to be served
+     */
+    public void publish(BufferedImage frame) {
+        BufferPool.retainImage(frame);
+        try {
+            BufferedImage dropped = pending.put(frame);
+            if (dropped != null) {
+                BufferPool.releaseImage(dropped);
+                metrics.dropped(1);
+            }
+        } catch (InterruptedException e) {
+            // drop-oldest rings never wait
+            BufferPool.releaseImage(frame);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return listener.socket().getLocalPort();
+    }
+
+    /**
+     * @return the number of viewers of the stream
+     */
+    public int getClients() {
+        return clients.size();
+    }
+
+    /**
+     * @return the encoder's timings and the number of frames encoded and skipped
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of frames the viewers have skipped between them, because they
+     * were still sending an older one
+     */
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    /**
+     * @return the number of viewers dropped for not reading
+     */
+    public long getClientsDropped() {
+        return clientsDropped.get();
+    }
+
+    /**
+     * @return a one-line summary of the viewers and frames served
+     */
+    @Override
+    public String toString() {
+        FrameMetrics.Snapshot snapshot = metrics.snapshot();
+        return String.format("%d viewers, %d frames encoded (p50 %.1f ms), %d skipped by the encoder, "
+                        + "%d by viewers, %d viewers dropped", getClients(), snapshot.getFramesOut(),
+                snapshot.getLatency("encode").getPercentile(50) / 1e6, snapshot.getFramesDropped(),
+                getFramesSkipped(), getClientsDropped());
+    }
+
+    /**
+     * Stops the server, ending every stream, and the encoder thread. Viewers stuck in
+     * a write are cut off rather than waited for.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            encoded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        disconnect(listener);
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SocketChannel connection : connections) {
+            disconnect(connection);
+        }
+        pending.close();
+        try {
+            encoder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        BufferedImage frame;
+        while ((frame = pending.poll()) != null) {
+            BufferPool.releaseImage(frame);
+        }
+    }
+
+    /**
+     * Acceptor: hands every connection to a thread of its own until the server closes,
+     * as streams last as long as the viewer.
+     */
+    private void acceptLoop() {
+        while (listener.isOpen()) {
+            SocketChannel connection;
+            try {
+                connection = listener.accept();
+            } catch (IOException e) {
+                // closing, or the connection failed before it was accepted
+                continue;
+            }
+            connections.add(connection);
+            StreamServer.newThread("mjpeg-client", () -> serve(connection)).start();
+        }
+    }
+
+    /**
+     * Encoder stage: encodes frames until the server closes, and drops viewers whose
+     * writes have been stuck too long.
+     */
+    private void encodeLoop() {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        Buffer jpeg = new Buffer();
+        BufferedImage rgb = null;
+        long sequence = 0;
+        try {
+            for (BufferedImage frame = pending.take(); frame != null; frame = pending.take()) {
+                long start = System.nanoTime();
+                long allocated = FrameMetrics.threadAllocatedBytes();
+                int width = frame.getWidth();
+                int height = frame.getHeight();
+                try {
+                    // JPEG has no alpha, so frames go through an RGB image of the same pixels
+                    if (rgb == null || rgb.getWidth() != width || rgb.getHeight() != height) {
+                        rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                    }
+                    if (Pixels.isCompact(frame)) {
+                        System.arraycopy(Pixels.data(frame), 0, Pixels.data(rgb), 0, width * height);
+                    } else {
+                        frame.getRGB(0, 0, width, height, Pixels.data(rgb), 0, width);
+                    }
+                } finally {
+                    BufferPool.releaseImage(frame);
+                }
+                metrics.frameIn();
+                jpeg.reset();
+                try (ImageOutputStream out = ImageIO.createImageOutputStream(jpeg)) {
+                    writer.setOutput(out);
+                    writer.write(null, new IIOImage(rgb, null, null), param);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                Encoded next = new Encoded(sequence++, jpeg);
+                long nanos = metrics.record("encode", start, allocated);
+                metrics.recordFrame(next.sequence, width, height, nanos);
+                metrics.frameOut();
+                lock.lock();
+                try {
+                    latest = next;
+                    encoded.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                dropStuckClients();
+            }
+        } catch (InterruptedException e) {
+            // closing
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Drops every viewer whose write has been stuck for longer than the timeout, by
+     * closing its connection, which fails the write without waiting on the viewer.
+     */
+    private void dropStuckClients() {
+        long now = System.nanoTime();
+        for (Client client : clients) {
+            long since = client.writingSince;
+            if (since != 0 && now - since > timeoutNanos && clients.remove(client)) {
+                clientsDropped.incrementAndGet();
+                disconnect(client.connection);
+            }
+        }
+    }
+
+    /**
+     * Waits for a frame newer than the one a viewer was last sent.
+     *
+     * @param last, the frame last sent, or null
+     * @return the newest frame, or null if the server is closing
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private Encoded awaitNewer(Encoded last) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed && (latest == null || latest == last)) {
+                encoded.await();
+            }
+            return closed ? null : latest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a request and serves it, then closes the connection.
+     *
+     * @param connection, the connection
+     */
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            // a client that never finishes its request is dropped like a stuck viewer
+            connection.socket().setSoTimeout((int) Math.min(timeoutMillis, Integer.MAX_VALUE));
+            String[] request = readRequest(connection.socket().getInputStream());
+            if (request == null) {
+                respond(connection, "400 Bad Request", null, null, 0, 0);
+            } else if (!request[0].equals("GET")) {
+                respond(connection, "405 Method Not Allowed", null, null, 0, 0);
+            } else {
+                switch (request[1]) {
+                    case "/stream.mjpg" -> stream(connection);
+                    case "/snapshot.jpg" -> snapshot(connection);
+                    case "/" -> {
+                        byte[] page = PAGE.getBytes(StandardCharsets.UTF_8);
+                        respond(connection, "200 OK", "text/html; charset=utf-8", page, 0, page.length);
+                    }
+                    default -> respond(connection, "404 Not Found", null, null, 0, 0);
+                }
+            }
+        } catch (IOException e) {
+            // the viewer went away, or was dropped
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Serves the MJPEG stream to one viewer until it goes away, is dropped or the
+     * server closes.
+     *
+     * @param connection, the viewer's connection
+     * @throws IOException if a write fails
+     */
+    private void stream(SocketChannel connection) throws IOException {
+        if (clients.size() >= maxClients) {
+            respond(connection, "503 Service Unavailable", null, null, 0, 0);
+            return;
+        }
+        Client client = new Client(connection);
+        clients.add(client);
+        try {
+            write(connection, ByteBuffer.wrap(STREAM_HEAD));
+            Encoded last = null;
+            for (Encoded next = awaitNewer(null); next != null; next = awaitNewer(last)) {
+                if (last != null) {
+                    framesSkipped.addAndGet(next.sequence - last.sequence - 1);
+                }
+                client.writingSince = System.nanoTime();
+                write(connection, ByteBuffer.wrap(next.part));
+                client.writingSince = 0;
+                last = next;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Serves the latest frame as a single JPEG.
+     *
+     * @param connection, the connection
+     * @throws IOException if the response cannot be written
+     */
+    private void snapshot(SocketChannel connection) throws IOException {
+        Encoded frame;
+        lock.lock();
+        try {
+            frame = latest;
+        } finally {
+            lock.unlock();
+        }
+        if (frame == null) {
+            respond(connection, "503 Service Unavailable", null, null, 0, 0);
+        } else {
+            respond(connection, "200 OK", "image/jpeg", frame.part, frame.jpegOffset, frame.jpegLength);
+        }
+    }
+
+    /**
+     * Reads the request line and headers of a request.
+     *
+     * @param in, the connection's input
+     * @return the method and the path asked for, without any query, or null if the
+     *         request is malformed or too long
+     * @throws IOException if the request cannot be read
+     */
+    private static String[] readRequest(InputStream in) throws IOException {
+        String line = readLine(in);
+        String[] parts = line == null ? null : line.split(" ");
+        if (parts == null || parts.length != 3 || !parts[2].startsWith("HTTP/")) {
+            return null;
+        }
+        for (int headers = 0; !line.isEmpty(); headers++) {
+            line = readLine(in);
+            if (line == null || headers == MAX_HEADERS) {
+                return null;
+            }
+        }
+        int query = parts[1].indexOf('?');
+        return new String[]{parts[0], query < 0 ? parts[1] : parts[1].substring(0, query)};
+    }
+
+    /**
+     * @param in, the connection's input
+     * @return the next line, without its line break, or null if the input ends first
+     *         or the line is longer than MAX_LINE
+     * @throws IOException if the line cannot be read
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0 || line.length() == MAX_LINE) {
+                return null;
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Writes a whole response, after which the connection is closed.
+     *
+     * @param connection, the connection
+     * @param status, the status code and reason, such as "200 OK"
+     * @param type, the content type, or null if there is no body
+     * @param body, the array holding the body, or null if there is none
+     * @param offset, where the body starts in the array
+     * @param length, the length of the body
+     * @throws IOException if the response cannot be written
+     */
+    private static void respond(SocketChannel connection, String status, String type, byte[] body, int offset,
+                                int length) throws IOException {
+        String head = "HTTP/1.1 " + status + "\r\n"
+                + (type != null ? "Content-Type: " + type + "\r\n" : "")
+                + "Cache-Control: no-cache, no-store\r\nContent-Length: " + length + "\r\nConnection: close\r\n\r\n";
+        ByteBuffer headBuffer = ByteBuffer.wrap(head.getBytes(StandardCharsets.US_ASCII));
+        if (body == null) {
+            write(connection, headBuffer);
+        } else {
+            write(connection, headBuffer, ByteBuffer.wrap(body, offset, length));
+        }
+    }
+
+    /**
+     * Writes buffers out in full, blocking until they are.
+     *
+     * @param connection, the connection
+     * @param buffers, the bytes to be written
+     * @throws IOException if the write fails, or the connection is closed meanwhile
+     */
+    private static void write(SocketChannel connection, ByteBuffer... buffers) throws IOException {
+        long left = 0;
+        for (ByteBuffer buffer : buffers) {
+            left += buffer.remaining();
+        }
+        while (left > 0) {
+            left -= connection.write(buffers);
+        }
+    }
+
+    /**
+     * Closes a channel, failing any read or write blocked on it. Never waits on the
+     * other end.
+     *
+     * @param channel, the channel
+     */
+    private static void disconnect(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing more to be done with it
+        }
+    }
+
+    /**
+     * One encoded frame, as a whole multipart part shared by every viewer.
+     */
+    private static class Encoded {
+        final long sequence;
+        final byte[] part;
+        final int jpegOffset;
+        final int jpegLength;
+
+        /**
+         * Constructor for Encoded, copying the JPEG into a part of its own.
+         *
+         * @param sequence, the number of the frame, counting frames encoded
+         * @param jpeg, the encoded frame
+         */
+        Encoded(long sequence, Buffer jpeg) {
+            this.sequence = sequence;
+            byte[] header = String.format(Locale.ROOT, "--%s\r\nContent-Type: image/jpeg\r\nContent-Length: %d\r\n\r\n",
+                    BOUNDARY, jpeg.size()).getBytes(StandardCharsets.US_ASCII);
+            part = new byte[header.length + jpeg.size() + 2];
+            System.arraycopy(header, 0, part, 0, header.length);
+            System.arraycopy(jpeg.array(), 0, part, header.length, jpeg.size());
+            part[part.length - 2] = '\r';
+            part[part.length - 1] = '\n';
+            jpegOffset = header.length;
+            jpegLength = jpeg.size();
+        }
+    }
+
+    /**
+     * One viewer of the stream.
+     */
+    private static class Client {
+        final SocketChannel connection;
+        volatile long writingSince;     // when the write in progress started, 0 if none
+
+        /**
+         * Constructor for Client.
+         *
+         * @param connection, the viewer's connection
+         */
+        Client(SocketChannel connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * Byte stream reused for every frame, whose bytes can be read without a copy.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        /**
+         * @return the array holding the bytes written, of which size() are used
+         */
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * Program's main method, serves a frame source through filters until stopped.
+     *
+     * @param args, command-line args: [--port N] followed by an optional
+     *              frame source specification (see FrameSource.open()),
+     *              synthetic:640x480@30 by default, and an optional filter
+     *              specification (see FilterSpec), grayscale by default
+     * @throws Exception if the source cannot be opened or the server started
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        String source = "synthetic:640x480@30";
+        String filter = "grayscale";
+        int positional = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (positional++ == 0) {
+                source = args[i];
+            } else {
+                filter = args[i];
+            }
+        }
+        FilterChain filters = FilterSpec.parse(filter);
+        try (FrameSource frames = FrameSource.open(source);
+             MjpegServer server = create(port)) {
+            System.out.println("serving http://localhost:" + server.getPort() + "/");
+            long report = System.nanoTime();
+            for (BufferedImage frame = frames.read(); frame != null; frame = frames.read()) {
+                BufferedImage dest = BufferPool.acquireImage(frame.getWidth(), frame.getHeight());
+                filters.processImage(frame, dest);
+                server.publish(dest);
+                BufferPool.releaseImage(dest);
+                if (System.nanoTime() - report >= 1_000_000_000) {
+                    report = System.nanoTime();
+                    System.out.println(server);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Class filled with static utility methods giving the image processors direct access
+ * to the int[] arrays backing their images, so that pixels can be read and written
+ * without going through BufferedImage.getRGB() and setRGB().
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class Pixels {
+    /**
+     * Returns an image backed by a single packed int[] of width * height pixels. Images
+     * that are already TYPE_INT_RGB or TYPE_INT_ARGB are returned as they are, anything
+     * else (such as the TYPE_3BYTE_BGR frames handed out by the webcam) is copied once
+     * into a new image using the same values getRGB() would have returned.
+     *
+     * @param image, the image to be normalized
+     * @return an int-backed image with the same pixels
+     */
+    public static BufferedImage toIntRaster(BufferedImage image) {
+        if (isCompact(image)) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage newImage = new BufferedImage(width, height, type);
+        image.getRGB(0, 0, width, height, data(newImage), 0, width);
+        return newImage;
+    }
+
+    /**
+     * Creates a new output image of the type every processor writes to.
+     *
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @return new TYPE_INT_ARGB image
+     */
+    public static BufferedImage createImage(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Wraps an existing pixel array in a TYPE_INT_ARGB image without copying it, so
+     * that it can be drawn on or handed out as an image.
+     *
+     * @param data, the pixels, row by row
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @return new image backed by data
+     */
+    public static BufferedImage wrap(int[] data, int width, int height) {
+        DirectColorModel model = (DirectColorModel) ColorModel.getRGBdefault();
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(data, width * height), width, height,
+                width, model.getMasks(), null);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    /**
+     * Gets the array backing an image returned by toIntRaster() or createImage(). The
+     * pixel at (col, row) lives at index row * width + col.
+     *
+     * @param image, an int-backed image
+     * @return the image's pixel array
+     */
+    public static int[] data(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Gets the 24-bit RGB value of the specified pixel. Accounts for edge
+     * case pixels by extending their values to adjacent non-existent pixels.
+     *
+     * @param col, the x coordinate of the pixel in the image
+     * @param row, the y coordinate of the pixel in the image
+     * @param data, the image's pixel array
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @return 24-bit RGB
+     */
+    public static int get(int col, int row, int[] data, int width, int height) {
+        if (col < 0) {
+            col = 0;
+        }
+        if (row < 0) {
+            row = 0;
+        }
+        if (col >= width) {
+            col = width - 1;
+        }
+        if (row >= height) {
+            row = height - 1;
+        }
+        return data[row * width + col];
+    }
+
+    /**
+     * Gets the ARGB value of the specified pixel, reading pixels past the edges of the
+     * image the way the border mode says to.
+     *
+     * @param col, the x coordinate of the pixel in the image
+     * @param row, the y coordinate of the pixel in the image
+     * @param data, the image's pixel array
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param border, how pixels past the edges are read
+     * @return 32-bit ARGB
+     */
+    public static int get(int col, int row, int[] data, int width, int height, BorderMode border) {
+        int x = border.index(col, width);
+        int y = border.index(row, height);
+        return x < 0 || y < 0 ? BorderMode.CONSTANT_RGB : data[y * width + x];
+    }
+
+    /**
+     * Copies one row of an image into an array, padded with left and right columns
+     * read the way the border mode says to. The image's own columns are copied in one
+     * block, and only the padding goes through the border mode.
+     *
+     * @param row, the row to be copied, which may lie past the top or bottom edge
+     * @param data, the image's pixel array
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param left, the number of columns padded on the left
+     * @param right, the number of columns padded on the right
+     * @param border, how pixels past the edges are read
+     * @param padded, the array written, at least left + width + right long
+     */
+    public static void padRow(int row, int[] data, int width, int height, int left, int right,
+                              BorderMode border, int[] padded) {
+        int y = border.index(row, height);
+        if (y < 0) {
+            Arrays.fill(padded, 0, left + width + right, BorderMode.CONSTANT_RGB);
+            return;
+        }
+        int offset = y * width;
+        System.arraycopy(data, offset, padded, left, width);
+        for (int x = 0; x < left; x++) {
+            int col = border.index(x - left, width);
+            padded[x] = col < 0 ? BorderMode.CONSTANT_RGB : data[offset + col];
+        }
+        for (int x = 0; x < right; x++) {
+            int col = border.index(width + x, width);
+            padded[left + width + x] = col < 0 ? BorderMode.CONSTANT_RGB : data[offset + col];
+        }
+    }
+
+    /**
+     * Shrinks an image by a whole factor of at most 16, each output pixel averaging
+     * the square of input pixels it covers. Pixels of the last partial rows and
+     * columns are left out.
+     *
+     * @param data, the pixels of the image to be shrunk
+     * @param width, the width of the image
+     * @param factor, how many times smaller the output is
+     * @param small, the pixels of the output, width / factor by height / factor
+     * @param smallWidth, the width of the output
+     * @param smallHeight, the height of the output
+     */
+    public static void downscale(int[] data, int width, int factor, int[] small, int smallWidth, int smallHeight) {
+        int area = factor * factor;
+        TileScheduler.forEachBand(smallHeight, 1, (rowStart, rowEnd) -> {
+            for (int y = rowStart; y < rowEnd; y++) {
+                for (int x = 0; x < smallWidth; x++) {
+                    // red and blue are summed together, in separate 16-bit halves
+                    int redBlue = 0;
+                    int green = 0;
+                    for (int j = 0; j < factor; j++) {
+                        int offset = (y * factor + j) * width + x * factor;
+                        for (int i = 0; i < factor; i++) {
+                            int rgb = data[offset + i];
+                            redBlue += rgb & 0xff00ff;
+                            green += rgb & 0xff00;
+                        }
+                    }
+                    small[y * smallWidth + x] = pack((redBlue >>> 16) / area, (green >> 8) / area,
+                            (redBlue & 0xffff) / area);
+                }
+            }
+        });
+    }
+
+    /**
+     * Shrinks an image to half its size, each output pixel the rounded average of the
+     * 2x2 square of input pixels it covers, the same as downscale() by 2 but rounding
+     * rather than truncating. All four pixels' red and blue are summed at once in one
+     * int, and the averages are taken with shifts instead of divisions. The last row
+     * and column of images of odd size are left out.
+     *
+     * @param data, the pixels of the image to be shrunk
+     * @param width, the width of the image
+     * @param half, the pixels of the output, width / 2 by height / 2
+     * @param halfWidth, the width of the output
+     * @param halfHeight, the height of the output
+     */
+    public static void halve(int[] data, int width, int[] half, int halfWidth, int halfHeight) {
+        TileScheduler.forEachBand(halfHeight, 1, (rowStart, rowEnd) -> {
+            for (int y = rowStart; y < rowEnd; y++) {
+                int top = 2 * y * width;
+                int bottom = top + width;
+                int out = y * halfWidth;
+                for (int x = 0; x < halfWidth; x++) {
+                    int a = data[top + 2 * x];
+                    int b = data[top + 2 * x + 1];
+                    int c = data[bottom + 2 * x];
+                    int d = data[bottom + 2 * x + 1];
+                    // each sum fits in its 16-bit half, with room for the rounding
+                    int redBlue = (a & 0xff00ff) + (b & 0xff00ff) + (c & 0xff00ff) + (d & 0xff00ff) + 0x20002;
+                    int green = (a & 0xff00) + (b & 0xff00) + (c & 0xff00) + (d & 0xff00) + 0x200;
+                    half[out + x] = 0xff000000 | ((redBlue >>> 2) & 0xff00ff) | ((green >>> 2) & 0xff00);
+                }
+            }
+        });
+    }
+
+    /**
+     * Enlarges an image by a whole factor, repeating each pixel over a square, which
+     * keeps half-tone dots sharp. Rows and columns past the enlarged image repeat its
+     * last row and column.
+     *
+     * @param small, the pixels of the image to be enlarged
+     * @param smallWidth, the width of the image
+     * @param smallHeight, the height of the image
+     * @param factor, how many times larger the output is
+     * @param data, the pixels of the output
+     * @param width, the width of the output
+     * @param height, the height of the output
+     */
+    public static void upscale(int[] small, int smallWidth, int smallHeight, int factor,
+                               int[] data, int width, int height) {
+        TileScheduler.forEachBand(height, 1, (rowStart, rowEnd) -> {
+            int previous = -1;
+            for (int y = rowStart; y < rowEnd; y++) {
+                int offset = y * width;
+                int source = Math.min(y / factor, smallHeight - 1);
+                if (source == previous) {
+                    // the same as the row above
+                    System.arraycopy(data, offset - width, data, offset, width);
+                    continue;
+                }
+                previous = source;
+                int from = source * smallWidth;
+                int x = 0;
+                for (int col = 0; col < smallWidth; col++) {
+                    int rgb = small[from + col];
+                    int end = col == smallWidth - 1 ? width : x + factor;
+                    for (; x < end; x++) {
+                        data[offset + x] = rgb;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Packs red, green and blue channels into an opaque ARGB value, the same value
+     * new Color(red, green, blue).getRGB() would return.
+     *
+     * @param red, the red channel, 0-255
+     * @param green, the green channel, 0-255
+     * @param blue, the blue channel, 0-255
+     * @return opaque 32-bit ARGB
+     */
+    public static int pack(int red, int green, int blue) {
+        return 0xff000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Checks whether an image is TYPE_INT_RGB or TYPE_INT_ARGB and its raster starts at
+     * the front of a single bank with no padding between rows.
+     *
+     * @param image, the image to be checked
+     * @return true if data() may be used on the image directly
+     */
+    public static boolean isCompact(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return false;
+        }
+        Raster raster = image.getRaster();
+        if (raster.getParent() != null || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return false;
+        }
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return model.getScanlineStride() == image.getWidth()
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getOffset() == 0
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0;
+    }
+}
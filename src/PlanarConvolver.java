@@ -0,0 +1,304 @@
+import java.util.Arrays;
+
+/**
+ * Planar backend for the Kernelizer's direct path. Each block of rows is first split
+ * into separate red, green and blue planes of floats, padded by n/2 columns on either
+ * side as the border mode says, so that every kernel tap becomes one multiply-add
+ * across a whole row of a plane with no unpacking, edge checks or gathers. Sums are
+ * repacked with the same truncation and clamping as Kernelizer.processPixel(), and
+ * differ from its double sums by at most 1 per channel. The splitting, multiply-adds
+ * and repacking go through the Vector API when it is available (see VectorConvolver),
+ * and otherwise through plain loops, which the JIT compiles into SIMD instructions as
+ * far as it can; the results are the same either way. The Grayscaler's luma goes
+ * through the same Lanes.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class PlanarConvolver {
+    // rows split into planes at once, so that the planes stay in cache
+    private static final int BLOCK_ROWS = 16;
+
+    // the plain loops, which the JIT vectorizes as best it can
+    static final Lanes LOOPS = new Loops();
+    // the multiply-adds picked at startup
+    static final Lanes LANES = loadLanes();
+
+    private static final ThreadLocal<Planes> planes = ThreadLocal.withInitial(Planes::new);
+
+    /**
+     * Picks the lane operations: the Vector API's, unless the kip.backend system
+     * property is set to planar or scalar or they are not available, and the plain
+     * loops otherwise.
+     *
+     * @return the Lanes to be used
+     */
+    private static Lanes loadLanes() {
+        String backend = System.getProperty("kip.backend");
+        boolean loops = "planar".equalsIgnoreCase(backend) || "scalar".equalsIgnoreCase(backend);
+        Lanes vector = loops ? null : vectorLanes();
+        return vector == null ? LOOPS : vector;
+    }
+
+    /**
+     * Loads the Vector API's lane operations from VectorConvolver, which is only
+     * compiled and run with the jdk.incubator.vector module (java --add-modules
+     * jdk.incubator.vector), so it is looked up by name.
+     *
+     * @return new VectorConvolver, or null if it or the module is missing
+     */
+    static Lanes vectorLanes() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (Lanes) Class.forName("VectorConvolver").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Applies the kernel to a band of rows. Rows up to n/2 above and below the band are
+     * read as well, but only the band itself is written. The kernel is flattened into
+     * taps on every call; filters apply it through a KernelPlan, which does that once.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param kernel, the kernel to be applied to the image
+     * @param border, how pixels past the edges are read
+     */
+    public static void processRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                                   float[][] kernel, BorderMode border) {
+        processRows(rowStart, rowEnd, data, newData, width, height, KernelPlan.Taps.of(kernel), border);
+    }
+
+    /**
+     * Applies a flattened kernel to a band of rows, as KernelPlan makes them.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param taps, the kernel's taps
+     * @param border, how pixels past the edges are read
+     */
+    static void processRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                            KernelPlan.Taps taps, BorderMode border) {
+        processRows(rowStart, rowEnd, data, newData, width, height, taps, border, LANES);
+    }
+
+    /**
+     * Applies a flattened kernel to a band of rows, running the taps through the given
+     * Lanes rather than the ones picked at startup.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param taps, the kernel's taps
+     * @param border, how pixels past the edges are read
+     * @param lanes, the multiply-adds
+     */
+    static void processRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                            KernelPlan.Taps taps, BorderMode border, Lanes lanes) {
+        int n = taps.n;
+        int half = n / 2;
+        int stride = width + n - 1;
+        Planes scratch = planes.get();
+        scratch.ensure(stride, BLOCK_ROWS + n - 1, width);
+        int[] padded = scratch.padded;
+        float[] sumRed = scratch.sumRed;
+        float[] sumGreen = scratch.sumGreen;
+        float[] sumBlue = scratch.sumBlue;
+
+        for (int block = rowStart; block < rowEnd; block += BLOCK_ROWS) {
+            int blockEnd = Math.min(rowEnd, block + BLOCK_ROWS);
+            // splits the block and its halo rows into planes
+            for (int k = 0; k < blockEnd - block + n - 1; k++) {
+                Pixels.padRow(block - half + k, data, width, height, half, n - 1 - half, border, padded);
+                lanes.split(padded, scratch, k * stride, stride);
+            }
+            for (int row = block; row < blockEnd; row++) {
+                Arrays.fill(sumRed, 0, width, 0);
+                Arrays.fill(sumGreen, 0, width, 0);
+                Arrays.fill(sumBlue, 0, width, 0);
+                // one multiply-add across the row per tap, a folded pair's pixels
+                // added or subtracted first
+                for (int k = 0; k < taps.count; k++) {
+                    int plane = (row - block + taps.row[k]) * stride + taps.column[k];
+                    int pair = (row - block + taps.pairRow[k]) * stride + taps.pairColumn[k];
+                    lanes.addTap(scratch, plane, pair, taps.sign[k], taps.weight[k], width);
+                }
+                lanes.pack(scratch, newData, row * width, width);
+            }
+        }
+    }
+
+    /**
+     * The parts of the work SIMD instructions speed up: splitting pixels into planes,
+     * adding one tap, weighed, into the row sums of all three planes, repacking the
+     * sums into pixels, and the Grayscaler's luma. Every implementation must give
+     * exactly what Loops gives.
+     */
+    interface Lanes {
+        /**
+         * Splits pixels into the red, green and blue planes, as floats 0-255.
+         *
+         * @param pixels, the pixels, from index 0
+         * @param planes, the planes
+         * @param plane, the index in the planes of the first pixel
+         * @param length, the number of pixels
+         */
+        void split(int[] pixels, Planes planes, int plane, int length);
+
+        /**
+         * Adds a tap across a row: for each x below width, the pixel at plane + x of
+         * each plane, plus or minus the one at pair + x if sign is 1 or -1, times the
+         * weight. Sums must come out exactly as Loops' do.
+         *
+         * @param planes, the planes and row sums
+         * @param plane, the index of the tap's first pixel in the planes
+         * @param pair, the index of the first pixel of the tap's mirror image
+         * @param sign, 0 for a tap of its own, 1 or -1 for a folded pair
+         * @param weight, the tap's weight
+         * @param width, the number of pixels in the row
+         */
+        void addTap(Planes planes, int plane, int pair, int sign, float weight, int width);
+
+        /**
+         * Repacks a row of sums into pixels, each sum truncated to an int and clamped
+         * to 0-255 to account for overflow of the byte value.
+         *
+         * @param planes, the row sums
+         * @param pixels, the pixels to be output
+         * @param offset, the index in pixels of the row's first pixel
+         * @param width, the number of pixels in the row
+         */
+        void pack(Planes planes, int[] pixels, int offset, int width);
+
+        /**
+         * Gray-scales a run of pixels, each to Grayscaler.grayscale() in all three
+         * channels. The run may be gray-scaled in place.
+         *
+         * @param data, the pixels to be processed
+         * @param newData, the pixels to be output
+         * @param from, the index of the first pixel
+         * @param to, one past the index of the last pixel
+         */
+        void gray(int[] data, int[] newData, int from, int to);
+    }
+
+    /**
+     * Lanes of plain loops.
+     */
+    private static class Loops implements Lanes {
+        @Override
+        public void split(int[] pixels, Planes planes, int plane, int length) {
+            float[] red = planes.red;
+            float[] green = planes.green;
+            float[] blue = planes.blue;
+            for (int x = 0; x < length; x++) {
+                int sample = pixels[x];
+                red[plane + x] = (sample >> 16) & 0xff;
+                green[plane + x] = (sample >> 8) & 0xff;
+                blue[plane + x] = sample & 0xff;
+            }
+        }
+
+        @Override
+        public void addTap(Planes planes, int plane, int pair, int sign, float weight, int width) {
+            float[] red = planes.red;
+            float[] green = planes.green;
+            float[] blue = planes.blue;
+            float[] sumRed = planes.sumRed;
+            float[] sumGreen = planes.sumGreen;
+            float[] sumBlue = planes.sumBlue;
+            if (sign == 0) {
+                for (int x = 0; x < width; x++) {
+                    sumRed[x] += red[plane + x] * weight;
+                    sumGreen[x] += green[plane + x] * weight;
+                    sumBlue[x] += blue[plane + x] * weight;
+                }
+            } else if (sign > 0) {
+                for (int x = 0; x < width; x++) {
+                    sumRed[x] += (red[plane + x] + red[pair + x]) * weight;
+                    sumGreen[x] += (green[plane + x] + green[pair + x]) * weight;
+                    sumBlue[x] += (blue[plane + x] + blue[pair + x]) * weight;
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    sumRed[x] += (red[plane + x] - red[pair + x]) * weight;
+                    sumGreen[x] += (green[plane + x] - green[pair + x]) * weight;
+                    sumBlue[x] += (blue[plane + x] - blue[pair + x]) * weight;
+                }
+            }
+        }
+
+        @Override
+        public void pack(Planes planes, int[] pixels, int offset, int width) {
+            float[] sumRed = planes.sumRed;
+            float[] sumGreen = planes.sumGreen;
+            float[] sumBlue = planes.sumBlue;
+            for (int x = 0; x < width; x++) {
+                int r = Math.min(Math.max((int) sumRed[x], 0), 255);
+                int g = Math.min(Math.max((int) sumGreen[x], 0), 255);
+                int b = Math.min(Math.max((int) sumBlue[x], 0), 255);
+                pixels[offset + x] = Pixels.pack(r, g, b);
+            }
+        }
+
+        @Override
+        public void gray(int[] data, int[] newData, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int y = Grayscaler.grayscale(data[i]);
+                newData[i] = Pixels.pack(y, y, y);
+            }
+        }
+    }
+
+    /**
+     * Per-thread planes and row sums, grown as needed.
+     */
+    static class Planes {
+        int[] padded = new int[0];
+        float[] red = new float[0];
+        float[] green = new float[0];
+        float[] blue = new float[0];
+        float[] sumRed = new float[0];
+        float[] sumGreen = new float[0];
+        float[] sumBlue = new float[0];
+
+        /**
+         * Makes sure the padded row, planes and sums are big enough.
+         *
+         * @param stride, the number of entries in each padded row
+         * @param rows, the number of rows in each plane
+         * @param width, the number of entries in each row of sums
+         */
+        void ensure(int stride, int rows, int width) {
+            int planeLength = stride * rows;
+            if (padded.length < stride) {
+                padded = new int[stride];
+            }
+            if (red.length < planeLength) {
+                red = new float[planeLength];
+                green = new float[planeLength];
+                blue = new float[planeLength];
+            }
+            if (sumRed.length < width) {
+                sumRed = new float[width];
+                sumGreen = new float[width];
+                sumBlue = new float[width];
+            }
+        }
+    }
+}
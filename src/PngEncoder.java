@@ -0,0 +1,445 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG writer that spreads the work across cores the way pigz does. Rows are grouped
+ * into chunks of about 128 KB, and every chunk is filtered and then deflated on its
+ * own through the TileScheduler, each primed with the last 32 KB of the chunk before
+ * it as its dictionary, so compression is nearly as good as one stream's. Each chunk
+ * but the last ends in a sync flush, which leaves it on a byte boundary, so the
+ * chunks join into one zlib stream as they are, and their Adler-32 checksums combine
+ * into the stream's without reading the data again.
+ *
+ * Rows are filtered the way libpng does by default, each with whichever of the five
+ * filters leaves the smallest sum of absolute bytes. Images with no transparency are
+ * written as RGB by default, instead of spending a byte per pixel on a constant alpha
+ * channel (see Layout).
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int CHUNK_BYTES = 128 * 1024; // filtered bytes deflated as one piece
+    private static final int WINDOW = 32 * 1024;        // the most a deflate stream looks back
+    private static final int ADLER_BASE = 65521;
+
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int RGBA = 6;
+
+    private final int level;
+    private final Layout layout;
+
+    /**
+     * Constructor for PngEncoder.
+     *
+     * @param level, the Deflater compression level, 0-9; 0 also leaves rows unfiltered
+     * @param layout, how pixels are laid out in the file
+     */
+    public PngEncoder(int level, Layout layout) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("compression level must be 0 to 9: " + level);
+        }
+        this.level = level;
+        this.layout = layout;
+    }
+
+    /**
+     * Creates an encoder with the compression level from the kip.pngLevel system
+     * property, 6 by default, and the layout from kip.pngLayout, OPAQUE by default.
+     *
+     * @return new PngEncoder
+     */
+    public static PngEncoder create() {
+        return new PngEncoder(Integer.getInteger("kip.pngLevel", 6),
+                Layout.valueOf(System.getProperty("kip.pngLayout", "OPAQUE").toUpperCase()));
+    }
+
+    /**
+     * Writes an image to a file.
+     *
+     * @param image, the image to be written
+     * @param file, the file to be written
+     * @return the size of the file
+     * @throws IOException if the file cannot be written
+     */
+    public long write(BufferedImage image, Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            return write(image, out);
+        }
+    }
+
+    /**
+     * Writes an image to a stream as a complete PNG file.
+     *
+     * @param image, the image to be written
+     * @param out, the stream to be written to, which is left open
+     * @return the number of bytes written
+     * @throws IOException if the stream cannot be written
+     */
+    public long write(BufferedImage image, OutputStream out) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] data = Pixels.data(Pixels.toIntRaster(image));
+        int colorType = colorType(image, data, width, height);
+        int channels = colorType == GRAY ? 1 : colorType == RGB ? 3 : 4;
+        long stride = 1 + (long) width * channels;
+        if (stride * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("image too large to encode: " + width + "x" + height);
+        }
+
+        // every chunk holds whole rows, and is filtered and deflated by one band
+        int chunkRows = (int) Math.max(1, Math.min(height, (CHUNK_BYTES + stride - 1) / stride));
+        int chunks = (height + chunkRows - 1) / chunkRows;
+        byte[][] filtered = new byte[chunks][];
+        TileScheduler.forEachBand(height, chunkRows, (rowStart, rowEnd) -> {
+            for (int row = rowStart; row < rowEnd; row += chunkRows) {
+                filtered[row / chunkRows] = filterRows(data, width, row, Math.min(rowEnd, row + chunkRows), channels);
+            }
+        });
+        byte[][] deflated = new byte[chunks][];
+        long[] adlers = new long[chunks];
+        TileScheduler.forEachBand(height, chunkRows, (rowStart, rowEnd) -> {
+            for (int row = rowStart; row < rowEnd; row += chunkRows) {
+                int chunk = row / chunkRows;
+                deflated[chunk] = deflate(filtered[chunk], chunk > 0 ? filtered[chunk - 1] : null, chunk == chunks - 1);
+                Adler32 adler = new Adler32();
+                adler.update(filtered[chunk]);
+                adlers[chunk] = adler.getValue();
+            }
+        });
+        long adler = adlers[0];
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            adler = combineAdler(adler, adlers[chunk], filtered[chunk].length);
+        }
+
+        long written = SIGNATURE.length;
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;                  // bits per channel
+        header[9] = (byte) colorType;
+        written += writeChunk(out, "IHDR", header, 0, header.length);
+        // each deflated chunk is an IDAT of its own, after the zlib header and before
+        // the checksum
+        written += writeChunk(out, "IDAT", zlibHeader(), 0, 2);
+        for (byte[] piece : deflated) {
+            written += writeChunk(out, "IDAT", piece, 0, piece.length);
+        }
+        byte[] checksum = new byte[4];
+        putInt(checksum, 0, (int) adler);
+        written += writeChunk(out, "IDAT", checksum, 0, checksum.length);
+        written += writeChunk(out, "IEND", new byte[0], 0, 0);
+        return written;
+    }
+
+    /**
+     * Picks the smallest color type the layout allows that keeps every pixel.
+     *
+     * @param image, the image to be written
+     * @param data, its pixels
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @return the PNG color type
+     */
+    private int colorType(BufferedImage image, int[] data, int width, int height) {
+        boolean alpha = image.getColorModel().hasAlpha();
+        if (layout == Layout.KEEP) {
+            return alpha ? RGBA : RGB;
+        }
+        AtomicBoolean translucent = new AtomicBoolean();
+        AtomicBoolean colored = new AtomicBoolean();
+        TileScheduler.forEachBand(height, 1, (rowStart, rowEnd) -> {
+            boolean seenTranslucent = false;
+            boolean seenColored = false;
+            for (int i = rowStart * width; i < rowEnd * width; i++) {
+                int argb = data[i];
+                seenTranslucent |= alpha && argb >>> 24 != 0xff;
+                seenColored |= ((argb >> 16) & 0xff) != (argb & 0xff) || ((argb >> 8) & 0xff) != (argb & 0xff);
+            }
+            if (seenTranslucent) {
+                translucent.set(true);
+            }
+            if (seenColored) {
+                colored.set(true);
+            }
+        });
+        return translucent.get() ? RGBA : colored.get() || layout != Layout.GRAY ? RGB : GRAY;
+    }
+
+    /**
+     * Lays out and filters a run of rows, each as its filter type followed by its
+     * filtered bytes.
+     *
+     * @param data, the pixels of the image
+     * @param width, the width of the image
+     * @param rowStart, the first row
+     * @param rowEnd, one past the last row
+     * @param channels, the bytes per pixel: 1 for gray, 3 for RGB or 4 for RGBA
+     * @return the filtered rows
+     */
+    private byte[] filterRows(int[] data, int width, int rowStart, int rowEnd, int channels) {
+        int rowBytes = width * channels;
+        byte[] out = new byte[(rowEnd - rowStart) * (rowBytes + 1)];
+        byte[] prior = new byte[rowBytes];
+        byte[] raw = new byte[rowBytes];
+        if (rowStart > 0) {
+            layOut(data, (rowStart - 1) * width, width, channels, prior);
+        }
+        int offset = 0;
+        for (int row = rowStart; row < rowEnd; row++) {
+            layOut(data, row * width, width, channels, raw);
+            out[offset] = (byte) (level == 0 ? 0 : pickFilter(raw, prior, channels));
+            filter(out[offset], raw, prior, channels, out, offset + 1);
+            offset += rowBytes + 1;
+            byte[] swap = prior;
+            prior = raw;
+            raw = swap;
+        }
+        return out;
+    }
+
+    /**
+     * Lays out one row of pixels as PNG samples.
+     *
+     * @param data, the pixels of the image
+     * @param start, the index of the row's first pixel
+     * @param width, the width of the image
+     * @param channels, the bytes per pixel
+     * @param row, the samples to be written
+     */
+    private static void layOut(int[] data, int start, int width, int channels, byte[] row) {
+        switch (channels) {
+            case 1 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = (byte) data[start + x];
+                }
+            }
+            case 3 -> {
+                for (int x = 0, i = 0; x < width; x++, i += 3) {
+                    int argb = data[start + x];
+                    row[i] = (byte) (argb >> 16);
+                    row[i + 1] = (byte) (argb >> 8);
+                    row[i + 2] = (byte) argb;
+                }
+            }
+            default -> {
+                for (int x = 0, i = 0; x < width; x++, i += 4) {
+                    int argb = data[start + x];
+                    row[i] = (byte) (argb >> 16);
+                    row[i + 1] = (byte) (argb >> 8);
+                    row[i + 2] = (byte) argb;
+                    row[i + 3] = (byte) (argb >>> 24);
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the filter for a row that leaves the smallest sum of its bytes taken as
+     * signed, the heuristic the PNG specification suggests.
+     *
+     * @param raw, the row's samples
+     * @param prior, the samples of the row above, all zero for the first row
+     * @param bpp, the bytes per pixel
+     * @return the filter type, 0-4
+     */
+    private static int pickFilter(byte[] raw, byte[] prior, int bpp) {
+        long none = 0;
+        long sub = 0;
+        long up = 0;
+        long average = 0;
+        long paeth = 0;
+        for (int i = 0; i < raw.length; i++) {
+            int x = raw[i] & 0xff;
+            int a = i >= bpp ? raw[i - bpp] & 0xff : 0;
+            int b = prior[i] & 0xff;
+            int c = i >= bpp ? prior[i - bpp] & 0xff : 0;
+            none += Math.abs((byte) x);
+            sub += Math.abs((byte) (x - a));
+            up += Math.abs((byte) (x - b));
+            average += Math.abs((byte) (x - ((a + b) >> 1)));
+            paeth += Math.abs((byte) (x - paethPredictor(a, b, c)));
+        }
+        long best = Math.min(Math.min(none, sub), Math.min(Math.min(up, average), paeth));
+        return best == none ? 0 : best == sub ? 1 : best == up ? 2 : best == average ? 3 : 4;
+    }
+
+    /**
+     * Filters a row with one filter.
+     *
+     * @param type, the filter type, 0-4
+     * @param raw, the row's samples
+     * @param prior, the samples of the row above, all zero for the first row
+     * @param bpp, the bytes per pixel
+     * @param out, the array the filtered bytes are written to
+     * @param offset, where in out they start
+     */
+    private static void filter(int type, byte[] raw, byte[] prior, int bpp, byte[] out, int offset) {
+        for (int i = 0; i < raw.length; i++) {
+            int x = raw[i] & 0xff;
+            int a = i >= bpp ? raw[i - bpp] & 0xff : 0;
+            int b = prior[i] & 0xff;
+            int predicted = switch (type) {
+                case 0 -> 0;
+                case 1 -> a;
+                case 2 -> b;
+                case 3 -> (a + b) >> 1;
+                default -> paethPredictor(a, b, i >= bpp ? prior[i - bpp] & 0xff : 0);
+            };
+            out[offset + i] = (byte) (x - predicted);
+        }
+    }
+
+    /**
+     * @param a, the sample to the left
+     * @param b, the sample above
+     * @param c, the sample above and to the left
+     * @return whichever of the three is closest to a + b - c, preferring them in order
+     */
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+    }
+
+    /**
+     * Deflates one chunk as raw deflate data that can be joined to the chunks before
+     * and after it.
+     *
+     * @param chunk, the filtered rows
+     * @param previous, the chunk before it, whose end primes the dictionary, or null
+     * @param last, whether this is the last chunk, which finishes the stream
+     * @return the deflated bytes
+     */
+    private byte[] deflate(byte[] chunk, byte[] previous, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (previous != null) {
+                int length = Math.min(WINDOW, previous.length);
+                deflater.setDictionary(previous, previous.length - length, length);
+            }
+            deflater.setInput(chunk);
+            if (last) {
+                deflater.finish();
+            }
+            byte[] out = new byte[chunk.length / 2 + 64];
+            int size = 0;
+            while (true) {
+                if (size == out.length) {
+                    out = Arrays.copyOf(out, 2 * out.length);
+                }
+                int count = deflater.deflate(out, size, out.length - size,
+                        last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                size += count;
+                // done once the stream is finished, or flushed with room to spare
+                if (last ? deflater.finished() : size < out.length && deflater.needsInput()) {
+                    break;
+                }
+            }
+            return Arrays.copyOf(out, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two pieces of data into the checksum of the
+     * two joined, as zlib's adler32_combine() does.
+     *
+     * @param first, the checksum of the first piece
+     * @param second, the checksum of the second piece
+     * @param length, the length of the second piece
+     * @return the checksum of both
+     */
+    static long combineAdler(long first, long second, long length) {
+        long remainder = length % ADLER_BASE;
+        long sum1 = first & 0xffff;
+        long sum2 = remainder * sum1 % ADLER_BASE;
+        sum1 += (second & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((first >> 16) & 0xffff) + ((second >> 16) & 0xffff) + ADLER_BASE - remainder;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * @return the two-byte zlib header for the compression level
+     */
+    private byte[] zlibHeader() {
+        // the level hint is only advisory, and each hint value keeps the header a
+        // multiple of 31 as zlib requires
+        int hint = level <= 1 ? 0x01 : level <= 5 ? 0x5e : level == 6 ? 0x9c : 0xda;
+        return new byte[]{0x78, (byte) hint};
+    }
+
+    /**
+     * Writes one PNG chunk: its length, type, data and CRC.
+     *
+     * @param out, the stream to be written to
+     * @param type, the chunk type, such as IDAT
+     * @param data, the array holding the data
+     * @param offset, where in data it starts
+     * @param length, the length of the data
+     * @return the number of bytes written
+     * @throws IOException if the stream cannot be written
+     */
+    private static long writeChunk(OutputStream out, String type, byte[] data, int offset, int length)
+            throws IOException {
+        byte[] prefix = new byte[8];
+        putInt(prefix, 0, length);
+        for (int i = 0; i < 4; i++) {
+            prefix[4 + i] = (byte) type.charAt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(prefix, 4, 4);
+        crc.update(data, offset, length);
+        byte[] suffix = new byte[4];
+        putInt(suffix, 0, (int) crc.getValue());
+        out.write(prefix);
+        out.write(data, offset, length);
+        out.write(suffix);
+        return 12L + length;
+    }
+
+    /**
+     * Stores an int in big-endian order.
+     *
+     * @param array, the array to be written to
+     * @param offset, where the int starts
+     * @param value, the int
+     */
+    private static void putInt(byte[] array, int offset, int value) {
+        array[offset] = (byte) (value >>> 24);
+        array[offset + 1] = (byte) (value >>> 16);
+        array[offset + 2] = (byte) (value >>> 8);
+        array[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Enumerator for the ways pixels can be laid out in the file.
+     * <ul>
+     *     <li>KEEP: RGBA for images with an alpha channel, RGB for the rest</li>
+     *     <li>OPAQUE: RGBA only if some pixel is not opaque, RGB otherwise</li>
+     *     <li>GRAY: as OPAQUE, but gray if every pixel is gray. ImageIO.read() gives
+     *     back the same samples, but in a TYPE_BYTE_GRAY image, whose getRGB() takes
+     *     them as linear and converts them to brighter sRGB values</li>
+     * </ul>
+     */
+    public enum Layout {
+        KEEP, OPAQUE, GRAY
+    }
+}
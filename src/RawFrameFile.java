@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of raw frame files: a 16-byte header holding the magic number "KIPF", the
+ * format version, and the frame width and height, followed by any number of frames
+ * of width * height big-endian ARGB ints stored row by row.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class RawFrameFile {
+    public static final int MAGIC = 0x4b495046;     // "KIPF"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+
+    /**
+     * Writes a header at the start of a file.
+     *
+     * @param channel, the file
+     * @param width, the width of the frames
+     * @param height, the height of the frames
+     * @throws IOException if the header cannot be written
+     */
+    public static void writeHeader(FileChannel channel, int width, int height) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Reads the header at the start of a file.
+     *
+     * @param channel, the file
+     * @return {width, height}
+     * @throws IOException if the header cannot be read or is not a raw frame header
+     */
+    public static int[] readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("truncated raw frame header");
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("not a raw frame file");
+        }
+        int width = header.getInt();
+        int height = header.getInt();
+        if (width <= 0 || height <= 0) {
+            throw new IOException("bad raw frame size " + width + "x" + height);
+        }
+        return new int[]{width, height};
+    }
+
+    /**
+     * @param width, the width of the frames
+     * @param height, the height of the frames
+     * @return the number of bytes in one frame
+     */
+    public static long frameBytes(int width, int height) {
+        return 4L * width * height;
+    }
+}
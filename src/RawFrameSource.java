@@ -0,0 +1,99 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Frame source reading a raw frame file (see RawFrameFile) through memory-mapped
+ * chunks of whole frames, so frames are copied straight from the page cache into the
+ * image's pixel array.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class RawFrameSource implements FrameSource {
+    // largest part of the file mapped at once
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final long frameBytes;
+    private final long frames;
+    private final int framesPerChunk;
+    private final boolean loop;
+    private final FramePacer pacer;
+
+    private MappedByteBuffer chunk;
+    private long chunkFirst = -1;   // index of the first frame in the mapped chunk
+    private long index;
+
+    /**
+     * Constructor for RawFrameSource.
+     *
+     * @param file, the raw frame file
+     * @param fps, frames per second, or 0 to read frames as fast as possible
+     * @param loop, whether to start over after the last frame
+     * @throws IOException if the file cannot be opened or is not a raw frame file
+     */
+    public RawFrameSource(Path file, double fps, boolean loop) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            int[] size = RawFrameFile.readHeader(channel);
+            width = size[0];
+            height = size[1];
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        frameBytes = RawFrameFile.frameBytes(width, height);
+        frames = (channel.size() - RawFrameFile.HEADER_BYTES) / frameBytes;
+        framesPerChunk = (int) Math.max(1, CHUNK_BYTES / frameBytes);
+        this.loop = loop;
+        pacer = new FramePacer(fps);
+    }
+
+    @Override
+    public BufferedImage read() throws IOException {
+        if (index == frames) {
+            if (!loop || frames == 0) {
+                return null;
+            }
+            index = 0;
+        }
+        pacer.await();
+        long first = index / framesPerChunk * framesPerChunk;
+        if (first != chunkFirst) {
+            long count = Math.min(framesPerChunk, frames - first);
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                    RawFrameFile.HEADER_BYTES + first * frameBytes, count * frameBytes);
+            chunkFirst = first;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        chunk.position((int) ((index - first) * frameBytes));
+        chunk.asIntBuffer().get(Pixels.data(image), 0, width * height);
+        index++;
+        return image;
+    }
+
+    @Override
+    public Dimension getSize() {
+        return new Dimension(width, height);
+    }
+
+    /**
+     * @return the number of frames in the file
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunk = null;
+        channel.close();
+    }
+}
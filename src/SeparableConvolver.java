@@ -0,0 +1,317 @@
+import java.util.Arrays;
+
+/**
+ * Class filled with static utility methods for the Kernelizer's fast paths. Kernels
+ * that are the outer product of a column and a row of weights are applied as two 1-D
+ * passes, O(n) per pixel, and constant (box) kernels are applied with running sums,
+ * O(1) per pixel whatever the kernel's size. Pixels past the edges are read as the
+ * border mode says, and output stays within 1 of the direct dot product per channel.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class SeparableConvolver {
+    // largest total error, in gray levels, a factorization may add before it is refused
+    private static final double MAX_FACTOR_ERROR = 0.5;
+
+    private static final ThreadLocal<float[]> floatScratch = ThreadLocal.withInitial(() -> new float[0]);
+    private static final ThreadLocal<int[]> intScratch = ThreadLocal.withInitial(() -> new int[0]);
+
+    /**
+     * Checks whether every entry of the kernel is the same.
+     *
+     * @param kernel, the kernel to be checked
+     * @return true if the kernel is a box kernel
+     */
+    public static boolean isBox(float[][] kernel) {
+        float weight = kernel[0][0];
+        for (float[] column : kernel) {
+            for (float entry : column) {
+                if (entry != weight) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Factors the kernel into column weights u and row weights v such that
+     * kernel[i][j] is u[i] * v[j], using the row and column through the kernel's
+     * largest entry. The factorization is refused if it would move any channel of an
+     * output pixel by more than half a gray level.
+     *
+     * @param kernel, the kernel to be factored
+     * @return {u, v}, or null if the kernel is not rank 1
+     */
+    public static float[][] factor(float[][] kernel) {
+        int n = kernel.length;
+        int p = 0;
+        int q = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (Math.abs(kernel[i][j]) > Math.abs(kernel[p][q])) {
+                    p = i;
+                    q = j;
+                }
+            }
+        }
+        float[] u = new float[n];
+        float[] v = new float[n];
+        for (int i = 0; i < n; i++) {
+            u[i] = kernel[i][q];
+            v[i] = kernel[p][q] == 0 ? 0 : kernel[p][i] / kernel[p][q];
+        }
+        double error = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                error += Math.abs(kernel[i][j] - (double) u[i] * v[j]) * 255;
+            }
+        }
+        return error < MAX_FACTOR_ERROR ? new float[][]{u, v} : null;
+    }
+
+    /**
+     * Applies a separable kernel to a band of rows: each row is first filtered down
+     * its columns with the row weights v, then along the row with the column weights u.
+     * The rows read for an output row are looked up once through the border mode, and
+     * the column sums are padded through it, so neither pass checks edges per tap.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param u, the column weights, u[i] weighs the pixel i - n/2 columns away
+     * @param v, the row weights, v[j] weighs the pixel j - n/2 rows away
+     * @param border, how pixels past the edges are read
+     */
+    public static void separableRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                                     float[] u, float[] v, BorderMode border) {
+        int n = u.length;
+        int half = n / 2;
+        // column sums of each channel, padded by half columns on the left and the rest
+        // on the right
+        int stride = width + n - 1;
+        float[] scratch = floatScratch(3 * stride);
+        // offsets of the rows read for an output row, and the taps they are read for;
+        // rows of CONSTANT black add nothing and are left out
+        int[] taps = intScratch(2 * n);
+        for (int row = rowStart; row < rowEnd; row++) {
+            int count = 0;
+            for (int j = 0; j < n; j++) {
+                int y = border.index(row + j - half, height);
+                if (y >= 0) {
+                    taps[count] = y * width;
+                    taps[n + count++] = j;
+                }
+            }
+            // vertical pass into three planar rows
+            for (int col = 0; col < width; col++) {
+                float red = 0;
+                float green = 0;
+                float blue = 0;
+                for (int k = 0; k < count; k++) {
+                    int sample = data[taps[k] + col];
+                    float weight = v[taps[n + k]];
+                    red += ((sample >> 16) & 0xff) * weight;
+                    green += ((sample >> 8) & 0xff) * weight;
+                    blue += (sample & 0xff) * weight;
+                }
+                scratch[half + col] = red;
+                scratch[stride + half + col] = green;
+                scratch[2 * stride + half + col] = blue;
+            }
+            padSums(scratch, stride, width, half, border);
+            // horizontal pass out of the planar rows
+            for (int col = 0; col < width; col++) {
+                float red = 0;
+                float green = 0;
+                float blue = 0;
+                for (int i = 0; i < n; i++) {
+                    red += scratch[col + i] * u[i];
+                    green += scratch[stride + col + i] * u[i];
+                    blue += scratch[2 * stride + col + i] * u[i];
+                }
+                newData[row * width + col] = clampPack(red, green, blue);
+            }
+        }
+    }
+
+    /**
+     * Applies an nxn box kernel to a band of rows. Per-column sums of the n rows
+     * around the current row are slid down the band, and each output pixel slides a
+     * window of n column sums along the row. The rows entering and leaving the sums are
+     * looked up through the border mode once per row, and the column sums are padded
+     * through it, so neither slide checks edges per pixel.
+     *
+     * @param rowStart, the first row of the band
+     * @param rowEnd, one past the last row of the band
+     * @param data, the pixels of the image to be processed
+     * @param newData, the pixels of the image to be output
+     * @param width, the width of the image
+     * @param height, the height of the image
+     * @param n, the size of the kernel
+     * @param weight, the kernel's entry
+     * @param border, how pixels past the edges are read
+     */
+    public static void boxRows(int rowStart, int rowEnd, int[] data, int[] newData, int width, int height,
+                               int n, float weight, BorderMode border) {
+        int half = n / 2;
+        // column sums of each channel, padded by half columns on the left and the rest
+        // on the right, with one more so the window can slide past the last column
+        int stride = width + n;
+        int[] sums = intScratch(3 * stride);
+        // column sums for the first row of the band
+        Arrays.fill(sums, 0, 3 * stride, 0);
+        for (int j = 0; j < n; j++) {
+            addRow(border.index(rowStart + j - half, height), 1, data, width, sums, stride, half);
+        }
+        for (int row = rowStart; row < rowEnd; row++) {
+            if (row > rowStart) {
+                // slides the column sums down by one row
+                addRow(border.index(row - half - 1, height), -1, data, width, sums, stride, half);
+                addRow(border.index(row + n - 1 - half, height), 1, data, width, sums, stride, half);
+            }
+            padSums(sums, stride, width, half, border);
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int i = 0; i < n; i++) {
+                red += sums[i];
+                green += sums[stride + i];
+                blue += sums[2 * stride + i];
+            }
+            for (int col = 0; col < width; col++) {
+                newData[row * width + col] = clampPack(red * weight, green * weight, blue * weight);
+                // slides the window along the row by one column
+                int out = col;
+                int in = col + n;
+                red += sums[in] - sums[out];
+                green += sums[stride + in] - sums[stride + out];
+                blue += sums[2 * stride + in] - sums[2 * stride + out];
+            }
+        }
+    }
+
+    /**
+     * Adds the channels of one row of the image to the column sums, or subtracts them.
+     *
+     * @param row, the row, or -1 for a row of BorderMode.CONSTANT_RGB, which adds nothing
+     * @param sign, 1 to add the row, -1 to subtract it
+     * @param data, the pixels of the image
+     * @param width, the width of the image
+     * @param sums, the column sums of the three channels, stride entries each
+     * @param stride, the number of entries per channel
+     * @param left, the number of padding entries before each channel's first column
+     */
+    private static void addRow(int row, int sign, int[] data, int width, int[] sums, int stride, int left) {
+        if (row < 0) {
+            return;
+        }
+        int offset = row * width;
+        for (int col = 0; col < width; col++) {
+            int sample = data[offset + col];
+            sums[left + col] += sign * ((sample >> 16) & 0xff);
+            sums[stride + left + col] += sign * ((sample >> 8) & 0xff);
+            sums[2 * stride + left + col] += sign * (sample & 0xff);
+        }
+    }
+
+    /**
+     * Fills the padding either side of three channels of column sums as the border
+     * mode says, a column past the edges summing the column it is read from, or zero
+     * for CONSTANT, whose black channels are zero.
+     *
+     * @param sums, the column sums of the three channels, stride entries each
+     * @param stride, the number of entries per channel
+     * @param width, the number of columns of the image
+     * @param left, the number of padding entries before each channel's first column
+     * @param border, how columns past the edges are read
+     */
+    private static void padSums(int[] sums, int stride, int width, int left, BorderMode border) {
+        for (int x = 0; x < left; x++) {
+            int col = border.index(x - left, width);
+            for (int channel = 0; channel < 3 * stride; channel += stride) {
+                sums[channel + x] = col < 0 ? 0 : sums[channel + left + col];
+            }
+        }
+        for (int x = left + width; x < stride; x++) {
+            int col = border.index(x - left, width);
+            for (int channel = 0; channel < 3 * stride; channel += stride) {
+                sums[channel + x] = col < 0 ? 0 : sums[channel + left + col];
+            }
+        }
+    }
+
+    /**
+     * Fills the padding of float column sums, as padSums() does for int ones.
+     *
+     * @param sums, the column sums of the three channels, stride entries each
+     * @param stride, the number of entries per channel
+     * @param width, the number of columns of the image
+     * @param left, the number of padding entries before each channel's first column
+     * @param border, how columns past the edges are read
+     */
+    private static void padSums(float[] sums, int stride, int width, int left, BorderMode border) {
+        for (int x = 0; x < left; x++) {
+            int col = border.index(x - left, width);
+            for (int channel = 0; channel < 3 * stride; channel += stride) {
+                sums[channel + x] = col < 0 ? 0 : sums[channel + left + col];
+            }
+        }
+        for (int x = left + width; x < stride; x++) {
+            int col = border.index(x - left, width);
+            for (int channel = 0; channel < 3 * stride; channel += stride) {
+                sums[channel + x] = col < 0 ? 0 : sums[channel + left + col];
+            }
+        }
+    }
+
+    /**
+     * Truncates and clamps three channel sums the same way Kernelizer does, and packs
+     * them into an opaque ARGB value.
+     *
+     * @param red, the red sum
+     * @param green, the green sum
+     * @param blue, the blue sum
+     * @return opaque 32-bit ARGB
+     */
+    private static int clampPack(float red, float green, float blue) {
+        int r = Math.min(Math.max((int) (red), 0), 255);
+        int g = Math.min(Math.max((int) (green), 0), 255);
+        int b = Math.min(Math.max((int) (blue), 0), 255);
+        return Pixels.pack(r, g, b);
+    }
+
+    /**
+     * Gets the calling thread's scratch array, growing it if it is too short.
+     *
+     * @param length, the length needed
+     * @return an array of at least the given length
+     */
+    private static float[] floatScratch(int length) {
+        float[] array = floatScratch.get();
+        if (array.length < length) {
+            array = new float[length];
+            floatScratch.set(array);
+        }
+        return array;
+    }
+
+    /**
+     * Gets the calling thread's scratch array, growing it if it is too short.
+     *
+     * @param length, the length needed
+     * @return an array of at least the given length
+     */
+    private static int[] intScratch(int length) {
+        int[] array = intScratch.get();
+        if (array.length < length) {
+            array = new int[length];
+            intScratch.set(array);
+        }
+        return array;
+    }
+}
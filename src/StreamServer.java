@@ -0,0 +1,366 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Headless service running many streams at once, each reading from a frame source of
+ * its own and applying filters of its own. Every stream runs on a thread of its own,
+ * virtual where the JVM has virtual threads (Java 21 and later) so that dozens of
+ * streams waiting on their sources cost next to nothing, and platform threads
+ * otherwise. The pixel work does not run on those threads: the bands of every frame
+ * go to a FairScheduler shared by all the streams, sized to the cores, which keeps a
+ * stream with a heavy filter from starving the others.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class StreamServer implements AutoCloseable {
+    // Thread.ofVirtual(), looked up reflectively so the server still runs on older JVMs
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+    private static final Method UNSTARTED = OF_VIRTUAL == null ? null
+            : lookup(OF_VIRTUAL.getReturnType(), "unstarted", Runnable.class);
+
+    private final FairScheduler scheduler;
+    private final List<Stream> streams = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor for StreamServer.
+     *
+     * @param threads, the number of threads the pixel work of every stream shares
+     */
+    public StreamServer(int threads) {
+        scheduler = new FairScheduler(threads);
+    }
+
+    /**
+     * Starts a stream.
+     *
+     * @param name, the name of the stream
+     * @param source, the source its frames are read from, which the stream closes
+     *                once done
+     * @param filters, the filters applied to its frames
+     * @param sink, the action run on every processed frame, a pooled image that goes
+     *              back to the pool once the action returns unless the action retains
+     *              it with BufferPool.retainImage()
+     * @return the running Stream
+     */
+    public Stream start(String name, FrameSource source, FilterChain filters, Consumer<BufferedImage> sink) {
+        Stream stream = new Stream(name, source, filters, sink, scheduler.lane(name, 1));
+        streams.add(stream);
+        stream.thread.start();
+        return stream;
+    }
+
+    /**
+     * @return every stream started, running or not
+     */
+    public List<Stream> getStreams() {
+        return new ArrayList<>(streams);
+    }
+
+    /**
+     * @return whether streams run on virtual threads
+     */
+    public static boolean hasVirtualThreads() {
+        return UNSTARTED != null;
+    }
+
+    /**
+     * Stops every stream, waits for them, and stops the scheduler.
+     */
+    @Override
+    public void close() {
+        for (Stream stream : streams) {
+            stream.stop();
+        }
+        for (Stream stream : streams) {
+            stream.await();
+        }
+        scheduler.close();
+    }
+
+    /**
+     * Creates a thread, virtual if the JVM has virtual threads.
+     *
+     * @param name, the name of the thread
+     * @param task, what the thread runs
+     * @return the thread, not yet started
+     */
+    static Thread newThread(String name, Runnable task) {
+        Thread thread = null;
+        if (UNSTARTED != null) {
+            try {
+                thread = (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+            } catch (ReflectiveOperationException e) {
+                // falls back to a platform thread
+            }
+        }
+        if (thread == null) {
+            thread = new Thread(task);
+            thread.setDaemon(true);
+        }
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * Looks up a public method that may not exist in this JVM.
+     *
+     * @param type, the class declaring the method
+     * @param name, the name of the method
+     * @param parameters, the types of its parameters
+     * @return the method, or null if there is no such method
+     */
+    private static Method lookup(Class<?> type, String name, Class<?>... parameters) {
+        try {
+            return type.getMethod(name, parameters);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One stream: reads frames, processes them through the scheduler and hands them
+     * to its sink, as fast as its source delivers them.
+     */
+    public static class Stream {
+        private final String name;
+        private final FrameSource source;
+        private final Consumer<BufferedImage> sink;
+        private final FairScheduler.Lane lane;
+        private final Thread thread;
+        private final FrameMetrics metrics = new FrameMetrics("capture", "process", "sink");
+
+        private volatile FilterChain filters;
+        private volatile boolean running = true;
+        private volatile Exception failure;
+
+        /**
+         * Constructor for Stream.
+         *
+         * @param name, the name of the stream
+         * @param source, the source its frames are read from
+         * @param filters, the filters applied to its frames
+         * @param sink, the action run on every processed frame
+         * @param lane, the scheduler lane its bands are queued on
+         */
+        private Stream(String name, FrameSource source, FilterChain filters, Consumer<BufferedImage> sink,
+                       FairScheduler.Lane lane) {
+            this.name = name;
+            this.source = source;
+            this.filters = filters;
+            this.sink = sink;
+            this.lane = lane;
+            thread = newThread("stream-" + name, this::run);
+        }
+
+        /**
+         * Replaces the filters, from the next frame on.
+         *
+         * @param filters, the filters to be applied
+         */
+        public void setFilters(FilterChain filters) {
+            this.filters = filters;
+        }
+
+        /**
+         * @return the filters applied
+         */
+        public FilterChain getFilters() {
+            return filters;
+        }
+
+        /**
+         * @return the name of the stream
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the stream's timings and frame counts
+         */
+        public FrameMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * @return the CPU time the stream's pixel work has taken, in nanoseconds
+         */
+        public long getCpuNanos() {
+            return lane.getCpuNanos();
+        }
+
+        /**
+         * @return what stopped the stream, or null if it is running or its source ran
+         * out of frames
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return whether the stream has finished
+         */
+        public boolean isDone() {
+            return !thread.isAlive();
+        }
+
+        /**
+         * Stops the stream after the frame it is on.
+         */
+        public void stop() {
+            running = false;
+        }
+
+        /**
+         * Waits for the stream to finish.
+         */
+        public void await() {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Reads, processes and hands on frames until the source runs out or the stream
+         * is stopped, then closes the source.
+         */
+        private void run() {
+            TileScheduler.setRunner(lane);
+            long frames = 0;
+            try {
+                while (running) {
+                    long start = System.nanoTime();
+                    long allocated = FrameMetrics.threadAllocatedBytes();
+                    BufferedImage frame = source.read();
+                    if (frame == null) {
+                        break;
+                    }
+                    metrics.record("capture", start, allocated);
+                    metrics.frameIn();
+
+                    start = System.nanoTime();
+                    allocated = FrameMetrics.threadAllocatedBytes();
+                    BufferedImage dest = BufferPool.acquireImage(frame.getWidth(), frame.getHeight());
+                    filters.processImage(frame, dest);
+                    long nanos = metrics.record("process", start, allocated);
+                    metrics.recordFrame(frames++, dest.getWidth(), dest.getHeight(), nanos);
+
+                    start = System.nanoTime();
+                    allocated = FrameMetrics.threadAllocatedBytes();
+                    try {
+                        sink.accept(dest);
+                    } finally {
+                        BufferPool.releaseImage(dest);
+                    }
+                    metrics.record("sink", start, allocated);
+                    metrics.frameOut();
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } finally {
+                TileScheduler.setRunner(null);
+                lane.remove();
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the stream's name, frame rate, processing latencies and share of the
+         * pixel work since it started
+         */
+        @Override
+        public String toString() {
+            FrameMetrics.Snapshot snapshot = metrics.snapshot();
+            LatencyHistogram process = snapshot.getLatency("process");
+            return String.format("%-12s %6.1f fps  process p50 %6.1f  p99 %6.1f  max %6.1f ms  cpu %8.0f ms%s",
+                    name, snapshot.getFps(), process.getPercentile(50) / 1e6, process.getPercentile(99) / 1e6,
+                    process.getMax() / 1e6, getCpuNanos() / 1e6, failure == null ? "" : "  failed: " + failure);
+        }
+    }
+
+    /**
+     * Program's main method, runs streams until they end or for a set time, printing
+     * every stream's numbers each second.
+     *
+     * @param args, command-line args: [--threads N] [--seconds S] [--metrics DIR]
+     *              followed by one [COUNT*]SOURCE=FILTER per kind of stream, a frame
+     *              source specification (see FrameSource.open()) and a filter
+     *              specification (see FilterSpec)
+     * @throws Exception if a stream cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        double seconds = 0;
+        Path metrics = null;
+        List<String> specs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seconds") && i + 1 < args.length) {
+                seconds = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metrics = Paths.get(args[++i]);
+            } else {
+                specs.add(args[i]);
+            }
+        }
+        if (specs.isEmpty() || specs.stream().anyMatch(spec -> spec.indexOf('=') < 0)) {
+            System.err.println("usage: java StreamServer [--threads N] [--seconds S] [--metrics DIR]"
+                    + " [COUNT*]SOURCE=FILTER...");
+            System.err.println("  e.g. 8*synthetic:640x480@30=grayscale 2*synthetic:640x480@30=kernel:big.txt");
+            System.exit(2);
+        }
+
+        try (StreamServer server = new StreamServer(threads)) {
+            System.out.printf("%d worker threads, streams on %s threads%n", threads,
+                    hasVirtualThreads() ? "virtual" : "platform");
+            for (String spec : specs) {
+                int star = spec.indexOf('*');
+                int equals = spec.indexOf('=');
+                int count = star >= 0 && star < equals ? Integer.parseInt(spec.substring(0, star)) : 1;
+                String source = spec.substring(star >= 0 && star < equals ? star + 1 : 0, equals);
+                FilterChain filters = FilterSpec.parse(spec.substring(equals + 1));
+                for (int i = 0; i < count; i++) {
+                    FrameSource frames = FrameSource.open(source);
+                    Dimension size = frames.getSize();
+                    String name = server.getStreams().size() + ":" + size.width + "x" + size.height;
+                    server.start(name, frames, filters, frame -> { });
+                }
+            }
+
+            long end = seconds > 0 ? System.nanoTime() + (long) (seconds * 1e9) : Long.MAX_VALUE;
+            while (System.nanoTime() < end && !server.getStreams().stream().allMatch(Stream::isDone)) {
+                Thread.sleep(Math.max(1, Math.min(1000, (end - System.nanoTime()) / 1_000_000)));
+                System.out.println();
+                for (Stream stream : server.getStreams()) {
+                    System.out.println(stream);
+                }
+            }
+            if (metrics != null) {
+                Files.createDirectories(metrics);
+                for (Stream stream : server.getStreams()) {
+                    stream.getMetrics().writeCsv(metrics.resolve("stream-"
+                            + stream.getName().replace(':', '-') + ".csv"));
+                }
+            }
+        }
+    }
+}
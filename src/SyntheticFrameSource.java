@@ -0,0 +1,87 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Frame source generating a deterministic moving test pattern at any resolution and
+ * frame rate: color gradients, a checkerboard and a bright disc that circles the
+ * frame. Frame k is always the same, whatever machine it is generated on.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class SyntheticFrameSource implements FrameSource {
+    private final int width;
+    private final int height;
+    private final long frames;
+    private final FramePacer pacer;
+    private long index;
+
+    /**
+     * Constructor for SyntheticFrameSource.
+     *
+     * @param width, the width of the frames
+     * @param height, the height of the frames
+     * @param fps, frames per second, or 0 to generate frames as fast as possible
+     * @param frames, the number of frames to generate, or -1 for no limit
+     */
+    public SyntheticFrameSource(int width, int height, double fps, long frames) {
+        this.width = width;
+        this.height = height;
+        this.frames = frames;
+        pacer = new FramePacer(fps);
+    }
+
+    @Override
+    public BufferedImage read() throws IOException {
+        if (frames >= 0 && index >= frames) {
+            return null;
+        }
+        pacer.await();
+        return createFrame(width, height, index++);
+    }
+
+    @Override
+    public Dimension getSize() {
+        return new Dimension(width, height);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Draws frame k of the pattern.
+     *
+     * @param width, the width of the frame
+     * @param height, the height of the frame
+     * @param k, the index of the frame
+     * @return new TYPE_INT_RGB frame
+     */
+    public static BufferedImage createFrame(int width, int height, long k) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] data = Pixels.data(image);
+        double angle = k * 2 * Math.PI / 120;
+        int discX = (int) (width / 2 + width / 3 * Math.cos(angle));
+        int discY = (int) (height / 2 + height / 3 * Math.sin(angle));
+        int discRadius = Math.max(1, Math.min(width, height) / 8);
+        int square = Math.max(1, Math.min(width, height) / 12);
+        int shift = (int) (k % (2 * square));
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int dx = col - discX;
+                int dy = row - discY;
+                int pixel;
+                if (dx * dx + dy * dy <= discRadius * discRadius) {
+                    pixel = Pixels.pack(255, 240, 200);
+                } else if (((col + shift) / square + row / square) % 2 == 0) {
+                    pixel = Pixels.pack(col * 255 / width, row * 255 / height, (int) (k * 3 % 256));
+                } else {
+                    pixel = Pixels.pack(40, (col ^ row) & 0xff, 255 - row * 255 / height);
+                }
+                data[row * width + col] = pixel;
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the rows of a frame into bands and processes them across the cores of a
+ * shared ForkJoinPool. Every processor reads from its whole input image and writes
+ * only the rows of its band, so bands need no copying: a band's halo rows are simply
+ * read from the shared input array.
+ *
+ * The thread count and band height default to the kip.threads and kip.tileRows
+ * system properties, and can be changed at any time. A thread can also have the
+ * bands of every frame it processes run by a Runner of its own instead of the pool,
+ * such as a FairScheduler sharing cores between many streams.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class TileScheduler {
+    private static volatile int tileRows = Math.max(1, Integer.getInteger("kip.tileRows", 32));
+    private static volatile ForkJoinPool pool = createPool(Integer.getInteger("kip.threads",
+            Runtime.getRuntime().availableProcessors()));
+    private static final ThreadLocal<Runner> runners = new ThreadLocal<>();
+
+    /**
+     * Runner running every band on the calling thread, one after another, for threads
+     * that are already one of many processing frames side by side.
+     */
+    public static final Runner SERIAL = (count, band) -> {
+        for (int i = 0; i < count; i++) {
+            band.accept(i);
+        }
+    };
+
+    /**
+     * Processes one band of rows.
+     */
+    public interface Band {
+        /**
+         * Processes rows rowStart (inclusive) to rowEnd (exclusive).
+         *
+         * @param rowStart, the first row of the band
+         * @param rowEnd, one past the last row of the band
+         */
+        void process(int rowStart, int rowEnd);
+    }
+
+    /**
+     * Runs the bands of a frame in place of the shared pool.
+     */
+    public interface Runner {
+        /**
+         * Runs bands 0 to count, returning once every one is done.
+         *
+         * @param count, the number of bands
+         * @param band, the work to be done on the band with a given index
+         */
+        void run(int count, IntConsumer band);
+    }
+
+    /**
+     * Splits rows 0 to height into bands of roughly getTileRows() rows and processes
+     * them in parallel, returning once every band is done. Band boundaries fall on
+     * multiples of alignment, so processors working on a grid of cells (such as the
+     * half-toner) never have a cell split between two bands.
+     *
+     * @param height, the number of rows to be processed
+     * @param alignment, the number of rows every band boundary is a multiple of
+     * @param band, the work to be done on each band
+     */
+    public static void forEachBand(int height, int alignment, Band band) {
+        alignment = Math.max(1, alignment);
+        int rows = bandRows(alignment);
+        int bands = (height + rows - 1) / rows;
+        Runner runner = runners.get();
+        if (runner != null) {
+            Band counted = runner == SERIAL ? band : FrameMetrics.chargedToCaller(band);
+            runner.run(bands, index -> counted.process(index * rows, Math.min(height, (index + 1) * rows)));
+            return;
+        }
+        ForkJoinPool current = pool;
+        if (bands <= 1 || current.getParallelism() == 1) {
+            band.process(0, height);
+            return;
+        }
+        try {
+            current.invoke(new BandTask(FrameMetrics.chargedToCaller(band), 0, bands, rows, height));
+        } catch (RejectedExecutionException e) {
+            // the pool was replaced by setParallelism() before the task got in
+            if (current == pool) {
+                throw e;
+            }
+            forEachBand(height, alignment, band);
+        }
+    }
+
+    /**
+     * @return the runner the bands of frames processed on the calling thread are run
+     * by, or null for the shared pool
+     */
+    public static Runner getRunner() {
+        return runners.get();
+    }
+
+    /**
+     * Sets the runner the bands of frames processed on the calling thread are run by.
+     *
+     * @param runner, the runner, or null for the shared pool
+     */
+    public static void setRunner(Runner runner) {
+        if (runner == null) {
+            runners.remove();
+        } else {
+            runners.set(runner);
+        }
+    }
+
+    /**
+     * Gets the height of the bands forEachBand() splits frames into. Only the last
+     * band of a frame can be shorter.
+     *
+     * @param alignment, the number of rows every band boundary is a multiple of
+     * @return the number of rows in each band
+     */
+    public static int bandRows(int alignment) {
+        alignment = Math.max(1, alignment);
+        return Math.max(1, tileRows / alignment) * alignment;
+    }
+
+    /**
+     * Sets the number of threads frames are split across. A value of 1 processes
+     * every frame serially on the calling thread.
+     *
+     * @param threads, the number of threads
+     */
+    public static synchronized void setParallelism(int threads) {
+        if (threads != pool.getParallelism()) {
+            ForkJoinPool old = pool;
+            pool = createPool(threads);
+            old.shutdown();
+        }
+    }
+
+    /**
+     * @return the number of threads frames are split across
+     */
+    public static int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Sets the number of rows in each band.
+     *
+     * @param rows, the band height
+     */
+    public static void setTileRows(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("tile rows must be positive: " + rows);
+        }
+        tileRows = rows;
+    }
+
+    /**
+     * @return the number of rows in each band
+     */
+    public static int getTileRows() {
+        return tileRows;
+    }
+
+    /**
+     * Creates the pool bands are run on.
+     *
+     * @param threads, the pool's parallelism
+     * @return new ForkJoinPool
+     */
+    private static ForkJoinPool createPool(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("thread count must be positive: " + threads);
+        }
+        return new ForkJoinPool(threads);
+    }
+
+    /**
+     * Recursively halves a range of bands until a single band is left.
+     */
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Band band;
+        private final int first;
+        private final int last;
+        private final int rows;
+        private final int height;
+
+        /**
+         * Constructor for BandTask.
+         *
+         * @param band, the work to be done on each band
+         * @param first, the index of the first band
+         * @param last, one past the index of the last band
+         * @param rows, the number of rows in a band
+         * @param height, the number of rows in the frame
+         */
+        BandTask(Band band, int first, int last, int rows, int height) {
+            this.band = band;
+            this.first = first;
+            this.last = last;
+            this.rows = rows;
+            this.height = height;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                band.process(first * rows, Math.min(height, (first + 1) * rows));
+            } else {
+                int middle = (first + last) >>> 1;
+                invokeAll(new BandTask(band, first, middle, rows, height),
+                        new BandTask(band, middle, last, rows, height));
+            }
+        }
+    }
+}
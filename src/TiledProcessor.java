@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a FilterChain to an image too big for the heap, tile by tile, from one
+ * MappedRaster to another. Each tile is read together with the chain's halo around
+ * it, with its top left corner moved back onto the chain's grid, processed as a frame
+ * of its own, and only the tile itself is written back, so the output is exactly what
+ * the chain gives for the image as a whole (see Filter.grid()). Worker threads each
+ * take the next tile in turn and process it serially, so the heap only ever holds a
+ * couple of tile-sized arrays per worker, however big the image.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class TiledProcessor {
+    private final int tileSize;
+    private final int threads;
+    private final AtomicInteger tilesDone = new AtomicInteger();
+    private volatile int tileCount;
+
+    /**
+     * Constructor for TiledProcessor.
+     *
+     * @param tileSize, the side of the square tiles, rounded up to a multiple of the
+     *                  chain's grid
+     * @param threads, the number of worker threads
+     */
+    public TiledProcessor(int tileSize, int threads) {
+        if (tileSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("bad tile size or thread count: " + tileSize + ", " + threads);
+        }
+        this.tileSize = tileSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Applies a chain to a raster, writing the result into another of the same size.
+     *
+     * @param chain, the filters to be applied, none of which may need whole frames
+     * @param input, the raster to be processed
+     * @param output, the raster to be written, which must not be the input
+     * @throws IOException if a tile cannot be read or written
+     */
+    public void process(FilterChain chain, MappedRaster input, MappedRaster output) throws IOException {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        if (output.getWidth() != width || output.getHeight() != height || output == input) {
+            throw new IllegalArgumentException("output must be a separate raster of the same size");
+        }
+        int grid = chain.grid();
+        if (grid == 0) {
+            throw new IllegalArgumentException(chain + " only works on whole frames and cannot be tiled");
+        }
+        int tile = (tileSize + grid - 1) / grid * grid;
+        int columns = (width + tile - 1) / tile;
+        int count = columns * ((height + tile - 1) / tile);
+        tileCount = count;
+        tilesDone.set(0);
+
+        AtomicInteger next = new AtomicInteger();
+        Exception[] failure = new Exception[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                // tiles are already processed side by side, so bands run serially
+                TileScheduler.setRunner(TileScheduler.SERIAL);
+                for (int index = next.getAndIncrement(); index < count; index = next.getAndIncrement()) {
+                    int left = index % columns * tile;
+                    int top = index / columns * tile;
+                    try {
+                        processTile(chain, input, output, left, top, Math.min(width, left + tile),
+                                Math.min(height, top + tile), grid);
+                    } catch (IOException | RuntimeException e) {
+                        synchronized (failure) {
+                            if (failure[0] == null) {
+                                failure[0] = e;
+                            }
+                        }
+                        next.set(count);
+                        return;
+                    }
+                    tilesDone.incrementAndGet();
+                }
+            }, "tile-worker-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            next.set(count);
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while processing tiles", e);
+        }
+        synchronized (failure) {
+            if (failure[0] instanceof IOException) {
+                throw (IOException) failure[0];
+            } else if (failure[0] != null) {
+                throw (RuntimeException) failure[0];
+            }
+        }
+    }
+
+    /**
+     * @return the share of the tiles of the image being processed that are done, 0-1
+     */
+    public double getProgress() {
+        int count = tileCount;
+        return count == 0 ? 0 : (double) tilesDone.get() / count;
+    }
+
+    /**
+     * Processes one tile. A crop of the input reaching the chain's halo past the tile,
+     * with its top left corner moved back onto the grid, is processed as a frame of
+     * its own; its edges are either the image's or far enough out that the tile never
+     * sees past them.
+     *
+     * @param chain, the filters to be applied
+     * @param input, the raster to be processed
+     * @param output, the raster to be written
+     * @param left, the left edge of the tile
+     * @param top, the top edge of the tile
+     * @param right, one past the right edge of the tile
+     * @param bottom, one past the bottom edge of the tile
+     * @param grid, the spacing of the grid crops must start on
+     * @throws IOException if the tile cannot be read or written
+     */
+    private static void processTile(FilterChain chain, MappedRaster input, MappedRaster output,
+                                    int left, int top, int right, int bottom, int grid) throws IOException {
+        int halo = chain.halo();
+        int cropLeft = Math.max(0, left - halo) / grid * grid;
+        int cropTop = Math.max(0, top - halo) / grid * grid;
+        int cropWidth = Math.min(input.getWidth(), right + halo) - cropLeft;
+        int cropHeight = Math.min(input.getHeight(), bottom + halo) - cropTop;
+        int tileWidth = right - left;
+        int[] crop = BufferPool.acquire(cropWidth * cropHeight);
+        int[] processed = BufferPool.acquire(cropWidth * cropHeight);
+        try {
+            input.read(cropLeft, cropTop, cropWidth, cropHeight, crop);
+            chain.process(crop, processed, cropWidth, cropHeight);
+            // packs the tile's rows to the front of the crop array, which is done with
+            for (int row = top; row < bottom; row++) {
+                System.arraycopy(processed, (row - cropTop) * cropWidth + left - cropLeft,
+                        crop, (row - top) * tileWidth, tileWidth);
+            }
+            output.write(left, top, tileWidth, bottom - top, crop);
+        } finally {
+            BufferPool.release(crop);
+            BufferPool.release(processed);
+        }
+    }
+
+    /**
+     * Program's main method, processes a raw frame file tile by tile.
+     *
+     * @param args, command-line args: input raw frame file, filter specification (see
+     *              FilterSpec), output raw frame file, and optionally --tile N for the
+     *              side of the tiles and --threads N
+     * @throws Exception if the image cannot be processed
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: java TiledProcessor <input.kipf> <filter> <output.kipf> [--tile N] [--threads N]");
+            System.err.println("  filters as for BatchProcessor, except kernels with the wrap border");
+            System.exit(2);
+        }
+        int tile = 512;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 3; i < args.length - 1; i++) {
+            if (args[i].equals("--tile")) {
+                tile = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            }
+        }
+        FilterChain chain = FilterSpec.parse(args[1]);
+        TiledProcessor processor = new TiledProcessor(tile, threads);
+        try (MappedRaster input = MappedRaster.open(Paths.get(args[0]));
+             MappedRaster output = MappedRaster.create(Paths.get(args[2]), input.getWidth(), input.getHeight())) {
+            long start = System.nanoTime();
+            processor.process(chain, input, output);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("%dx%d in %.2f s, %.1f megapixels/s, %.0f MB heap in use%n",
+                    input.getWidth(), input.getHeight(), seconds,
+                    (double) input.getWidth() * input.getHeight() / 1e6 / seconds,
+                    (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0);
+        }
+    }
+}
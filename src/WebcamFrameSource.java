@@ -0,0 +1,41 @@
+import com.github.sarxos.webcam.Webcam;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+/**
+ * Frame source reading the user's default webcam.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class WebcamFrameSource implements FrameSource {
+    private final Webcam webcam;    // user's webcam
+
+    /**
+     * Constructor for WebcamFrameSource, opens the webcam.
+     *
+     * @param viewSize, the resolution to read the webcam at
+     */
+    public WebcamFrameSource(Dimension viewSize) {
+        // preps webcam for being read
+        webcam = Webcam.getDefault();
+        webcam.setViewSize(viewSize);
+        webcam.open();
+    }
+
+    @Override
+    public BufferedImage read() {
+        return webcam.getImage();
+    }
+
+    @Override
+    public Dimension getSize() {
+        return webcam.getViewSize();
+    }
+
+    @Override
+    public void close() {
+        webcam.close();
+    }
+}
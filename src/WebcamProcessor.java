@@ -1,14 +1,21 @@
-import com.github.sarxos.webcam.Webcam;
-
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
 import javax.swing.*;
 
 /**
@@ -20,15 +27,35 @@ import javax.swing.*;
  * @version 11 December 2020
  */
 public class WebcamProcessor implements Runnable {
-    private BufferedImage image;    // input image
+    private static final String TITLE = "It's you!";
+    // time the overlay's numbers are measured over, in nanoseconds
+    private static final long OVERLAY_WINDOW = 500_000_000;
+
     private BufferedImage newImage; // output processed image
-    private final Webcam webcam;    // user's webcam
+    private final FrameSource source;   // user's webcam, or any other frame source
     private JFrame frame;
-
-    private Mode mode;
-    private float[][] kernel;       // the kernel
-    private int rad;
-    private Color[] halftonePalette;
+    private FramePipeline pipeline;
+
+    private final AtomicReference<FilterConfig> config; // every filter setting, replaced whole on change
+    private volatile IncrementalProcessor incremental; // reprocesses changed tiles only, null if off
+    private volatile FrameGovernor governor = createGovernor(); // trades quality for speed, null if off
+    private FilterChain levelFilters;   // filters for the governor's level, built on the processing thread
+    private FilterConfig levelSource;   // the config levelFilters were built for
+    private int filtersRadius;          // the half-tone radius levelFilters were built with
+    private int filtersScale;           // how many times smaller the frames levelFilters were built for are
+    private volatile boolean preview = !"false".equalsIgnoreCase(System.getProperty("kip.preview"));
+    private volatile Dimension displaySize; // the size of the panel frames are shown in
+    private volatile int previewLevel;  // the pyramid level the last frame was processed at
+    private volatile BufferedImage lastCaptured; // the last frame captured, for full-resolution saves
+    private final PngEncoder png = PngEncoder.create();
+    private long framesSeen;
+    private volatile FrameRecorder recorder; // streams processed frames to disk, null if not recording
+    private final FrameHistory history = createHistory(); // the last few seconds of frames, null if off
+    private final boolean historyCaptured = "captured".equals(System.getProperty("kip.historyFrames"));
+    private final MjpegServer server = createServer(); // serves processed frames over HTTP, null if off
+    private volatile boolean overlay;   // shows frame rate and stage timings over the frame
+    private FrameMetrics.Snapshot overlayStart; // start of the overlay's current window
+    private FrameMetrics.Snapshot overlayShown; // the last full window, shown by the overlay
 
 
     /**
@@ -37,15 +64,29 @@ public class WebcamProcessor implements Runnable {
      * @param ker, pathname for the kernel text file
      */
     public WebcamProcessor(String ker) {
-        // preps webcam for being read
-        webcam = Webcam.getDefault();
-        webcam.setViewSize(new Dimension(640, 480));
-        webcam.open();
+        this(ker, new WebcamFrameSource(new Dimension(640, 480)));
+    }
 
-        kernel = new float[][]{{1}};
-        mode = Mode.GRAYSCALE;
-        rad = 7;
-        halftonePalette = new Color[]{new Color(0, 0, 0), new Color(255, 255, 255)};
+    /**
+     * Constructor for WebcamProcessor reading from any frame source.
+     *
+     * @param ker, pathname for the kernel text file
+     * @param source, the source of the frames to be processed
+     */
+    public WebcamProcessor(String ker, FrameSource source) {
+        this.source = source;
+
+        float[][] kernel = new float[][]{{1}};
+        // starts from the kernel file, if there is one
+        if (Files.exists(Paths.get(ker))) {
+            try {
+                kernel = KernelFile.load(Paths.get(ker));
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+        config = new AtomicReference<>(new FilterConfig(List.of(FilterConfig.Mode.GRAYSCALE), kernel, 7,
+                new Color(0, 0, 0), new Color(255, 255, 255), BorderMode.CLAMP));
 
     }
 
@@ -63,23 +104,10 @@ public class WebcamProcessor implements Runnable {
         content.setLayout(new BorderLayout());
         content.add(createButtonPanel(), BorderLayout.SOUTH);
 
-        // timer for updating the frame with webcam feed
-        Timer timer = new Timer(1, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                // reads image, processes the new image, and repaints the frame
-                image = webcam.getImage();
-                switch (mode) {
-                    case HALFTONE -> newImage = Halftoner.processImage(image, rad,
-                            halftonePalette[0], halftonePalette[1]);
-                    case KERNEL -> newImage = Kernelizer.processImage(image, kernel);
-                    case GRAYSCALE -> newImage = Grayscaler.processImage(image);
-                }
-                frame.repaint();
-            }
-        });
-        timer.setRepeats(true);
-        timer.start();
+        // pipeline which reads the webcam feed and processes it off the event thread
+        pipeline = new FramePipeline(source, this::processImage,
+                Integer.getInteger("kip.queueCapacity", 2),
+                FrameRing.Policy.valueOf(System.getProperty("kip.queuePolicy", "DROP_OLDEST")));
 
         // ends the program's processes on close
         frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
@@ -87,30 +115,387 @@ public class WebcamProcessor implements Runnable {
             @Override
             public void windowClosing(WindowEvent e) {
                 frame.dispose();
-                webcam.close();
-                timer.stop();
+                pipeline.stop();
+                stopRecording();
+                if (history != null) {
+                    history.close();
+                }
+                if (server != null) {
+                    server.close();
+                }
+                String metrics = System.getProperty("kip.metrics");
+                if (metrics != null) {
+                    try {
+                        pipeline.getMetrics().writeCsv(Paths.get(metrics));
+                    } catch (IOException exception) {
+                        exception.printStackTrace();
+                    }
+                }
+                try {
+                    source.close();
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
             }
         });
 
-        // prepares the panel with the output image
-        frame.add(new JPanel() {
+        // prepares the panel with the output image, swapping in finished frames only
+        JPanel panel = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
-                g.drawImage(newImage, 0, 0, null);
+                long start = System.nanoTime();
+                long allocated = FrameMetrics.threadAllocatedBytes();
+                newImage = pipeline.latest();
+                if (newImage != null) {
+                    // scales the frame to fit the panel, keeping its shape
+                    double fit = Math.min((double) getWidth() / newImage.getWidth(),
+                            (double) getHeight() / newImage.getHeight());
+                    ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g.drawImage(newImage, 0, 0, (int) Math.round(newImage.getWidth() * fit),
+                            (int) Math.round(newImage.getHeight() * fit), null);
+                }
+                pipeline.getMetrics().record("display", start, allocated);
+                if (overlay) {
+                    drawOverlay(g);
+                }
+                frame.setTitle(status());
             }
-        }, BorderLayout.CENTER);
-
-        frame.setSize((int) webcam.getViewSize().getWidth(), (int) webcam.getViewSize().getHeight());
-        frame.setResizable(false);
+        };
+        frame.add(panel, BorderLayout.CENTER);
+        panel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                displaySize = panel.getSize();
+            }
+        });
+        pipeline.setListener(panel::repaint);
+        pipeline.setRecycler(BufferPool::releaseImage);
+        pipeline.start();
+
+        // starts at the frames' size, or as much of it as fits on the screen
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        frame.setSize(Math.min((int) source.getSize().getWidth(), screen.width),
+                Math.min((int) source.getSize().getHeight(), screen.height));
         frame.setLocationRelativeTo(null);
-        frame.setTitle("It's you!");
+        frame.setTitle(TITLE);
         frame.validate();
         frame.setVisible(true);
     }
 
     /**
-     * Creates the menu bar which allows the user to save their capture.
+     * Applies the current chain of processing to a frame. Called on the pipeline's
+     * processing thread. Frames are written into pooled images, which the pipeline
+     * hands back once they have been replaced on screen, so the display double
+     * buffers without allocating. With preview at display resolution on, frames are
+     * processed at the smallest Pyramid level still covering the panel, with filters
+     * scaled to match, except while recording, which gets every pixel. With changed
+     * tiles only turned on, only the tiles that changed since the last frame are
+     * reprocessed. With the governor on, frames are processed at its level, and
+     * skipped frames are left to the pipeline to drop. Every setting is read from the
+     * one FilterConfig published when the frame starts.
+     *
+     * @param image, the frame to be processed
+     * @return processed BufferedImage from the BufferPool, or null if the frame is
+     * skipped
+     */
+    private BufferedImage processImage(BufferedImage image) {
+        lastCaptured = image;
+        FrameGovernor governor = this.governor;
+        FrameGovernor.Level level = governor != null ? governor.getLevel() : FrameGovernor.Level.FULL;
+        if (framesSeen++ % level.getSkip() != 0) {
+            keep(image, null);
+            return null;
+        }
+        long start = System.nanoTime();
+        FrameRecorder recorder = this.recorder;
+        Dimension display = preview && recorder == null ? displaySize : null;
+        int depth = display == null ? 0
+                : Pyramid.levelFor(image.getWidth(), image.getHeight(), display.width, display.height);
+        previewLevel = depth;
+        BufferedImage dest;
+        try (Pyramid pyramid = new Pyramid(image, depth)) {
+            dest = processLevel(pyramid.getLevel(depth), level, Pyramid.scale(depth));
+        }
+        if (governor != null) {
+            governor.record(System.nanoTime() - start);
+        }
+        if (recorder != null) {
+            try {
+                recorder.record(dest);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (server != null) {
+            server.publish(dest);
+        }
+        keep(image, dest);
+        return dest;
+    }
+
+    /**
+     * Processes one level of a frame's pyramid at the governor's level.
+     *
+     * @param image, the frame at the pyramid level
+     * @param level, the governor's level
+     * @param pyramidScale, how many times smaller than the frame the level is
+     * @return processed BufferedImage from the BufferPool, the size of the level
+     */
+    private BufferedImage processLevel(BufferedImage image, FrameGovernor.Level level, int pyramidScale) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage dest = BufferPool.acquireImage(width, height);
+        int scale = Math.min(level.getScale(), Math.min(width, height));
+        FilterChain levelChain = filtersFor(level, config.get(), pyramidScale, scale);
+        if (scale == 1) {
+            apply(levelChain, image, dest);
+        } else {
+            // processes a shrunken copy of the frame, then scales the result back up
+            boolean compact = Pixels.isCompact(image);
+            int[] data = compact ? Pixels.data(image) : BufferPool.acquire(width * height);
+            BufferedImage small = BufferPool.acquireImage(width / scale, height / scale);
+            BufferedImage smallOut = BufferPool.acquireImage(width / scale, height / scale);
+            if (!compact) {
+                image.getRGB(0, 0, width, height, data, 0, width);
+            }
+            Pixels.downscale(data, width, scale, Pixels.data(small), small.getWidth(), small.getHeight());
+            apply(levelChain, small, smallOut);
+            Pixels.upscale(Pixels.data(smallOut), small.getWidth(), small.getHeight(), scale,
+                    Pixels.data(dest), width, height);
+            if (!compact) {
+                BufferPool.release(data);
+            }
+            BufferPool.releaseImage(small);
+            BufferPool.releaseImage(smallOut);
+        }
+        return dest;
+    }
+
+    /**
+     * Adds a frame to the history, if it is on: the captured frame if the
+     * kip.historyFrames system property is "captured", or else the processed one.
+     * Captured frames are only added once processing is done with them.
+     *
+     * @param captured, the frame as captured
+     * @param processed, the frame as processed, or null if it was skipped
+     */
+    private void keep(BufferedImage captured, BufferedImage processed) {
+        BufferedImage frame = historyCaptured ? captured : processed;
+        if (history != null && frame != null) {
+            history.add(frame);
+        }
+    }
+
+    /**
+     * Applies filters to an image, reprocessing only changed tiles if that is on.
+     *
+     * @param filters, the filters to be applied
+     * @param image, the image to be processed
+     * @param dest, the image to be written to
+     */
+    private void apply(FilterChain filters, BufferedImage image, BufferedImage dest) {
+        IncrementalProcessor changes = incremental;
+        if (changes != null) {
+            changes.processImage(filters, image, dest);
+        } else {
+            filters.processImage(image, dest);
+        }
+    }
+
+    /**
+     * Gets the filters for a quality level and pyramid scale, rebuilding them with the
+     * level's half-tone radius, divided by the pyramid scale, and the kernel scaled
+     * down by both the pyramid's and the level's shrinking, whenever the radius, the
+     * scale or the config change. Called on the processing thread only.
+     *
+     * @param level, the governor's level
+     * @param current, the config the frame is processed with
+     * @param pyramidScale, how many times smaller than the captured frame the pyramid
+     *                      level is
+     * @param levelScale, how many times smaller than the pyramid level the governor's
+     *                    level has it processed
+     * @return the filters to be applied at that level
+     */
+    private FilterChain filtersFor(FrameGovernor.Level level, FilterConfig current, int pyramidScale,
+                                   int levelScale) {
+        int radius = Math.max(1, Math.round((float) level.radius(current.getRadius()) / pyramidScale));
+        int scale = pyramidScale * levelScale;
+        if (radius == current.getRadius() && scale == 1) {
+            return current.getFilters();
+        }
+        if (current != levelSource || radius != filtersRadius || scale != filtersScale) {
+            levelFilters = current.createFilters(radius, scale);
+            levelSource = current;
+            filtersRadius = radius;
+            filtersScale = scale;
+        }
+        return levelFilters;
+    }
+
+    /**
+     * Creates the history from the kip.historySeconds system property, 10 seconds by
+     * default or 0 for none, kip.historyMegabytes, 64 by default, and
+     * kip.historyLevel, the Deflater level, 1 by default.
+     *
+     * @return new FrameHistory, or null if it is off
+     */
+    private static FrameHistory createHistory() {
+        double seconds = Double.parseDouble(System.getProperty("kip.historySeconds", "10"));
+        return seconds > 0 ? new FrameHistory(seconds, Integer.getInteger("kip.historyMegabytes", 64),
+                Integer.getInteger("kip.historyLevel", Deflater.BEST_SPEED)) : null;
+    }
+
+    /**
+     * Creates the HTTP server from the kip.httpPort system property, which is unset by
+     * default for none (see MjpegServer.create()).
+     *
+     * @return new MjpegServer, or null if it is off or cannot listen on the port
+     */
+    private static MjpegServer createServer() {
+        Integer port = Integer.getInteger("kip.httpPort");
+        if (port == null) {
+            return null;
+        }
+        try {
+            MjpegServer server = MjpegServer.create(port);
+            System.out.println("serving http://localhost:" + server.getPort() + "/");
+            return server;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates the governor from the kip.latencyBudget system property, in
+     * milliseconds, or else from kip.targetFps, 30 frames per second by default.
+     *
+     * @return new FrameGovernor
+     */
+    private static FrameGovernor createGovernor() {
+        String budget = System.getProperty("kip.latencyBudget");
+        return budget != null ? new FrameGovernor(Double.parseDouble(budget))
+                : FrameGovernor.forFrameRate(Double.parseDouble(System.getProperty("kip.targetFps", "30")));
+    }
+
+    /**
+     * Draws the frame rate, frames dropped, and each stage's latencies and allocation
+     * over the last full window of time in a box in the top left corner. Called on
+     * the event thread.
+     *
+     * @param g, the graphics the panel is painted with
+     */
+    private void drawOverlay(Graphics g) {
+        FrameMetrics.Snapshot now = pipeline.getMetrics().snapshot();
+        if (overlayStart == null) {
+            overlayStart = now;
+        } else if (now.getNanos() - overlayStart.getNanos() >= OVERLAY_WINDOW) {
+            overlayShown = now.minus(overlayStart);
+            overlayStart = now;
+        }
+        FrameMetrics.Snapshot shown = overlayShown;
+        if (shown == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%.1f fps, %d of %d frames dropped", shown.getFps(), shown.getFramesDropped(),
+                shown.getFramesIn()));
+        lines.add(String.format("%-8s %6s %6s %6s %9s", "stage", "p50 ms", "p99 ms", "max ms", "B/frame"));
+        for (String stage : shown.getStages()) {
+            LatencyHistogram latency = shown.getLatency(stage);
+            lines.add(String.format("%-8s %6.1f %6.1f %6.1f %9.0f", stage, latency.getPercentile(50) / 1e6,
+                    latency.getPercentile(99) / 1e6, latency.getMax() / 1e6, shown.getAllocatedPerFrame(stage)));
+        }
+
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        FontMetrics font = g.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, font.stringWidth(line));
+        }
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(4, 4, width + 12, lines.size() * font.getHeight() + 8);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.size(); i++) {
+            g.drawString(lines.get(i), 10, 8 + i * font.getHeight() + font.getAscent());
+        }
+    }
+
+    /**
+     * @return the window's title, with the governor's level and the share of tiles
+     * skipped when those are on
+     */
+    private String status() {
+        List<String> parts = new ArrayList<>();
+        FrameGovernor governor = this.governor;
+        if (governor != null) {
+            parts.add(governor.getLevel().toString());
+        }
+        int level = previewLevel;
+        if (level > 0) {
+            parts.add("preview at 1/" + Pyramid.scale(level) + " resolution");
+        }
+        IncrementalProcessor changes = incremental;
+        if (changes != null) {
+            parts.add(String.format("%.0f%% of tiles skipped", 100 * changes.getSkippedFraction()));
+        }
+        FrameRecorder recording = recorder;
+        if (recording != null) {
+            parts.add(String.format("recording, %d frames, %d dropped", recording.getFramesWritten(),
+                    recording.getFramesDropped()));
+        }
+        return parts.isEmpty() ? TITLE : TITLE + " (" + String.join(", ", parts) + ")";
+    }
+
+    /**
+     * Sets the processing applied to each frame.
+     *
+     * @param modes, the kinds of processing to be applied, in order
+     */
+    private void setChain(List<FilterConfig.Mode> modes) {
+        publish(current -> current.withModes(modes));
+    }
+
+    /**
+     * Publishes a change to the filter settings, as a new config made from the current
+     * one, which frames pick up from the next one on. Called on the event thread.
+     *
+     * @param change, makes the new config from the current one
+     */
+    private void publish(UnaryOperator<FilterConfig> change) {
+        config.updateAndGet(change);
+        FrameGovernor governor = this.governor;
+        if (governor != null) {
+            governor.reset();
+        }
+    }
+
+    /**
+     * Stops recording, if it is on, and finishes writing the file on a thread of its
+     * own.
+     */
+    private void stopRecording() {
+        FrameRecorder recording = recorder;
+        if (recording == null) {
+            return;
+        }
+        recorder = null;
+        Thread closer = new Thread(() -> {
+            try {
+                recording.close();
+                System.out.println("recorded " + recording.getFile() + ": " + recording);
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }, "recorder-close");
+        closer.start();
+    }
+
+    /**
+     * Creates the menu bar which allows the user to save their capture, pick the
+     * border mode and choose how processing keeps up.
      *
      * @return the JFrame's menu bar
      */
@@ -132,22 +517,120 @@ public class WebcamProcessor implements Runnable {
                     String format = chooser.getFile().substring(filename.lastIndexOf('.') + 1);
 
                     // only works if the user desires .png
-                    if (format.equalsIgnoreCase("png")) {
-                        try {
-                            ImageIO.write(newImage, format, new File(String.format("%s%s%s",
-                                    chooser.getDirectory(), File.separator, chooser.getFile())));
-                        }
-                        catch (IOException exception) {
-                            exception.printStackTrace();
-                        }
+                    BufferedImage captured = lastCaptured;
+                    FilterConfig settings = config.get();
+                    if (format.equalsIgnoreCase("png") && captured != null) {
+                        File file = new File(String.format("%s%s%s",
+                                chooser.getDirectory(), File.separator, chooser.getFile()));
+                        // processes the last frame at full resolution, whatever the
+                        // preview was processed at, and encodes it across every core,
+                        // all off the event thread
+                        new Thread(() -> {
+                            BufferedImage shot = BufferPool.acquireImage(captured.getWidth(), captured.getHeight());
+                            try {
+                                settings.getFilters().processImage(captured, shot);
+                                long size = png.write(shot, file.toPath());
+                                System.out.println("saved " + file + " (" + size + " bytes)");
+                            } catch (IOException exception) {
+                                exception.printStackTrace();
+                            } finally {
+                                BufferPool.releaseImage(shot);
+                            }
+                        }, "png-writer").start();
                         chooser.dispose();
                     }
                 }
             }
         });
         menu.add(save);
+        // menu item that starts and stops streaming the processed frames to a raw
+        // frame file, which can be played back with raw:<file>
+        JMenuItem record = new JMenuItem(" Record to raw file...");
+        record.addActionListener(e -> {
+            if (recorder != null) {
+                stopRecording();
+                record.setText(" Record to raw file...");
+                return;
+            }
+            FileDialog chooser = new FileDialog(frame, "Record to raw frame file", FileDialog.SAVE);
+            chooser.setVisible(true);
+            if (chooser.getFile() != null) {
+                try {
+                    recorder = new FrameRecorder(Paths.get(chooser.getDirectory(), chooser.getFile()),
+                            Integer.getInteger("kip.recordQueue", 8),
+                            FrameRing.Policy.valueOf(System.getProperty("kip.recordPolicy", "DROP_OLDEST")));
+                    record.setText(" Stop recording");
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+            }
+            chooser.dispose();
+        });
+        menu.add(record);
+        // menu item that saves the last few seconds of frames to a raw frame file,
+        // while frames keep coming in
+        if (history != null) {
+            JMenuItem saveHistory = new JMenuItem(String.format(" Save last %s s...",
+                    System.getProperty("kip.historySeconds", "10")));
+            saveHistory.addActionListener(e -> {
+                FileDialog chooser = new FileDialog(frame, "Save recent frames to raw frame file",
+                        FileDialog.SAVE);
+                chooser.setVisible(true);
+                if (chooser.getFile() != null) {
+                    Path file = Paths.get(chooser.getDirectory(), chooser.getFile());
+                    history.save(file).whenComplete((frames, error) -> {
+                        if (error != null) {
+                            error.printStackTrace();
+                        } else {
+                            System.out.println("saved " + frames + " frames to " + file);
+                        }
+                    });
+                }
+                chooser.dispose();
+            });
+            menu.add(saveHistory);
+        }
         menuBar.add(menu);
 
+        // drop-down menu that picks how filters read pixels past the edges
+        JMenu borderMenu = new JMenu("Border");
+        ButtonGroup borderGroup = new ButtonGroup();
+        for (BorderMode mode : BorderMode.values()) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(" " + mode, mode == config.get().getBorder());
+            item.addActionListener(e -> publish(current -> current.withBorder(mode)));
+            borderGroup.add(item);
+            borderMenu.add(item);
+        }
+        menuBar.add(borderMenu);
+
+        // drop-down menu that turns on reprocessing of changed tiles only, the
+        // governor, and the overlay of frame rate and stage timings
+        JMenu performanceMenu = new JMenu("Performance");
+        JCheckBoxMenuItem changesOnly = new JCheckBoxMenuItem(" Reprocess changed tiles only");
+        changesOnly.addActionListener(e -> incremental = changesOnly.isSelected()
+                ? new IncrementalProcessor(Integer.getInteger("kip.changeTile", 32),
+                        Integer.getInteger("kip.changeThreshold", 8))
+                : null);
+        performanceMenu.add(changesOnly);
+        JCheckBoxMenuItem atDisplay = new JCheckBoxMenuItem(" Preview at display resolution", preview);
+        atDisplay.addActionListener(e -> {
+            preview = atDisplay.isSelected();
+            // frame times change with the resolution, so the governor starts over
+            FrameGovernor current = governor;
+            if (current != null) {
+                current.reset();
+            }
+        });
+        performanceMenu.add(atDisplay);
+        JCheckBoxMenuItem keepUp = new JCheckBoxMenuItem(
+                String.format(" Lower quality to process frames within %.0f ms", governor.getBudgetMillis()), true);
+        keepUp.addActionListener(e -> governor = keepUp.isSelected() ? createGovernor() : null);
+        performanceMenu.add(keepUp);
+        JCheckBoxMenuItem showTimings = new JCheckBoxMenuItem(" Show frame rate and stage timings");
+        showTimings.addActionListener(e -> overlay = showTimings.isSelected());
+        performanceMenu.add(showTimings);
+        menuBar.add(performanceMenu);
+
         return menuBar;
     }
 
@@ -160,26 +643,31 @@ public class WebcamProcessor implements Runnable {
         JButton halftoneButton = new JButton("Halftone Processing");
         JButton kernelButton = new JButton("Kernel Processing");
         JButton grayscaleButton = new JButton("Grayscaling");
+        JButton chainButton = new JButton("Chain...");
         ActionListener buttonListener = new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 if (e.getSource().equals(halftoneButton)) {
-                    mode = Mode.HALFTONE;
+                    setChain(List.of(FilterConfig.Mode.HALFTONE));
                     createHalftoneCustomizer();
                 } else if (e.getSource().equals(kernelButton)) {
-                    mode = Mode.KERNEL;
+                    setChain(List.of(FilterConfig.Mode.KERNEL));
                     createKernelCustomizer();
                 } else if (e.getSource().equals(grayscaleButton)) {
-                    mode = Mode.GRAYSCALE;
+                    setChain(List.of(FilterConfig.Mode.GRAYSCALE));
+                } else if (e.getSource().equals(chainButton)) {
+                    createChainCustomizer();
                 }
             }
         };
         halftoneButton.addActionListener(buttonListener);
         kernelButton.addActionListener(buttonListener);
         grayscaleButton.addActionListener(buttonListener);
+        chainButton.addActionListener(buttonListener);
         buttonPanel.add(halftoneButton);
         buttonPanel.add(kernelButton);
         buttonPanel.add(grayscaleButton);
+        buttonPanel.add(chainButton);
 
         return buttonPanel;
     }
@@ -203,22 +691,26 @@ public class WebcamProcessor implements Runnable {
         settingsPanel.setLayout(new GridLayout(3, 2, 2, 2));
 
         JLabel radLabel = new JLabel("Halftone radius:");
-        JTextField radText = new JTextField(rad + "", 10);
+        FilterConfig current = config.get();
+        JTextField radText = new JTextField(current.getRadius() + "", 10);
         JLabel bgLabel = new JLabel("Background Hex Color:");
-        JTextField bgText = new JTextField(String.format("#%02x%02x%02x",
-                halftonePalette[0].getRed(), halftonePalette[0].getGreen(), halftonePalette[0].getBlue()), 10);
+        Color bg = current.getBackground();
+        JTextField bgText = new JTextField(String.format("#%02x%02x%02x", bg.getRed(), bg.getGreen(),
+                bg.getBlue()), 10);
         JLabel fgLabel = new JLabel("Foreground Hex Color:");
-        JTextField fgText = new JTextField(String.format("#%02x%02x%02x",
-                halftonePalette[1].getRed(), halftonePalette[1].getGreen(), halftonePalette[1].getBlue()), 10);
+        Color fg = current.getForeground();
+        JTextField fgText = new JTextField(String.format("#%02x%02x%02x", fg.getRed(), fg.getGreen(),
+                fg.getBlue()), 10);
 
         // button for confirming settings
         JButton confirmButton = new JButton("Enter");
         confirmButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                rad = Integer.parseInt(radText.getText());
-                halftonePalette[0] = Color.decode(bgText.getText());
-                halftonePalette[1] = Color.decode(fgText.getText());
+                int rad = Integer.parseInt(radText.getText());
+                Color background = Color.decode(bgText.getText());
+                Color foreground = Color.decode(fgText.getText());
+                publish(current -> current.withHalftone(rad, background, foreground));
                 customizer.dispose();
             }
         });
@@ -288,13 +780,15 @@ public class WebcamProcessor implements Runnable {
                     confirmKernelButton.addActionListener(new ActionListener() {
                         @Override
                         public void actionPerformed(ActionEvent e) {
-                            kernel = new float[n][n];
+                            float[][] newKernel = new float[n][n];
                             for (int i = 0; i < n; i++) {
                                 for (int j = 0; j < n; j++) {
-                                    kernel[i][j] = Float.parseFloat(kernelText[i][j].getText());
-                                    customizer.dispose();
+                                    newKernel[i][j] = Float.parseFloat(kernelText[i][j].getText());
                                 }
                             }
+                            customizer.dispose();
+                            // planned once here, never by the frames
+                            publish(current -> current.withKernel(newKernel));
                         }
                     });
 
@@ -319,19 +813,77 @@ public class WebcamProcessor implements Runnable {
     }
 
     /**
-     * Enumerator for processing mode.
+     * Creates a frame which allows the user to chain several kinds of processing,
+     * applied to each frame in order. Each kind uses the settings from its own
+     * customizer.
      */
-    enum Mode {
-        HALFTONE, KERNEL, GRAYSCALE
+    public void createChainCustomizer() {
+        JFrame customizer = new JFrame();
+        customizer.setTitle("Chain your processing!");
+        customizer.setLocationRelativeTo(null);
+        customizer.setSize(new Dimension(400, 250));
+        customizer.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+        Container content = customizer.getContentPane();
+        content.setLayout(new BorderLayout());
+
+        // list of the chain's stages, starting from the current chain
+        DefaultListModel<FilterConfig.Mode> stages = new DefaultListModel<>();
+        for (FilterConfig.Mode mode : config.get().getModes()) {
+            stages.addElement(mode);
+        }
+        JList<FilterConfig.Mode> stageList = new JList<>(stages);
+
+        // buttons for adding and removing stages
+        JPanel editPanel = new JPanel();
+        editPanel.setLayout(new GridLayout(5, 1, 2, 2));
+        for (FilterConfig.Mode mode : FilterConfig.Mode.values()) {
+            JButton addButton = new JButton("Add " + mode.name().toLowerCase());
+            addButton.addActionListener(e -> stages.addElement(mode));
+            editPanel.add(addButton);
+        }
+        JButton removeButton = new JButton("Remove");
+        removeButton.addActionListener(e -> {
+            int index = stageList.getSelectedIndex();
+            if (index >= 0) {
+                stages.remove(index);
+            } else if (!stages.isEmpty()) {
+                stages.remove(stages.size() - 1);
+            }
+        });
+        editPanel.add(removeButton);
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(e -> stages.clear());
+        editPanel.add(clearButton);
+
+        // button for confirming the chain
+        JButton confirmButton = new JButton("Apply Chain");
+        confirmButton.addActionListener(e -> {
+            List<FilterConfig.Mode> modes = new ArrayList<>();
+            for (int i = 0; i < stages.size(); i++) {
+                modes.add(stages.get(i));
+            }
+            setChain(modes);
+            customizer.dispose();
+        });
+
+        customizer.add(new JScrollPane(stageList), BorderLayout.CENTER);
+        customizer.add(editPanel, BorderLayout.EAST);
+        customizer.add(confirmButton, BorderLayout.SOUTH);
+
+        customizer.setVisible(true);
     }
 
     /**
      * Program's main method, starts the processor.
      *
-     * @param args, command-line args
+     * @param args, command-line args: an optional frame source specification (see
+     *              FrameSource.open()), the webcam by default
+     * @throws IOException if the frame source cannot be opened
      */
-    public static void main(String[] args) {
-        WebcamProcessor p = new WebcamProcessor("kernel.txt");
+    public static void main(String[] args) throws IOException {
+        FrameSource source = FrameSource.open(args.length > 0 ? args[0] : "webcam");
+        WebcamProcessor p = new WebcamProcessor("kernel.txt", source);
         SwingUtilities.invokeLater(p);
     }
 }
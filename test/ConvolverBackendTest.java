@@ -0,0 +1,286 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks the fast paths against the scalar code they replace: integer gray levels
+ * against Grayscaler.intensity() for every color, and their Vector API form against
+ * those, and the planar, Vector API, fixed-point and FFT convolution backends
+ * against Kernelizer.processRows() for kernels of every kind and several sizes, on
+ * small frames in every border mode.
+ * Also checks that plans only send frames through the FFT where it is faster.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class ConvolverBackendTest {
+    private static final int[][] SIZES = {{1, 1}, {5, 3}, {37, 23}, {64, 48}};
+    private static final String[] KINDS = {"box", "separable", "dense", "antisymmetric"};
+    private static final int[] KERNELS = {1, 3, 5, 7, 9};
+
+    /**
+     * Gray levels must be exactly the rounded luma of every color.
+     */
+    @Test
+    public void grayLevelsMatchIntensity() {
+        for (int rgb = 0; rgb < 1 << 24; rgb++) {
+            int expected = (int) Math.round(Grayscaler.intensity(rgb));
+            if (Grayscaler.grayscale(rgb) != expected) {
+                fail("gray level of " + Integer.toHexString(rgb) + " is " + Grayscaler.grayscale(rgb)
+                        + ", not " + expected);
+            }
+        }
+    }
+
+    /**
+     * The plain planar loops must be within 1 per channel of the scalar code.
+     */
+    @Test
+    public void planarMatchesScalar() {
+        forEachCase((name, frame, kernel, border, scalar) -> {
+            int[] planar = new int[scalar.length];
+            PlanarConvolver.processRows(0, frame.height, frame.data, planar, frame.width, frame.height,
+                    KernelPlan.Taps.of(kernel), border, PlanarConvolver.LOOPS);
+            assertTrue(maxDifference(scalar, planar) <= 1, name);
+        });
+    }
+
+    /**
+     * The Vector API must give exactly what the plain planar loops give. The tests run
+     * with the jdk.incubator.vector module, so it must be there.
+     */
+    @Test
+    public void vectorMatchesPlanar() {
+        PlanarConvolver.Lanes vector = PlanarConvolver.vectorLanes();
+        assertNotNull(vector, "VectorConvolver or the jdk.incubator.vector module is missing");
+        assertEquals("vector", Kernelizer.getBackend());
+        forEachCase((name, frame, kernel, border, scalar) -> {
+            KernelPlan.Taps taps = KernelPlan.Taps.of(kernel);
+            int[] planar = new int[scalar.length];
+            int[] vectored = new int[scalar.length];
+            PlanarConvolver.processRows(0, frame.height, frame.data, planar, frame.width, frame.height, taps,
+                    border, PlanarConvolver.LOOPS);
+            PlanarConvolver.processRows(0, frame.height, frame.data, vectored, frame.width, frame.height, taps,
+                    border, vector);
+            assertArrayEquals(planar, vectored, name);
+        });
+    }
+
+    /**
+     * The Vector API's gray levels must be exactly Grayscaler.grayscale()'s for every
+     * color, in place as well, including the colors halfway between two levels.
+     */
+    @Test
+    public void vectorGrayMatchesGrayscale() {
+        PlanarConvolver.Lanes vector = PlanarConvolver.vectorLanes();
+        assertNotNull(vector, "VectorConvolver or the jdk.incubator.vector module is missing");
+        int[] colors = new int[1 << 24];
+        for (int rgb = 0; rgb < colors.length; rgb++) {
+            colors[rgb] = 0xff000000 | rgb;
+        }
+        // an odd start and end, so runs begin and end off the vector boundaries
+        vector.gray(colors, colors, 3, colors.length - 5);
+        for (int rgb = 0; rgb < colors.length; rgb++) {
+            int y = rgb < 3 || rgb >= colors.length - 5 ? -1 : Grayscaler.grayscale(rgb);
+            int expected = y < 0 ? 0xff000000 | rgb : Pixels.pack(y, y, y);
+            if (colors[rgb] != expected) {
+                fail("gray of " + Integer.toHexString(rgb) + " is " + Integer.toHexString(colors[rgb])
+                        + ", not " + Integer.toHexString(expected));
+            }
+        }
+    }
+
+    /**
+     * Repacking must truncate and clamp sums past either end of a channel, and odd
+     * ones, exactly as the plain loops do.
+     */
+    @Test
+    public void vectorPackMatchesPlanar() {
+        PlanarConvolver.Lanes vector = PlanarConvolver.vectorLanes();
+        assertNotNull(vector, "VectorConvolver or the jdk.incubator.vector module is missing");
+        float[] sums = {-1e9f, -256.5f, -1f, -0.99f, -0f, 0f, 0.5f, 1.99f, 127.5f, 254.999f, 255f, 255.5f,
+                256f, 1e9f, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.MIN_VALUE};
+        int width = 37;
+        PlanarConvolver.Planes planes = new PlanarConvolver.Planes();
+        planes.ensure(width, 1, width);
+        for (int x = 0; x < width; x++) {
+            planes.sumRed[x] = sums[x % sums.length];
+            planes.sumGreen[x] = sums[(x + 5) % sums.length];
+            planes.sumBlue[x] = sums[(x + 11) % sums.length];
+        }
+        int[] planar = new int[width + 2];
+        int[] vectored = new int[width + 2];
+        PlanarConvolver.LOOPS.pack(planes, planar, 1, width);
+        vector.pack(planes, vectored, 1, width);
+        assertArrayEquals(planar, vectored);
+        assertEquals(Pixels.pack(255, 0, 0), planar[1 + 13]);
+    }
+
+    /**
+     * Kernels that quantize to fixed point must come out within 1 per channel of the
+     * scalar code.
+     */
+    @Test
+    public void fixedPointMatchesScalar() {
+        forEachCase((name, frame, kernel, border, scalar) -> {
+            FixedPointConvolver fixed = FixedPointConvolver.quantize(kernel);
+            if (fixed != null) {
+                int[] output = new int[scalar.length];
+                fixed.processRows(0, frame.height, frame.data, output, frame.width, frame.height, border);
+                assertTrue(maxDifference(scalar, output) <= 1, name + " " + fixed);
+            }
+        });
+    }
+
+    /**
+     * The FFT must come out within 1 per channel of the scalar code. Each kernel's
+     * plan is kept across frame sizes and border modes, so its spectrum is reused and
+     * remade as the padded size changes.
+     */
+    @Test
+    public void fftMatchesScalar() {
+        Map<String, KernelPlan> plans = new HashMap<>();
+        forEachCase((name, frame, kernel, border, scalar) -> {
+            KernelPlan plan = plans.computeIfAbsent(name.substring(0, name.indexOf(" on ")),
+                    key -> new KernelPlan(kernel));
+            int[] output = new int[scalar.length];
+            plan.convolveFft(frame.data, output, frame.width, frame.height, border);
+            assertTrue(maxDifference(scalar, output) <= 1, name);
+        });
+    }
+
+    /**
+     * The FFT must only be picked where it is not measurably slower than the direct
+     * path the plan would otherwise take, and the direct path only where it is not
+     * measurably slower than the FFT, both timed on one thread on a 640x360 frame the
+     * way plans time their samples.
+     */
+    @Test
+    public void fftPickedOnlyWhereFaster() {
+        int width = 640;
+        int height = 360;
+        int[] data = Pixels.data(SyntheticFrameSource.createFrame(width, height, 3));
+        int[] output = new int[data.length];
+        for (int n : new int[]{9, 15, 21, 31}) {
+            KernelPlan plan = new KernelPlan(kernel("dense", n));
+            boolean fft = plan.useFft(width, height);
+            long direct = FftConvolver.time(() -> plan.applyRows(0, height, data, output, width, height,
+                    BorderMode.CLAMP));
+            long transformed = FftConvolver.time(() -> plan.convolveFft(data, output, width, height,
+                    BorderMode.CLAMP));
+            String times = plan + ": direct " + direct / 1000000 + " ms, FFT " + transformed / 1000000 + " ms";
+            if (fft) {
+                assertTrue(transformed <= 1.25 * direct, "FFT picked for " + times);
+            } else {
+                assertTrue(direct <= 1.25 * transformed, "direct path picked for " + times);
+            }
+        }
+    }
+
+    /**
+     * Runs a check on every frame size, kind and size of kernel and border mode, along
+     * with the scalar code's output.
+     *
+     * @param check, the check
+     */
+    private static void forEachCase(Check check) {
+        for (int[] size : SIZES) {
+            Frame frame = new Frame(size[0], size[1]);
+            int[] scalar = new int[frame.data.length];
+            for (String kind : KINDS) {
+                for (int n : KERNELS) {
+                    float[][] kernel = kernel(kind, n);
+                    for (BorderMode border : BorderMode.values()) {
+                        Kernelizer.processRows(0, frame.height, frame.data, scalar, frame.width, frame.height,
+                                kernel, border);
+                        String name = kind + " " + n + "x" + n + " on " + size[0] + "x" + size[1] + " " + border;
+                        check.run(name, frame, kernel, border, scalar);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an nxn kernel of the given kind: box, separable (a binomial blur), dense
+     * (neither) or antisymmetric (an edge detector, whose mirrored taps fold with
+     * opposite signs).
+     *
+     * @param kind, the kind of kernel
+     * @param n, the size of the kernel
+     * @return the kernel
+     */
+    private static float[][] kernel(String kind, int n) {
+        if (!kind.equals("antisymmetric")) {
+            return Benchmark.kernel(kind, n);
+        }
+        float[][] kernel = new float[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                kernel[i][j] = (i - n / 2) * (1 + (j % 3)) / (float) n;
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Compares two frames channel by channel.
+     *
+     * @param expected, the pixels of one frame
+     * @param actual, the pixels of the other
+     * @return the largest difference between corresponding channels
+     */
+    private static int maxDifference(int[] expected, int[] actual) {
+        int worst = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                worst = Math.max(worst, Math.abs(((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff)));
+            }
+        }
+        return worst;
+    }
+
+    /**
+     * A synthetic frame's pixels.
+     */
+    private static class Frame {
+        final int width;
+        final int height;
+        final int[] data;
+
+        /**
+         * Constructor for Frame.
+         *
+         * @param width, the width of the frame
+         * @param height, the height of the frame
+         */
+        Frame(int width, int height) {
+            this.width = width;
+            this.height = height;
+            data = Pixels.data(SyntheticFrameSource.createFrame(width, height, 3));
+        }
+    }
+
+    /**
+     * A check run on one case.
+     */
+    private interface Check {
+        /**
+         * Runs the check.
+         *
+         * @param name, a description of the case for failure messages
+         * @param frame, the frame
+         * @param kernel, the kernel
+         * @param border, the border mode
+         * @param scalar, the scalar code's output
+         */
+        void run(String name, Frame frame, float[][] kernel, BorderMode border, int[] scalar);
+    }
+}
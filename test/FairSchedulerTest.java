@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs lanes of different weights and very different band lengths side by side on a
+ * small FairScheduler, and checks that each lane's share of the CPU time follows its
+ * weight rather than the length of its bands. Each lane has two streams, so it always
+ * has a frame waiting, as a lane only has a claim to its share while it does. There
+ * are no more workers than cores, since beyond that the OS rather than the scheduler
+ * decides which band runs.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FairSchedulerTest {
+    // how long the lanes run for
+    private static final long RUN_MILLIS = 3000;
+    // how far a lane's share of the CPU time may be from its weighted share
+    private static final double TOLERANCE = 0.08;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Lanes with long bands and short bands, and weights of 1 and 2, must share the
+     * workers in proportion to their weights.
+     *
+     * @throws InterruptedException if interrupted while the lanes run
+     */
+    @Test
+    public void sharesFollowWeights() throws InterruptedException {
+        long[] bandNanos = {50_000, 4_000_000, 50_000};
+        // a frame of 8 bands at a time, as TileScheduler would queue them
+        assertShares(new double[]{1, 1, 2}, i -> lane -> lane.run(8, index -> spin(bandNanos[i])));
+    }
+
+    /**
+     * A lane filtering frames with a 25x25 kernel must not take the share of two lanes
+     * turning frames gray, though its frames take a hundred times as long.
+     *
+     * @throws InterruptedException if interrupted while the lanes run
+     */
+    @Test
+    public void heavyKernelCannotStarveGrayscale() throws InterruptedException {
+        float[][] kernel = new float[25][25];
+        for (int i = 0; i < 25; i++) {
+            for (int j = 0; j < 25; j++) {
+                kernel[i][j] = ((i * 7 + j * 3) % 5 + (i == j ? 3 : 0)) / (2f * 25 * 25);
+            }
+        }
+        FilterChain[] chains = {FilterChain.of(Grayscaler.filter()), FilterChain.of(Kernelizer.filter(kernel)),
+                FilterChain.of(Grayscaler.filter())};
+        int[] data = Pixels.data(SyntheticFrameSource.createFrame(320, 240, 0));
+        // the kernel's plan times its paths on the first frame, once, outside any lane
+        for (FilterChain chain : chains) {
+            chain.process(data, new int[data.length], 320, 240);
+        }
+        assertShares(new double[]{1, 1, 1}, i -> {
+            int[] newData = new int[data.length];
+            // every band the chain queues goes on the stream's lane
+            return lane -> chains[i].process(data, newData, 320, 240);
+        });
+    }
+
+    /**
+     * Runs lanes of the given weights, two streams each, for RUN_MILLIS on a scheduler
+     * of up to two workers, and checks each lane's share of the CPU time.
+     *
+     * @param weights, the weights of the lanes
+     * @param streams, the work of a frame for each stream of the lane with a given index
+     * @throws InterruptedException if interrupted while the lanes run
+     */
+    private static void assertShares(double[] weights, StreamFactory streams) throws InterruptedException {
+        List<FairScheduler.Lane> lanes = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        long stop = System.nanoTime() + RUN_MILLIS * 1_000_000;
+        try (FairScheduler scheduler = new FairScheduler(Math.min(2, Runtime.getRuntime().availableProcessors()))) {
+            for (int i = 0; i < weights.length; i++) {
+                FairScheduler.Lane lane = scheduler.lane("lane-" + i, weights[i]);
+                lanes.add(lane);
+                for (int j = 0; j < 2; j++) {
+                    Frame frame = streams.create(i);
+                    Thread stream = new Thread(() -> {
+                        TileScheduler.setRunner(lane);
+                        while (System.nanoTime() < stop) {
+                            frame.process(lane);
+                        }
+                    }, lane.getName() + "-" + j);
+                    threads.add(stream);
+                    stream.start();
+                }
+            }
+            for (Thread stream : threads) {
+                stream.join();
+            }
+        }
+
+        long total = 0;
+        for (FairScheduler.Lane lane : lanes) {
+            total += lane.getCpuNanos();
+        }
+        double weightTotal = 0;
+        for (double weight : weights) {
+            weightTotal += weight;
+        }
+        for (int i = 0; i < lanes.size(); i++) {
+            double share = (double) lanes.get(i).getCpuNanos() / total;
+            double fair = weights[i] / weightTotal;
+            assertTrue(Math.abs(share - fair) <= TOLERANCE, String.format("%s had %.0f%% of the CPU time, not %.0f%%",
+                    lanes.get(i).getName(), 100 * share, 100 * fair));
+        }
+    }
+
+    /**
+     * Keeps the calling thread busy, standing in for a band of pixel work.
+     *
+     * @param nanos, how much CPU time to take
+     */
+    private static void spin(long nanos) {
+        long end = THREADS.getCurrentThreadCpuTime() + nanos;
+        while (THREADS.getCurrentThreadCpuTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * The work of one frame of a stream.
+     */
+    private interface Frame {
+        /**
+         * Processes a frame, its bands queued on the stream's lane.
+         *
+         * @param lane, the stream's lane
+         */
+        void process(FairScheduler.Lane lane);
+    }
+
+    /**
+     * Creates the work of each stream, so streams can keep buffers of their own.
+     */
+    private interface StreamFactory {
+        /**
+         * @param lane, the index of the stream's lane
+         * @return the work of one frame of a new stream of that lane
+         */
+        Frame create(int lane);
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fills a small FrameHistory many times over with frames that deflate to very
+ * different sizes, so the log wraps around with frames of every length at its end,
+ * and checks that what is saved is exactly the newest frames kept.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class FrameHistoryTest {
+    private static final int SIZE = 256;
+
+    /**
+     * Saving after the log has wrapped several times must give back the frames kept,
+     * oldest first, each as it was added.
+     *
+     * @param dir, a directory for the saved file
+     * @throws Exception if the frames cannot be saved or read back
+     */
+    @Test
+    public void savesAfterWrapping(@TempDir Path dir) throws Exception {
+        List<int[]> added = new ArrayList<>();
+        Random random = new Random(19);
+        try (FrameHistory history = new FrameHistory(60, 1, 1)) {
+            for (int i = 0; i < 80; i++) {
+                // from flat to pure noise, so frames deflate to anything up to 192 KB
+                int[] pixels = frame(random, random.nextDouble());
+                added.add(pixels);
+                BufferedImage image = BufferPool.acquireImage(SIZE, SIZE);
+                System.arraycopy(pixels, 0, Pixels.data(image), 0, pixels.length);
+                history.add(image);
+                BufferPool.releaseImage(image);
+                // gives the compressor time to keep up, so few frames are dropped
+                Thread.sleep(20);
+            }
+            history.close();
+            assertTrue(history.getBytesUsed() <= 1 << 20, history.toString());
+
+            Path file = dir.resolve("history.raw");
+            long saved = history.save(file).get(30, TimeUnit.SECONDS);
+            assertEquals(history.getFrameCount(), saved);
+            assertTrue(saved > 1, history.toString());
+
+            // the frames saved must be added frames in the order they were added, ending
+            // with the last, which is never dropped
+            List<int[]> read = new ArrayList<>();
+            try (RawFrameSource source = new RawFrameSource(file, 0, false)) {
+                for (BufferedImage frame = source.read(); frame != null; frame = source.read()) {
+                    read.add(Pixels.data(frame).clone());
+                }
+            }
+            assertEquals(saved, read.size());
+            int next = 0;
+            for (int[] frame : read) {
+                while (next < added.size() && !Arrays.equals(added.get(next), frame)) {
+                    next++;
+                }
+                assertTrue(next < added.size(), "a saved frame is not one added, or out of order");
+                next++;
+            }
+            assertArrayEquals(added.get(added.size() - 1), read.get(read.size() - 1));
+        }
+    }
+
+    /**
+     * Creates a frame of which a given fraction of pixels is noise and the rest flat.
+     *
+     * @param random, where the noise comes from
+     * @param noise, the fraction of pixels that are noise
+     * @return the frame's opaque ARGB pixels
+     */
+    private static int[] frame(Random random, double noise) {
+        int[] pixels = new int[SIZE * SIZE];
+        int flat = 0xff000000 | random.nextInt(1 << 24);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextDouble() < noise ? 0xff000000 | random.nextInt(1 << 24) : flat;
+        }
+        return pixels;
+    }
+}
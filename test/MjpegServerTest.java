@@ -0,0 +1,265 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import javax.imageio.ImageIO;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Serves synthetic frames on the loopback interface and checks that viewers get
+ * whole JPEG frames, and that a viewer which stops reading is dropped without
+ * holding up the encoder or close().
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class MjpegServerTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private volatile boolean publishing = true;
+    private Thread producer;
+
+    /**
+     * Stops the producer.
+     *
+     * @throws InterruptedException if interrupted while it stops
+     */
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        publishing = false;
+        if (producer != null) {
+            producer.join();
+        }
+    }
+
+    /**
+     * A viewer reading the stream gets whole frames of the right size, and the
+     * snapshot and page are served too.
+     *
+     * @throws IOException if a request fails
+     * @throws InterruptedException if interrupted while waiting for frames
+     */
+    @Test
+    public void servesStreamSnapshotAndPage() throws IOException, InterruptedException {
+        try (MjpegServer server = server(2000)) {
+            publish(server);
+            awaitFrames(server, 1);
+
+            HttpURLConnection stream = open(server, "/stream.mjpg");
+            assertEquals("multipart/x-mixed-replace; boundary=kipframe", stream.getContentType());
+            DataInputStream in = new DataInputStream(stream.getInputStream());
+            for (int i = 0; i < 5; i++) {
+                BufferedImage frame = readPart(in);
+                assertEquals(WIDTH, frame.getWidth());
+                assertEquals(HEIGHT, frame.getHeight());
+            }
+            stream.disconnect();
+
+            HttpURLConnection snapshot = open(server, "/snapshot.jpg");
+            assertEquals(200, snapshot.getResponseCode());
+            assertEquals("image/jpeg", snapshot.getContentType());
+            BufferedImage frame = ImageIO.read(snapshot.getInputStream());
+            assertNotNull(frame);
+            assertEquals(WIDTH, frame.getWidth());
+
+            HttpURLConnection page = open(server, "/");
+            assertEquals(200, page.getResponseCode());
+            assertTrue(new String(page.getInputStream().readAllBytes(), StandardCharsets.UTF_8)
+                    .contains("/stream.mjpg"));
+            assertEquals(404, open(server, "/missing").getResponseCode());
+        }
+    }
+
+    /**
+     * A viewer that reads for a while and then stops must be dropped once its write
+     * has been stuck for the timeout, while frames go on being encoded.
+     *
+     * @throws IOException if the viewer cannot connect
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    public void stuckViewerIsDroppedWithoutStallingTheEncoder() throws IOException, InterruptedException {
+        try (MjpegServer server = server(300);
+             Socket viewer = stream(server)) {
+            publish(server);
+            InputStream in = viewer.getInputStream();
+            long end = System.nanoTime() + 1_000_000_000L;
+            long read = 0;
+            byte[] buffer = new byte[8192];
+            while (System.nanoTime() < end) {
+                int n = in.read(buffer);
+                assertTrue(n > 0, "the stream ended while the viewer was reading");
+                read += n;
+            }
+            assertTrue(read > 0);
+
+            // the viewer stops reading but stays connected
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (server.getClientsDropped() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, server.getClientsDropped(), "the viewer was not dropped");
+            assertEquals(0, server.getClients());
+
+            long encoded = server.getMetrics().snapshot().getFramesOut();
+            awaitFrames(server, encoded + 5);
+        }
+    }
+
+    /**
+     * close() must return promptly with a viewer stuck in a write that has not been
+     * dropped yet.
+     *
+     * @throws IOException if the viewer cannot connect
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    public void closeReturnsWithViewerStuck() throws IOException, InterruptedException {
+        MjpegServer server = server(60_000);
+        try (Socket viewer = stream(server)) {
+            publish(server);
+            assertTrue(viewer.getInputStream().read(new byte[8192]) > 0);
+            // the viewer stops reading, and frames pile up until the server's write is stuck
+            Thread.sleep(3000);
+            assertEquals(1, server.getClients());
+
+            assertTimeoutPreemptively(Duration.ofSeconds(2), server::close);
+        }
+    }
+
+    /**
+     * @param timeoutMillis, how long a write to a viewer can be stuck
+     * @return new MjpegServer on a free loopback port
+     * @throws IOException if it cannot listen
+     */
+    private static MjpegServer server(long timeoutMillis) throws IOException {
+        return new MjpegServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0.9f, 4, timeoutMillis);
+    }
+
+    /**
+     * Starts publishing synthetic frames to a server as fast as it takes them.
+     *
+     * @param server, the server
+     */
+    private void publish(MjpegServer server) {
+        BufferedImage[] frames = new BufferedImage[8];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = SyntheticFrameSource.createFrame(WIDTH, HEIGHT, i);
+        }
+        producer = new Thread(() -> {
+            for (int i = 0; publishing; i++) {
+                BufferedImage frame = BufferPool.acquireImage(WIDTH, HEIGHT);
+                System.arraycopy(Pixels.data(frames[i % frames.length]), 0, Pixels.data(frame), 0, WIDTH * HEIGHT);
+                server.publish(frame);
+                BufferPool.releaseImage(frame);
+                Thread.onSpinWait();
+            }
+        }, "producer");
+        producer.start();
+    }
+
+    /**
+     * Waits up to 10 seconds for a server to have encoded a number of frames.
+     *
+     * @param server, the server
+     * @param frames, the number of frames
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void awaitFrames(MjpegServer server, long frames) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (server.getMetrics().snapshot().getFramesOut() < frames && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        long encoded = server.getMetrics().snapshot().getFramesOut();
+        assertTrue(encoded >= frames, "only " + encoded + " frames were encoded, not " + frames);
+    }
+
+    /**
+     * Opens a raw connection asking for the stream, with a small receive buffer so it
+     * fills quickly once the viewer stops reading.
+     *
+     * @param server, the server
+     * @return the viewer's socket
+     * @throws IOException if it cannot connect
+     */
+    private static Socket stream(MjpegServer server) throws IOException {
+        Socket viewer = new Socket();
+        viewer.setReceiveBufferSize(4096);
+        viewer.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        viewer.getOutputStream().write("GET /stream.mjpg HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        return viewer;
+    }
+
+    /**
+     * @param server, the server
+     * @param path, the path asked for
+     * @return a connection asking the server for the path
+     * @throws IOException if it cannot connect
+     */
+    private static HttpURLConnection open(MjpegServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+                .openConnection();
+        connection.setReadTimeout(10_000);
+        return connection;
+    }
+
+    /**
+     * Reads one part of the multipart stream and decodes its JPEG.
+     *
+     * @param in, the stream's body
+     * @return the frame
+     * @throws IOException if the part cannot be read or decoded
+     */
+    private static BufferedImage readPart(DataInputStream in) throws IOException {
+        assertEquals("--kipframe", readLine(in));
+        int length = -1;
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            if (line.startsWith("Content-Length:")) {
+                length = Integer.parseInt(line.substring("Content-Length:".length()).trim());
+            }
+        }
+        assertTrue(length > 0, "a part has no length");
+        byte[] jpeg = new byte[length];
+        in.readFully(jpeg);
+        assertEquals("", readLine(in));
+        BufferedImage frame = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(frame, "a part is not a JPEG");
+        return frame;
+    }
+
+    /**
+     * @param in, the stream
+     * @return the next line, without its line break
+     * @throws IOException if the stream ends first
+     */
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,288 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the processors against copies of the pixel-at-a-time code they replaced,
+ * which read every pixel with getRGB() and wrote it with setRGB(), on fixed images of
+ * every type the window and BatchProcessor hand them. On the scalar backend, which the
+ * build runs these tests on again with -Dkip.backend=scalar, everything must match
+ * exactly. Otherwise gray levels must still match exactly, but kernels, which then go
+ * through strategies that sum in floats or fixed point, only within 1 per channel,
+ * and half-tone dots, which are then rasterized directly rather than by Graphics2D,
+ * may differ on their edges, or where they cover a single pixel, but nowhere else.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class ProcessorEquivalenceTest {
+    // whether the processors run the original code, as with -Dkip.backend=scalar
+    private static final boolean SCALAR = "scalar".equals(Kernelizer.getBackend());
+
+    private static final int[] TYPES = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR};
+
+    private static final float[][][] KERNELS = {
+            {{1}},
+            {{1 / 9f, 1 / 9f, 1 / 9f}, {1 / 9f, 1 / 9f, 1 / 9f}, {1 / 9f, 1 / 9f, 1 / 9f}},
+            {{0, -1, 0}, {-1, 5, -1}, {0, -1, 0}},
+            {{-1, 0, 1}, {-2, 0, 2}, {-1, 0, 1}},
+            {{1 / 16f, 2 / 16f, 1 / 16f}, {2 / 16f, 4 / 16f, 2 / 16f}, {1 / 16f, 2 / 16f, 1 / 16f}},
+            dense(5),
+            dense(9)
+    };
+
+    /**
+     * Gray levels must be exactly those of the old code.
+     */
+    @Test
+    public void grayscaleMatchesExactly() {
+        for (int type : TYPES) {
+            for (BufferedImage image : images(type)) {
+                BufferedImage expected = baselineGrayscale(image);
+                BufferedImage actual = Grayscaler.processImage(image);
+                assertEquals(0, maxDifference(expected, actual), describe("grayscale", image));
+            }
+        }
+    }
+
+    /**
+     * Kernels must match the old code exactly on the scalar backend, and otherwise be
+     * within 1 per channel of it, as the old code summed in doubles where the fast
+     * paths sum in floats or fixed point.
+     */
+    @Test
+    public void kernelsMatch() {
+        for (int type : TYPES) {
+            for (BufferedImage image : images(type)) {
+                for (float[][] kernel : KERNELS) {
+                    KernelPlan.Strategy strategy = new KernelPlan(kernel).getStrategy();
+                    assertEquals(SCALAR, strategy == KernelPlan.Strategy.SCALAR, strategy.toString());
+                    BufferedImage expected = baselineKernelize(image, kernel);
+                    BufferedImage actual = Kernelizer.processImage(image, kernel);
+                    String name = describe("kernel " + kernel.length + "x" + kernel.length + " " + strategy, image);
+                    assertTrue(maxDifference(expected, actual) <= (SCALAR ? 0 : 1), name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Half-tones must match the old code's exactly on the scalar backend, and
+     * otherwise differ only where Graphics2D and the direct rasterizer disagree on
+     * which pixels a dot covers.
+     */
+    @Test
+    public void halftoneMatches() {
+        for (int type : TYPES) {
+            for (BufferedImage image : images(type)) {
+                // the old code averaged the blue channel, which is the gray level once
+                // the image is gray, as the current code averages
+                BufferedImage gray = baselineGrayscale(image);
+                for (int rad : new int[]{1, 2, 3, 5, 8}) {
+                    BufferedImage expected = baselineHalftone(gray, rad, Color.BLACK, Color.WHITE);
+                    BufferedImage actual = Halftoner.processImage(gray, rad, Color.BLACK, Color.WHITE);
+                    if (SCALAR) {
+                        assertEquals(0, maxDifference(expected, actual), describe("halftone " + rad, image));
+                        continue;
+                    }
+                    for (int y = 0; y < gray.getHeight(); y++) {
+                        for (int x = 0; x < gray.getWidth(); x++) {
+                            int rgb = actual.getRGB(x, y);
+                            int old = expected.getRGB(x, y);
+                            // a pixel may also be a dot too small to cover a pixel center
+                            // in one output and not the other
+                            boolean edge = nextTo(expected, x, y, rgb);
+                            boolean speck = !nextTo(expected, x, y, old) || !nextTo(actual, x, y, rgb);
+                            assertTrue(rgb == old || edge || speck, describe("halftone " + rad, image)
+                                    + ": pixel " + x + "," + y + " is not on the edge of a dot");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the fixed test images of a type: seeded noise, which exercises every
+     * channel value, and the synthetic pattern, which has flat areas and sharp edges,
+     * at sizes from a single pixel up, including odd ones.
+     *
+     * @param type, the BufferedImage type
+     * @return the images
+     */
+    private static BufferedImage[] images(int type) {
+        int[][] sizes = {{1, 1}, {7, 3}, {64, 48}, {101, 67}};
+        BufferedImage[] images = new BufferedImage[sizes.length + 1];
+        Random random = new Random(2020);
+        for (int i = 0; i < sizes.length; i++) {
+            images[i] = new BufferedImage(sizes[i][0], sizes[i][1], type);
+            for (int y = 0; y < sizes[i][1]; y++) {
+                for (int x = 0; x < sizes[i][0]; x++) {
+                    images[i].setRGB(x, y, 0xff000000 | random.nextInt(1 << 24));
+                }
+            }
+        }
+        BufferedImage pattern = SyntheticFrameSource.createFrame(160, 120, 7);
+        images[sizes.length] = new BufferedImage(160, 120, type);
+        images[sizes.length].createGraphics().drawImage(pattern, 0, 0, null);
+        return images;
+    }
+
+    /**
+     * Creates an nxn kernel with no special structure, which goes through the planar
+     * or fixed-point path.
+     *
+     * @param n, the size of the kernel
+     * @return the kernel
+     */
+    private static float[][] dense(int n) {
+        float[][] kernel = new float[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                kernel[i][j] = ((i * 7 + j * 3) % 5 + (i == j ? 3 : 0)) / (2f * n * n);
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Compares two images channel by channel, alpha included.
+     *
+     * @param expected, one image
+     * @param actual, the other image, of the same size
+     * @return the largest difference between corresponding channels
+     */
+    private static int maxDifference(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int worst = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    worst = Math.max(worst, Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff)));
+                }
+            }
+        }
+        return worst;
+    }
+
+    /**
+     * Checks whether a pixel lies next to one of a given color, as on the edge of a
+     * dot of that color or of the background around one. The pixel itself does not
+     * count.
+     *
+     * @param image, the image
+     * @param x, the x coordinate of the pixel
+     * @param y, the y coordinate of the pixel
+     * @param rgb, the ARGB value of the color
+     * @return true if one of the eight neighbours of the pixel has that color
+     */
+    private static boolean nextTo(BufferedImage image, int x, int y, int rgb) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int nx = x + dx;
+                int ny = y + dy;
+                if ((dx != 0 || dy != 0) && nx >= 0 && ny >= 0 && nx < image.getWidth() && ny < image.getHeight()
+                        && image.getRGB(nx, ny) == rgb) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param filter, the filter checked
+     * @param image, the image it was checked on
+     * @return a description of the check for failure messages
+     */
+    private static String describe(String filter, BufferedImage image) {
+        return filter + " on a " + image.getWidth() + "x" + image.getHeight() + " image of type " + image.getType();
+    }
+
+    // the code below is the original processors', pixel at a time through getRGB() and
+    // setRGB(), with the helpers inlined
+
+    private static BufferedImage baselineGrayscale(BufferedImage image) {
+        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        for (int col = 0; col < image.getWidth(); col++) {
+            for (int row = 0; row < image.getHeight(); row++) {
+                Color color = new Color(baselineGet(col, row, image));
+                int r = color.getRed();
+                int g = color.getGreen();
+                int b = color.getBlue();
+                double intensity = r == g && r == b ? r : 0.299 * r + 0.587 * g + 0.114 * b;
+                int y = (int) Math.round(intensity);
+                newImage.setRGB(col, row, new Color(y, y, y).getRGB());
+            }
+        }
+        return newImage;
+    }
+
+    private static BufferedImage baselineKernelize(BufferedImage image, float[][] kernel) {
+        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        for (int col = 0; col < image.getWidth(); col++) {
+            for (int row = 0; row < image.getHeight(); row++) {
+                int[][] sample = new int[kernel.length][kernel.length];
+                for (int x = -1 * kernel.length / 2; x <= kernel.length / 2; x++) {
+                    for (int y = -1 * kernel.length / 2; y <= kernel.length / 2; y++) {
+                        sample[x + kernel.length / 2][y + kernel.length / 2] = baselineGet(col + x, row + y, image);
+                    }
+                }
+                double red = 0;
+                double green = 0;
+                double blue = 0;
+                for (int i = 0; i < kernel.length; i++) {
+                    for (int j = 0; j < kernel.length; j++) {
+                        red += ((sample[i][j] >> 16) & 0xff) * kernel[i][j];
+                        green += ((sample[i][j] >> 8) & 0xff) * kernel[i][j];
+                        blue += ((sample[i][j]) & 0xff) * kernel[i][j];
+                    }
+                }
+                red = Math.min(Math.max((int) (red), 0), 255);
+                green = Math.min(Math.max((int) (green), 0), 255);
+                blue = Math.min(Math.max((int) (blue), 0), 255);
+                newImage.setRGB(col, row, new Color((int) red, (int) green, (int) blue).getRGB());
+            }
+        }
+        return newImage;
+    }
+
+    private static BufferedImage baselineHalftone(BufferedImage image, int rad, Color bg, Color fg) {
+        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D out = newImage.createGraphics();
+        out.setColor(bg);
+        out.fill(new Rectangle2D.Double(0, 0, image.getWidth(), image.getHeight()));
+        out.setColor(fg);
+        for (int col = 0; col < image.getWidth(); col += rad) {
+            for (int row = 0; row < image.getHeight(); row += rad) {
+                double value = 0;
+                for (int x = -1 * rad; x <= rad; x++) {
+                    for (int y = -1 * rad; y <= rad; y++) {
+                        value += (baselineGet(col + x, row + y, image)) & 0xff;
+                    }
+                }
+                value /= (4 * rad * rad * 255);
+                out.fill(new Ellipse2D.Double(col, row, rad * value, rad * value));
+            }
+        }
+        return newImage;
+    }
+
+    private static int baselineGet(int col, int row, BufferedImage image) {
+        col = Math.min(Math.max(col, 0), image.getWidth() - 1);
+        row = Math.min(Math.max(row, 0), image.getHeight() - 1);
+        return image.getRGB(col, row);
+    }
+}
@@ -0,0 +1,173 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Lane operations for the PlanarConvolver and Grayscaler written with the Vector API,
+ * which run across a row at the machine's widest vector width whether or not the JIT
+ * would have vectorized the plain loops. Multiplies and adds are kept separate, not
+ * fused, so sums round exactly as the plain loops' do; sums are repacked with a cast
+ * to int, which truncates as (int) does, and a saturating min and max; and gray
+ * levels are worked out in the same integer arithmetic as Grayscaler.grayscale(),
+ * leaving only the rare sums exactly halfway between two levels to it.
+ *
+ * The class needs the jdk.incubator.vector module both to compile and to run, so it
+ * is kept apart from the rest of the sources and only loaded by name, by
+ * PlanarConvolver, when the module is present.
+ *
+ * @author Evan Wang
+ * @version 17 October 2026
+ */
+public class VectorConvolver implements PlanarConvolver.Lanes {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // as many int lanes as float lanes, so pixels convert to and from planes lane for lane
+    private static final VectorSpecies<Integer> PIXELS = IntVector.SPECIES_PREFERRED;
+    // 2^23, past which floats are whole numbers, so adding it rounds to one
+    private static final float ROUNDING = 1 << 23;
+
+    @Override
+    public void split(int[] pixels, PlanarConvolver.Planes planes, int plane, int length) {
+        int x = 0;
+        int bound = PIXELS.loopBound(length);
+        for (; x < bound; x += PIXELS.length()) {
+            IntVector sample = IntVector.fromArray(PIXELS, pixels, x);
+            toFloats(sample.lanewise(VectorOperators.LSHR, 16).and(0xff)).intoArray(planes.red, plane + x);
+            toFloats(sample.lanewise(VectorOperators.LSHR, 8).and(0xff)).intoArray(planes.green, plane + x);
+            toFloats(sample.and(0xff)).intoArray(planes.blue, plane + x);
+        }
+        for (; x < length; x++) {
+            int sample = pixels[x];
+            planes.red[plane + x] = (sample >> 16) & 0xff;
+            planes.green[plane + x] = (sample >> 8) & 0xff;
+            planes.blue[plane + x] = sample & 0xff;
+        }
+    }
+
+    @Override
+    public void addTap(PlanarConvolver.Planes planes, int plane, int pair, int sign, float weight, int width) {
+        addTap(planes.red, planes.sumRed, plane, pair, sign, weight, width);
+        addTap(planes.green, planes.sumGreen, plane, pair, sign, weight, width);
+        addTap(planes.blue, planes.sumBlue, plane, pair, sign, weight, width);
+    }
+
+    @Override
+    public void pack(PlanarConvolver.Planes planes, int[] pixels, int offset, int width) {
+        int x = 0;
+        int bound = SPECIES.loopBound(width);
+        for (; x < bound; x += SPECIES.length()) {
+            IntVector r = toChannel(FloatVector.fromArray(SPECIES, planes.sumRed, x));
+            IntVector g = toChannel(FloatVector.fromArray(SPECIES, planes.sumGreen, x));
+            IntVector b = toChannel(FloatVector.fromArray(SPECIES, planes.sumBlue, x));
+            r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b).or(0xff000000)
+                    .intoArray(pixels, offset + x);
+        }
+        for (; x < width; x++) {
+            int r = Math.min(Math.max((int) planes.sumRed[x], 0), 255);
+            int g = Math.min(Math.max((int) planes.sumGreen[x], 0), 255);
+            int b = Math.min(Math.max((int) planes.sumBlue[x], 0), 255);
+            pixels[offset + x] = Pixels.pack(r, g, b);
+        }
+    }
+
+    @Override
+    public void gray(int[] data, int[] newData, int from, int to) {
+        int i = from;
+        int bound = from + PIXELS.loopBound(to - from);
+        for (; i < bound; i += PIXELS.length()) {
+            IntVector rgb = IntVector.fromArray(PIXELS, data, i);
+            IntVector sum = rgb.lanewise(VectorOperators.LSHR, 16).and(0xff).mul(299)
+                    .add(rgb.lanewise(VectorOperators.LSHR, 8).and(0xff).mul(587))
+                    .add(rgb.and(0xff).mul(114))
+                    .add(500);
+            // sum / 1000 as (sum / 8) / 125, the last by multiplying and shifting
+            IntVector y = sum.lanewise(VectorOperators.LSHR, 3).mul(67109).lanewise(VectorOperators.LSHR, 23);
+            // sums exactly halfway between two levels round as intensity() does, so a
+            // run of pixels with one is done pixel by pixel, before any is overwritten;
+            // reading the odd lane out instead would keep the vectors on the heap
+            if (sum.compare(VectorOperators.EQ, y.mul(1000)).anyTrue()) {
+                for (int j = i; j < i + PIXELS.length(); j++) {
+                    int level = Grayscaler.grayscale(data[j]);
+                    newData[j] = Pixels.pack(level, level, level);
+                }
+                continue;
+            }
+            y.lanewise(VectorOperators.LSHL, 16).or(y.lanewise(VectorOperators.LSHL, 8)).or(y).or(0xff000000)
+                    .intoArray(newData, i);
+        }
+        for (; i < to; i++) {
+            int level = Grayscaler.grayscale(data[i]);
+            newData[i] = Pixels.pack(level, level, level);
+        }
+    }
+
+    /**
+     * @param channel, channel values 0-255
+     * @return the values as floats
+     */
+    private static FloatVector toFloats(IntVector channel) {
+        return (FloatVector) channel.convert(VectorOperators.I2F, 0);
+    }
+
+    /**
+     * Truncates and clamps sums as (int) and Math.min() and max() do. A cast of the
+     * lanes to ints is not compiled into one instruction by every JDK, and ran three
+     * times slower than the plain loop, so the sums are clamped as floats, NaN to 0
+     * as (int) makes it, rounded to whole numbers by adding 2^23, stepped down where
+     * that rounded up, and read from the low bits of the float.
+     *
+     * @param sum, sums of a channel
+     * @return the sums truncated to ints and clamped to 0-255
+     */
+    private static IntVector toChannel(FloatVector sum) {
+        FloatVector clamped = sum.max(0f).min(255f);
+        clamped = clamped.blend(0f, clamped.test(VectorOperators.IS_NAN));
+        FloatVector rounded = clamped.add(ROUNDING).sub(ROUNDING);
+        FloatVector truncated = rounded.sub(1f, rounded.compare(VectorOperators.GT, clamped));
+        return truncated.add(ROUNDING).reinterpretAsInts().and(0xff);
+    }
+
+    /**
+     * Adds a tap across a row of one plane.
+     *
+     * @param pixels, the plane
+     * @param sum, the row sums of the plane
+     * @param plane, the index of the tap's first pixel in the plane
+     * @param pair, the index of the first pixel of the tap's mirror image
+     * @param sign, 0 for a tap of its own, 1 or -1 for a folded pair
+     * @param weight, the tap's weight
+     * @param width, the number of pixels in the row
+     */
+    private static void addTap(float[] pixels, float[] sum, int plane, int pair, int sign, float weight,
+                               int width) {
+        int x = 0;
+        int bound = SPECIES.loopBound(width);
+        if (sign == 0) {
+            for (; x < bound; x += SPECIES.length()) {
+                FloatVector tap = FloatVector.fromArray(SPECIES, pixels, plane + x);
+                FloatVector.fromArray(SPECIES, sum, x).add(tap.mul(weight)).intoArray(sum, x);
+            }
+            for (; x < width; x++) {
+                sum[x] += pixels[plane + x] * weight;
+            }
+        } else if (sign > 0) {
+            for (; x < bound; x += SPECIES.length()) {
+                FloatVector tap = FloatVector.fromArray(SPECIES, pixels, plane + x)
+                        .add(FloatVector.fromArray(SPECIES, pixels, pair + x));
+                FloatVector.fromArray(SPECIES, sum, x).add(tap.mul(weight)).intoArray(sum, x);
+            }
+            for (; x < width; x++) {
+                sum[x] += (pixels[plane + x] + pixels[pair + x]) * weight;
+            }
+        } else {
+            for (; x < bound; x += SPECIES.length()) {
+                FloatVector tap = FloatVector.fromArray(SPECIES, pixels, plane + x)
+                        .sub(FloatVector.fromArray(SPECIES, pixels, pair + x));
+                FloatVector.fromArray(SPECIES, sum, x).add(tap.mul(weight)).intoArray(sum, x);
+            }
+            for (; x < width; x++) {
+                sum[x] += (pixels[plane + x] - pixels[pair + x]) * weight;
+            }
+        }
+    }
+}